@@ -355,6 +355,7 @@ public final class Shareschain {
         BlockchainProcessorImpl.getInstance().shutdown();
         Nodes.shutdown();
         NetworkHandler.shutdown();
+        BlockArchive.shutdown();
         DB.shutdown();
         Logger.logShutdownMessage("Shareschain server " + VERSION + " stopped.");
         Logger.shutdown();
@@ -386,6 +387,7 @@ public final class Shareschain {
 
                 // 数据库初始化
                 DB.init();
+                BlockArchive.init();
                 setServerStatus(ServerStatus.AFTER_DATABASE, null);
 
                 // 交易处理器初始化
@@ -579,7 +579,7 @@ public final class Account {
     }
 
     public static long getId(byte[] publicKey) {
-        byte[] publicKeyHash = Crypto.sha256().digest(publicKey);
+        byte[] publicKeyHash = Crypto.sha256(publicKey);
         return Convert.fullHashToId(publicKeyHash);
     }
 
@@ -709,9 +709,6 @@ public final class Account {
     private Set<ControlType> controls;
 
     private Account(long id) {
-        if (id != Crypto.rsDecode(Crypto.rsEncode(id))) {
-            Logger.logMessageWithExcpt("CRITICAL ERROR: Reed-Solomon encoding fails for " + id);
-        }
         this.id = id;
         this.dbKey = accountDBKeyFactory.newKey(this.id);
         this.controls = Collections.emptySet();
@@ -871,10 +868,15 @@ public final class Account {
             return 0;
         }
         Long[] lessorIds = new Long[lessors.size()];
-        long[] balances = new long[lessors.size()];
+        long[] accountIds = new long[lessors.size()];
         for (int i = 0; i < lessors.size(); i++) {
             lessorIds[i] = lessors.get(i).getId();
-            balances[i] = Mainchain.mainchain.getBalanceHome().getBalance(lessors.get(i).id, height).getBalance();
+            accountIds[i] = lessors.get(i).id;
+        }
+        List<BalanceHome.Balance> lessorBalances = Mainchain.mainchain.getBalanceHome().getBalances(accountIds, height);
+        long[] balances = new long[lessors.size()];
+        for (int i = 0; i < lessors.size(); i++) {
+            balances[i] = lessorBalances.get(i).getBalance();
         }
         int blockchainHeight = Shareschain.getBlockchain().getHeight();
         try (Connection con = accountGuaranteedBalanceTable.getConnection();
@@ -310,6 +310,34 @@ public class AccountChainLedger {
     public static List<LedgerEntry> getEntries(long accountId, LedgerEvent event, long eventId,
                                                 LedgerHolding holding, long holdingId,
                                                 int firstIndex, int lastIndex) {
+        return getEntries(accountId, event, eventId, holding, holdingId, 0, firstIndex, lastIndex);
+    }
+
+    /**
+     * Return the ledger entries following a ledger entry, sorted in descending insert order
+     *
+     * The entries are selected using the ledger entry identifier, so the earlier entries are not
+     * read no matter how many entries have already been returned
+     *
+     * @param   accountId                   Account identifier or zero if no account identifier
+     * @param   event                       Ledger event or null
+     * @param   eventId                     Ledger event identifier or zero if no event identifier
+     * @param   holding                     Ledger holding or null
+     * @param   holdingId                   Ledger holding identifier or zero if no holding identifier
+     * @param   afterLedgerId               Return entries inserted before this entry or zero to start with the most recent entry
+     * @param   limit                       Maximum number of entries to return
+     * @return                              List of ledger entries
+     */
+    public static List<LedgerEntry> getEntriesAfter(long accountId, LedgerEvent event, long eventId,
+                                                     LedgerHolding holding, long holdingId,
+                                                     long afterLedgerId, int limit) {
+        return getEntries(accountId, event, eventId, holding, holdingId, afterLedgerId, 0,
+                limit > 0 ? limit - 1 : Integer.MAX_VALUE);
+    }
+
+    private static List<LedgerEntry> getEntries(long accountId, LedgerEvent event, long eventId,
+                                                LedgerHolding holding, long holdingId,
+                                                long afterLedgerId, int firstIndex, int lastIndex) {
         if (!ledgerEnabled) {
             return Collections.emptyList();
         }
@@ -318,7 +346,7 @@ public class AccountChainLedger {
         // Build the SELECT statement to search the entries
         StringBuilder sb = new StringBuilder(128);
         sb.append("SELECT * FROM account_ledger ");
-        if (accountId != 0 || event != null || holding != null) {
+        if (accountId != 0 || event != null || holding != null || afterLedgerId != 0) {
             sb.append("WHERE ");
         }
         if (accountId != 0) {
@@ -340,6 +368,12 @@ public class AccountChainLedger {
             if (holdingId != 0)
                 sb.append("AND holding_id = ? ");
         }
+        if (afterLedgerId != 0) {
+            if (accountId != 0 || event != null || holding != null) {
+                sb.append("AND ");
+            }
+            sb.append("db_id < ? ");
+        }
         sb.append("ORDER BY db_id DESC ");
         sb.append(DBUtils.limitsClause(firstIndex, lastIndex));
         //
@@ -364,6 +398,9 @@ public class AccountChainLedger {
                     pstmt.setLong(++i, holdingId);
                 }
             }
+            if (afterLedgerId != 0) {
+                pstmt.setLong(++i, afterLedgerId);
+            }
             DBUtils.setLimits(++i, pstmt, firstIndex, lastIndex);
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
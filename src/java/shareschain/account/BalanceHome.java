@@ -14,6 +14,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 public final class BalanceHome {
 
@@ -114,6 +117,27 @@ public final class BalanceHome {
         return balance;
     }
 
+    /**
+     * Get the balances for a set of accounts using a single database query
+     *
+     * @param   accountIds          Account identifiers
+     * @param   height              Blockchain height or -1 for the current height
+     * @return                      Balances in the same order as the account identifiers
+     */
+    public List<Balance> getBalances(long[] accountIds, int height) {
+        Long[] ids = new Long[accountIds.length];
+        for (int i = 0; i < accountIds.length; i++) {
+            ids[i] = accountIds[i];
+        }
+        Map<Long, Balance> balanceMap = balanceTable.getByIds(ids, height);
+        List<Balance> balances = new ArrayList<>(accountIds.length);
+        for (long accountId : accountIds) {
+            Balance balance = balanceMap.get(accountId);
+            balances.add(balance != null ? balance : new Balance(accountId));
+        }
+        return balances;
+    }
+
     public final class Balance {
 
         private final long accountId;
@@ -2,6 +2,7 @@
 package shareschain.blockchain;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public interface Block {
@@ -42,4 +43,6 @@ public interface Block {
 
     byte[] getBytes();
 
+    ByteBuffer getBytesBuffer();
+
 }
@@ -0,0 +1,638 @@
+package shareschain.blockchain;
+
+import shareschain.Constants;
+import shareschain.Shareschain;
+import shareschain.ShareschainExceptions;
+import shareschain.database.DB;
+import shareschain.util.Logger;
+import shareschain.util.ThreadPool;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>
+ * The block archive is an optional append-only store for blocks which are older than the
+ * rollback window.  The archive is enabled by setting shareschain.enableBlockArchive=true.
+ * </p>
+ * <p>
+ * Archived blocks are written to segment files (shareschain.blockArchiveSegmentMB) and are
+ * read using memory mapping.  A segment is mapped in fixed-size chunks and a chunk is mapped
+ * once it has been completely written, so appending a block does not remap the segment.
+ * Records in the partial chunk at the end of a segment (or spanning two chunks) are read from
+ * the segment file.  The mapped chunks are released before a segment is truncated or closed.
+ * Memory mapping is disabled and all records are read from the segment files if the mapped
+ * buffers can't be released (Unsafe.invokeCleaner() is not available before Java 9), since a
+ * segment must not be truncated while it is still mapped.
+ * The index file contains one entry for each archived height,
+ * so the archive always contains the blocks from height 0 up to the archive height.
+ * Blocks are archived by a background thread and are read by the block and transaction
+ * lookups and by the node block requests instead of loading the block and transaction rows
+ * from the database.  The archive is truncated when blocks are deleted from the database.
+ * </p>
+ * <p>
+ * Segment record format (little-endian):
+ * <ul>
+ * <li>Block identifier (long), height (int), next block identifier (long), base target (long)
+ * <li>Cumulative difficulty length (short) and cumulative difficulty bytes
+ * <li>Block bytes length (int) and block bytes
+ * <li>Transaction count (int) followed by the length (int) and bytes of each transaction
+ * </ul>
+ * <p>
+ * Index entry format: block identifier (long), segment number (int), segment offset (int),
+ * record length (int)
+ * </p>
+ */
+public final class BlockArchive {
+
+    /** Block archive is enabled */
+    static final boolean enabled = Shareschain.getBooleanProperty("shareschain.enableBlockArchive");
+
+    /** Maximum segment size */
+    private static final long segmentSize =
+            Math.min(Math.max(Shareschain.getIntProperty("shareschain.blockArchiveSegmentMB", 256), 16), 1024) * 1024L * 1024L;
+
+    /** Index entry size */
+    private static final int INDEX_ENTRY_SIZE = 8 + 4 + 4 + 4;
+
+    /** Maximum number of blocks archived while holding the blockchain read lock */
+    private static final int ARCHIVE_BATCH_SIZE = 100;
+
+    /** Segment chunk size */
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /** Unsafe instance used to release mapped buffers or null if not available */
+    private static final Object unsafe;
+
+    /** Unsafe.invokeCleaner() method or null if not available */
+    private static final Method invokeCleaner;
+
+    /** Segment chunks are memory mapped */
+    private static volatile boolean mappingEnabled;
+
+    static {
+        Object unsafeInstance = null;
+        Method cleanerMethod = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafeInstance = field.get(null);
+            cleanerMethod = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafeInstance = null;
+            cleanerMethod = null;
+        }
+        unsafe = unsafeInstance;
+        invokeCleaner = cleanerMethod;
+        mappingEnabled = (cleanerMethod != null);
+        if (!mappingEnabled) {
+            Logger.logInfoMessage("Mapped buffers can't be released, block archive will not use memory mapping");
+        }
+    }
+
+    /** Archive lock */
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Archive segments */
+    private static final List<Segment> segments = new ArrayList<>();
+
+    /** Archive directory */
+    private static Path archiveDir;
+
+    /** Index file */
+    private static FileChannel indexChannel;
+
+    /** Number of archived blocks */
+    private static volatile int blockCount;
+
+    private BlockArchive() {}
+
+    /**
+     * Open the block archive and start the archive thread
+     */
+    public static void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            archiveDir = Paths.get(Shareschain.getDBDir(Shareschain.getStringProperty(DB.PREFIX + "Dir"))).resolveSibling("blocks");
+            Files.createDirectories(archiveDir);
+            indexChannel = FileChannel.open(archiveDir.resolve("blocks.idx"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            recover();
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to open block archive: " + e.toString(), e);
+        }
+        if (blockCount > 0 && !BlockDB.hasBlock(getIndexEntry(blockCount - 1).getLong(0), blockCount - 1)) {
+            Logger.logWarningMessage("Block archive does not match the blockchain, archive will be rebuilt");
+            truncate(0);
+        }
+        Logger.logInfoMessage("Block archive %s contains %d blocks", archiveDir, blockCount);
+        ThreadPool.scheduleThread("BlockArchive", BlockArchive::archiveBlocks, 10);
+    }
+
+    /**
+     * Close the block archive
+     */
+    public static void shutdown() {
+        if (!enabled || indexChannel == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments) {
+                segment.close();
+            }
+            segments.clear();
+            indexChannel.close();
+            indexChannel = null;
+            blockCount = 0;
+        } catch (IOException e) {
+            Logger.logShutdownMessage("Unable to close block archive", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the number of archived blocks.  Blocks with a height less than the
+     * block count are available from the archive.
+     *
+     * @return                      Number of archived blocks
+     */
+    static int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Get an archived block including its transactions
+     *
+     * @param   height              Block height
+     * @return                      Block or null if the block is not archived
+     */
+    static BlockImpl getBlock(int height) {
+        lock.readLock().lock();
+        try {
+            ByteBuffer record = getRecord(height, 0);
+            return (record != null ? parseBlock(record) : null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the transactions for an archived block
+     *
+     * @param   height              Block height
+     * @param   blockId             Block identifier
+     * @return                      Block transactions or null if the block is not archived
+     */
+    static List<SmcTransactionImpl> getTransactions(int height, long blockId) {
+        if (height >= blockCount) {
+            return null;
+        }
+        lock.readLock().lock();
+        try {
+            ByteBuffer record = getRecord(height, blockId);
+            return (record != null ? parseBlock(record).getSmcTransactions() : null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the archived blocks following the specified block
+     *
+     * @param   blockId             Block identifier
+     * @param   limit               Maximum number of blocks to return
+     * @return                      Archived blocks, which might be fewer than the limit
+     */
+    static List<BlockImpl> getBlocksAfter(long blockId, int limit) {
+        List<BlockImpl> result = new ArrayList<>();
+        if (blockCount == 0) {
+            return result;
+        }
+        int height = BlockDB.findBlockHeight(blockId);
+        if (height < 0 || height >= blockCount - 1) {
+            return result;
+        }
+        lock.readLock().lock();
+        try {
+            for (int i = height + 1; i < blockCount && result.size() < limit; i++) {
+                ByteBuffer record = getRecord(i, 0);
+                if (record == null) {
+                    break;
+                }
+                result.add(parseBlock(record));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Remove blocks from the archive
+     *
+     * @param   height              First height to remove
+     */
+    static void truncate(int height) {
+        if (!enabled || height >= blockCount) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (height >= blockCount) {
+                return;
+            }
+            int segmentNumber = 0;
+            long segmentOffset = 0;
+            if (height > 0) {
+                ByteBuffer entry = getIndexEntry(height - 1);
+                segmentNumber = entry.getInt(8);
+                segmentOffset = (entry.getInt(12) & 0xffffffffL) + entry.getInt(16);
+            }
+            indexChannel.truncate((long)height * INDEX_ENTRY_SIZE);
+            blockCount = height;
+            truncateSegments(segmentNumber, segmentOffset);
+            Logger.logDebugMessage("Block archive truncated to %d blocks", height);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to truncate block archive: " + e.toString(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Archive the blocks which are older than the rollback window
+     */
+    private static void archiveBlocks() {
+        try {
+            BlockchainImpl blockchain = BlockchainImpl.getInstance();
+            while (blockCount <= blockchain.getHeight() - Constants.MAX_ROLLBACK) {
+                blockchain.readLock();
+                try {
+                    int archiveHeight = Math.min(blockchain.getHeight() - Constants.MAX_ROLLBACK,
+                            blockCount + ARCHIVE_BATCH_SIZE - 1);
+                    while (blockCount <= archiveHeight) {
+                        BlockImpl block = BlockDB.findBlockAtHeight(blockCount);
+                        append(block);
+                    }
+                } finally {
+                    blockchain.readUnlock();
+                }
+            }
+        } catch (Exception e) {
+            Logger.logErrorMessage("Unable to archive blocks", e);
+        } catch (Throwable t) {
+            Logger.logErrorMessage("CRITICAL ERROR. PLEASE REPORT TO THE DEVELOPERS", t);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Append a block to the archive
+     *
+     * @param   block               Block at the archive height
+     * @throws  IOException         I/O error occurred
+     */
+    private static void append(BlockImpl block) throws IOException {
+        byte[] cumulativeDifficulty = block.getCumulativeDifficulty().toByteArray();
+        byte[] blockBytes = block.bytes();
+        List<SmcTransactionImpl> transactions = block.getSmcTransactions();
+        int length = 8 + 4 + 8 + 8 + 2 + cumulativeDifficulty.length + 4 + blockBytes.length + 4;
+        for (SmcTransactionImpl transaction : transactions) {
+            length += 4 + transaction.bytes().length;
+        }
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.order(ByteOrder.LITTLE_ENDIAN);
+        record.putLong(block.getId());
+        record.putInt(block.getHeight());
+        record.putLong(block.getNextBlockId());
+        record.putLong(block.getBaseTarget());
+        record.putShort((short)cumulativeDifficulty.length);
+        record.put(cumulativeDifficulty);
+        record.putInt(blockBytes.length);
+        record.put(blockBytes);
+        record.putInt(transactions.size());
+        for (SmcTransactionImpl transaction : transactions) {
+            byte[] transactionBytes = transaction.bytes();
+            record.putInt(transactionBytes.length);
+            record.put(transactionBytes);
+        }
+        record.flip();
+        lock.writeLock().lock();
+        try {
+            if (block.getHeight() != blockCount) {
+                throw new IllegalStateException("Block height " + block.getHeight() + " does not match archive height " + blockCount);
+            }
+            Segment segment = (segments.isEmpty() ? null : segments.get(segments.size() - 1));
+            if (segment == null || (segment.size > 0 && segment.size + length > segmentSize)) {
+                segment = new Segment(segments.size());
+                segments.add(segment);
+            }
+            long offset = segment.append(record);
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.order(ByteOrder.LITTLE_ENDIAN);
+            entry.putLong(block.getId()).putInt(segment.number).putInt((int)offset).putInt(length);
+            entry.flip();
+            while (entry.hasRemaining()) {
+                indexChannel.write(entry, (long)blockCount * INDEX_ENTRY_SIZE + entry.position());
+            }
+            blockCount += 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the segment record for a block.  The archive lock must be held by the caller.
+     *
+     * @param   height              Block height
+     * @param   blockId             Expected block identifier or 0 to accept any block
+     * @return                      Record buffer or null if the block is not archived
+     */
+    private static ByteBuffer getRecord(int height, long blockId) {
+        if (height < 0 || height >= blockCount) {
+            return null;
+        }
+        ByteBuffer entry = getIndexEntry(height);
+        if (blockId != 0 && entry.getLong(0) != blockId) {
+            return null;
+        }
+        int segmentNumber = entry.getInt(8);
+        if (segmentNumber >= segments.size()) {
+            return null;
+        }
+        try {
+            return segments.get(segmentNumber).read(entry.getInt(12) & 0xffffffffL, entry.getInt(16));
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read block archive: " + e.toString(), e);
+        }
+    }
+
+    /**
+     * Read an index entry
+     *
+     * @param   height              Block height
+     * @return                      Index entry buffer
+     */
+    private static ByteBuffer getIndexEntry(int height) {
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        entry.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            long position = (long)height * INDEX_ENTRY_SIZE;
+            while (entry.hasRemaining()) {
+                if (indexChannel.read(entry, position + entry.position()) < 0) {
+                    throw new IOException("Block archive index is truncated");
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read block archive index: " + e.toString(), e);
+        }
+        return entry;
+    }
+
+    /**
+     * Create a block from an archive record
+     *
+     * @param   record              Record buffer
+     * @return                      Block
+     */
+    private static BlockImpl parseBlock(ByteBuffer record) {
+        long id = record.getLong();
+        int height = record.getInt();
+        long nextBlockId = record.getLong();
+        long baseTarget = record.getLong();
+        byte[] cumulativeDifficulty = new byte[record.getShort()];
+        record.get(cumulativeDifficulty);
+        byte[] blockBytes = new byte[record.getInt()];
+        record.get(blockBytes);
+        int blockTimestamp = ByteBuffer.wrap(blockBytes).order(ByteOrder.LITTLE_ENDIAN).getInt(4);
+        int transactionCount = record.getInt();
+        List<SmcTransactionImpl> transactions = new ArrayList<>(transactionCount);
+        try {
+            for (int i = 0; i < transactionCount; i++) {
+                byte[] transactionBytes = new byte[record.getInt()];
+                record.get(transactionBytes);
+                TransactionImpl transaction = TransactionImpl.newTransactionBuilder(transactionBytes)
+                        .blockId(id)
+                        .height(height)
+                        .blockTimestamp(blockTimestamp)
+                        .index((short)i)
+                        .build();
+                transactions.add((SmcTransactionImpl)transaction);
+            }
+            return new BlockImpl(blockBytes, Collections.unmodifiableList(transactions), new BigInteger(cumulativeDifficulty),
+                    baseTarget, nextBlockId, height, id);
+        } catch (ShareschainExceptions.NotValidExceptions e) {
+            throw new RuntimeException("Block archive record at height " + height + " is not valid: " + e.toString(), e);
+        }
+    }
+
+    /**
+     * Open the segments referenced by the index and discard data written after the last index entry
+     *
+     * @throws  IOException         I/O error occurred
+     */
+    private static void recover() throws IOException {
+        blockCount = (int)(indexChannel.size() / INDEX_ENTRY_SIZE);
+        indexChannel.truncate((long)blockCount * INDEX_ENTRY_SIZE);
+        int segmentNumber = 0;
+        long segmentOffset = 0;
+        if (blockCount > 0) {
+            ByteBuffer entry = getIndexEntry(blockCount - 1);
+            segmentNumber = entry.getInt(8);
+            segmentOffset = (entry.getInt(12) & 0xffffffffL) + entry.getInt(16);
+            for (int i = 0; i <= segmentNumber; i++) {
+                segments.add(new Segment(i));
+            }
+        }
+        truncateSegments(segmentNumber, segmentOffset);
+    }
+
+    /**
+     * Truncate the segment containing the end of the archive and delete the following segments
+     *
+     * @param   segmentNumber       Last segment number
+     * @param   segmentOffset       End of the archive within the last segment
+     * @throws  IOException         I/O error occurred
+     */
+    private static void truncateSegments(int segmentNumber, long segmentOffset) throws IOException {
+        while (segments.size() > segmentNumber + 1 || (segments.size() == segmentNumber + 1 && segmentOffset == 0)) {
+            Segment segment = segments.remove(segments.size() - 1);
+            segment.close();
+        }
+        if (segments.size() == segmentNumber + 1) {
+            segments.get(segmentNumber).truncate(segmentOffset);
+        }
+        for (int i = segments.size(); ; i++) {
+            if (!Files.deleteIfExists(getSegmentPath(i))) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Release a mapped buffer.  The buffer must not be used after it has been released, so
+     * the archive write lock must be held.  Memory mapping is disabled if the buffer
+     * can't be released.
+     *
+     * @param   buffer              Mapped buffer
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            mappingEnabled = false;
+            Logger.logErrorMessage("Unable to release mapped buffer, block archive memory mapping disabled", e);
+        }
+    }
+
+    /**
+     * Get the path for a segment file
+     *
+     * @param   number              Segment number
+     * @return                      Segment path
+     */
+    private static Path getSegmentPath(int number) {
+        return archiveDir.resolve(String.format("blocks-%06d.dat", number));
+    }
+
+    /**
+     * Archive segment file
+     */
+    private static final class Segment {
+
+        /** Segment number */
+        private final int number;
+
+        /** Segment file */
+        private final FileChannel channel;
+
+        /** Segment size */
+        private volatile long size;
+
+        /** Mapped chunks indexed by chunk number (null if the chunk has not been mapped) */
+        private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+        /**
+         * Open a segment, creating the segment file if it doesn't exist
+         *
+         * @param   number          Segment number
+         * @throws  IOException     I/O error occurred
+         */
+        private Segment(int number) throws IOException {
+            this.number = number;
+            this.channel = FileChannel.open(getSegmentPath(number),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+
+        /**
+         * Append a record to the segment
+         *
+         * @param   record          Record buffer
+         * @return                  Segment offset of the record
+         * @throws  IOException     I/O error occurred
+         */
+        private long append(ByteBuffer record) throws IOException {
+            long offset = size;
+            while (record.hasRemaining()) {
+                channel.write(record, offset + record.position());
+            }
+            size = offset + record.limit();
+            return offset;
+        }
+
+        /**
+         * Read a record from the segment.  A record within a completely written chunk is
+         * read from the mapped chunk if memory mapping is enabled.  Other records are read
+         * from the segment file.
+         *
+         * @param   offset          Record offset
+         * @param   length          Record length
+         * @return                  Record buffer
+         * @throws  IOException     I/O error occurred
+         */
+        private synchronized ByteBuffer read(long offset, int length) throws IOException {
+            int chunkNumber = (int)(offset / CHUNK_SIZE);
+            long chunkOffset = (long)chunkNumber * CHUNK_SIZE;
+            ByteBuffer buffer;
+            if (mappingEnabled && offset + length <= chunkOffset + CHUNK_SIZE && chunkOffset + CHUNK_SIZE <= size) {
+                while (chunks.size() <= chunkNumber) {
+                    chunks.add(null);
+                }
+                MappedByteBuffer chunk = chunks.get(chunkNumber);
+                if (chunk == null) {
+                    chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkOffset, CHUNK_SIZE);
+                    chunks.set(chunkNumber, chunk);
+                }
+                buffer = chunk.duplicate();
+                buffer.limit((int)(offset - chunkOffset) + length).position((int)(offset - chunkOffset));
+                buffer = buffer.slice();
+            } else {
+                buffer = ByteBuffer.allocate(length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, offset + buffer.position()) < 0) {
+                        throw new IOException("Block archive segment " + number + " is truncated");
+                    }
+                }
+                buffer.flip();
+            }
+            return buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Release the mapped chunks which are not completely contained in the segment
+         *
+         * @param   newSize         Segment size
+         */
+        private void releaseChunks(long newSize) {
+            int chunkCount = (int)(newSize / CHUNK_SIZE);
+            while (chunks.size() > chunkCount) {
+                MappedByteBuffer chunk = chunks.remove(chunks.size() - 1);
+                if (chunk != null) {
+                    unmap(chunk);
+                }
+            }
+        }
+
+        /**
+         * Truncate the segment.  The mapped chunks beyond the new size are released first.
+         *
+         * @param   newSize         New segment size
+         * @throws  IOException     I/O error occurred
+         */
+        private synchronized void truncate(long newSize) throws IOException {
+            releaseChunks(newSize);
+            channel.truncate(newSize);
+            size = newSize;
+        }
+
+        /**
+         * Close the segment.  The mapped chunks are released first.
+         *
+         * @throws  IOException     I/O error occurred
+         */
+        private synchronized void close() throws IOException {
+            releaseChunks(0);
+            channel.close();
+        }
+    }
+}
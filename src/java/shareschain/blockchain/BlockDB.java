@@ -1,6 +1,7 @@
 
 package shareschain.blockchain;
 
+import shareschain.Constants;
 import shareschain.database.DBUtils;
 import shareschain.database.Table;
 import shareschain.database.DB;
@@ -58,6 +59,24 @@ public final class BlockDB {
             throw new RuntimeException(e.toString(), e);
         }
     }
+    /**
+     * Get the height of a block
+     *
+     * @param   blockId             Block identifier
+     * @return                      Block height or -1 if the block is not found
+     */
+    static int findBlockHeight(long blockId) {
+        try (Connection con = getConnection();
+             PreparedStatement pstmt = con.prepareStatement("SELECT height FROM block WHERE id = ?")) {
+            pstmt.setLong(1, blockId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt("height") : -1;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
     //通过区块高度获取区块id
     static long findBlockIdAtHeight(int height) {
         try (Connection con = getConnection();
@@ -168,7 +187,7 @@ public final class BlockDB {
             long id = rs.getLong("id");
             return new BlockImpl(version, timestamp, previousBlockId, totalFeeKER, payloadHash,
                     generatorId, generationSignature, blockSignature, previousBlockHash,
-                    cumulativeDifficulty, baseTarget, nextBlockId, height, id, loadTransactions ? TransactionHome.findBlockTransactions(con, id) : null);
+                    cumulativeDifficulty, baseTarget, nextBlockId, height, id, loadTransactions ? TransactionHome.findBlockTransactions(con, id, height) : null);
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
@@ -227,7 +246,16 @@ public final class BlockDB {
         BlockDB.deleteBlocksFrom(blockId);
     }
 
-    // relying on cascade triggers in the database to delete the transactions for all deleted blocks
+    /**
+     * Delete the specified block and all following blocks.  Blocks are deleted in height ranges
+     * starting with the last block, with the block transactions deleted by height before the blocks
+     * so the cascade trigger does not need to delete them one block at a time.  The database
+     * transaction is committed after each range, so the remaining blockchain is always contiguous.
+     * Derived tables, including the prunable tables, are rolled back separately by the caller.
+     *
+     * @param   blockId             First block to delete
+     * @return                      New last block
+     */
     static BlockImpl deleteBlocksFrom(long blockId) {
         if (!DB.db.isInTransaction()) {
             BlockImpl lastBlock;
@@ -244,19 +272,40 @@ public final class BlockDB {
             return lastBlock;
         }
         try (Connection con = getConnection();
-             PreparedStatement pstmtSelect = con.prepareStatement("SELECT db_id FROM block WHERE timestamp >= "
-                     + "IFNULL ((SELECT timestamp FROM block WHERE id = ?), " + Integer.MAX_VALUE + ") ORDER BY timestamp DESC");
-             PreparedStatement pstmtDelete = con.prepareStatement("DELETE FROM block WHERE db_id = ?")) {
+             PreparedStatement pstmtSelect = con.prepareStatement("SELECT height, (SELECT MAX(height) FROM block) AS max_height "
+                     + "FROM block WHERE id = ?");
+             PreparedStatement pstmtDeleteTransactions = con.prepareStatement("DELETE FROM transaction_sctk WHERE height >= ?");
+             PreparedStatement pstmtDeleteBlocks = con.prepareStatement("DELETE FROM block WHERE height >= ?")) {
             try {
+                int fromHeight = -1;
+                int toHeight = -1;
                 pstmtSelect.setLong(1, blockId);
                 try (ResultSet rs = pstmtSelect.executeQuery()) {
+                    if (rs.next()) {
+                        fromHeight = rs.getInt("height");
+                        toHeight = rs.getInt("max_height");
+                    }
+                }
+                if (fromHeight >= 0) {
+                    BlockArchive.truncate(fromHeight);
+                }
+                int blockCount = toHeight - fromHeight + 1;
+                int batchSize = Math.max(1, Constants.BATCH_COMMIT_SIZE);
+                boolean logProgress = (blockCount > batchSize);
+                int height = toHeight;
+                while (height >= fromHeight && fromHeight >= 0) {
+                    height = Math.max(fromHeight, height - batchSize + 1);
+                    pstmtDeleteTransactions.setInt(1, height);
+                    pstmtDeleteTransactions.executeUpdate();
+                    pstmtDeleteBlocks.setInt(1, height);
+                    pstmtDeleteBlocks.executeUpdate();
                     DB.db.commitTransaction();
-                    while (rs.next()) {
-        	            pstmtDelete.setLong(1, rs.getLong("db_id"));
-            	        pstmtDelete.executeUpdate();
-                        DB.db.commitTransaction();
+                    if (logProgress) {
+                        Logger.logInfoMessage("Deleted %d of %d blocks, blockchain height is now %d",
+                                toHeight - height + 1, blockCount, height - 1);
                     }
-	            }
+                    height -= 1;
+                }
                 BlockImpl lastBlock = findLastBlock();
                 lastBlock.setNextBlockId(0);
                 try (PreparedStatement pstmt = con.prepareStatement("UPDATE block SET next_block_id = NULL WHERE id = ?")) {
@@ -292,6 +341,7 @@ public final class BlockDB {
         try (Connection con = getConnection();
              Statement stmt = con.createStatement()) {
             try {
+                BlockArchive.truncate(0);
                 stmt.executeUpdate("SET REFERENTIAL_INTEGRITY FALSE");
                 stmt.executeUpdate("TRUNCATE TABLE transaction_sctk");
                 stmt.executeUpdate("TRUNCATE TABLE block");
@@ -16,7 +16,6 @@ import org.json.simple.JSONObject;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -87,6 +86,7 @@ public final class BlockImpl implements Block {
      */
     private volatile long generatorId;
     private volatile byte[] bytes = null;
+    private volatile byte[] hash = null;
 
     private BlockImpl(int version, int timestamp, long previousBlockId, long totalFeeKER, byte[] payloadHash,
                       byte[] generatorPublicKey, byte[] generationSignature, byte[] blockSignature, byte[] previousBlockHash, List<SmcTransactionImpl> transactions) {
@@ -121,6 +121,7 @@ public final class BlockImpl implements Block {
                 generatorPublicKey, generationSignature, null, previousBlockHash, transactions);
         blockSignature = Crypto.sign(bytes(), secretPhrase);
         bytes = null;
+        hash = null;
     }
 
     //for loading from database only
@@ -138,6 +139,17 @@ public final class BlockImpl implements Block {
         this.generatorId = generatorId;
     }
 
+    //for loading from the block archive only
+    BlockImpl(byte[] blockBytes, List<SmcTransactionImpl> blockTransactions, BigInteger cumulativeDifficulty, long baseTarget,
+              long nextBlockId, int height, long id) throws ShareschainExceptions.NotValidExceptions {
+        this(blockBytes, blockTransactions);
+        this.cumulativeDifficulty = cumulativeDifficulty;
+        this.baseTarget = baseTarget;
+        this.nextBlockId = nextBlockId;
+        this.height = height;
+        this.id = id;
+    }
+
     private BlockImpl(byte[] blockBytes, List<? extends SmcTransaction> blockTransactions) throws ShareschainExceptions.NotValidExceptions {
         ByteBuffer buffer = ByteBuffer.wrap(blockBytes);
         buffer.order(ByteOrder.LITTLE_ENDIAN);
@@ -225,7 +237,7 @@ public final class BlockImpl implements Block {
     @Override
     public List<SmcTransactionImpl> getSmcTransactions() {
         if (this.blockTransactions == null) {
-            List<SmcTransactionImpl> transactions = Collections.unmodifiableList(TransactionHome.findBlockTransactions(getId()));
+            List<SmcTransactionImpl> transactions = Collections.unmodifiableList(TransactionHome.findBlockTransactions(getId(), getHeight()));
             for (SmcTransactionImpl transaction : transactions) {
                 transaction.setBlock(this);
             }
@@ -267,7 +279,7 @@ public final class BlockImpl implements Block {
             if (blockSignature == null) {
                 throw new IllegalStateException("Block is not signed yet");
             }
-            byte[] hash = Crypto.sha256().digest(bytes());
+            byte[] hash = getHash();
             BigInteger bigInteger = new BigInteger(1, new byte[] {hash[7], hash[6], hash[5], hash[4], hash[3], hash[2], hash[1], hash[0]});
             id = bigInteger.longValue();
             stringId = bigInteger.toString();
@@ -327,6 +339,27 @@ public final class BlockImpl implements Block {
         return Arrays.copyOf(bytes(), bytes.length);
     }
 
+    @Override
+    public ByteBuffer getBytesBuffer() {
+        return ByteBuffer.wrap(bytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the block hash.  The block hash is used as the previous block hash of the next block
+     * and to derive the block identifier.  The hash is calculated once and must not be modified.
+     *
+     * @return                      SHA-256 hash of the block bytes
+     */
+    byte[] getHash() {
+        if (hash == null) {
+            if (blockSignature == null) {
+                throw new IllegalStateException("Block is not signed yet");
+            }
+            hash = Crypto.sha256(bytes());
+        }
+        return hash;
+    }
+
     byte[] bytes() {
         if (bytes == null) {
             ByteBuffer buffer = ByteBuffer.allocate(4 + 4 + 8 + 4 + 8 + 32 + 32 + 32 + 32 + (blockSignature != null ? 64 : 0));
@@ -385,9 +418,7 @@ public final class BlockImpl implements Block {
                 return false;
             }
 
-            MessageDigest digest = Crypto.sha256();
-            digest.update(previousBlock.generationSignature);
-            byte[] generationSignatureHash = digest.digest(getGeneratorPublicKey());
+            byte[] generationSignatureHash = Crypto.sha256(previousBlock.generationSignature, getGeneratorPublicKey());
             if (!Arrays.equals(generationSignature, generationSignatureHash)) {
                 return false;
             }
@@ -69,6 +69,10 @@ public interface Blockchain {
     DBIterator<? extends SmcTransaction> getTransactions(Mainchain chain, long accountId, int numberOfConfirmations,
                                                          byte type, byte subtype, int blockTimestamp, int from, int to);
 
+    DBIterator<? extends SmcTransaction> getTransactions(Mainchain chain, long accountId, int numberOfConfirmations,
+                                                         byte type, byte subtype, int blockTimestamp,
+                                                         TransactionCursor cursor, int limit);
+
     DBIterator<? extends SmcTransaction> getTransactions(Mainchain chain, Connection con, PreparedStatement pstmt);
 
     List<? extends Transaction> getExpectedTransactions(Filter<Transaction> filter);
@@ -79,4 +83,9 @@ public interface Blockchain {
                                                               int height, int numberOfConfirmations,
                                                               int from, int to);
 
+    DBIterator<? extends Transaction> getExecutedTransactions(Chain chain, long senderId, long recipientId,
+                                                              byte type, byte subtype,
+                                                              int height, int numberOfConfirmations,
+                                                              TransactionCursor cursor, int limit);
+
 }
@@ -208,13 +208,16 @@ public final class BlockchainImpl implements Blockchain {
         if (limit <= 0) {
             return Collections.emptyList();
         }
-        List<BlockImpl> result = new ArrayList<>();
+        List<BlockImpl> result = BlockArchive.getBlocksAfter(blockId, limit);
+        if (result.size() == limit) {
+            return result;
+        }
         try (Connection con = BlockDB.getConnection();
                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block "
                         + "WHERE db_id > IFNULL ((SELECT db_id FROM block WHERE id = ?), " + Long.MAX_VALUE + ") "
                         + "ORDER BY db_id ASC LIMIT ?")) {
-            pstmt.setLong(1, blockId);
-            pstmt.setInt(2, limit);
+            pstmt.setLong(1, result.isEmpty() ? blockId : result.get(result.size() - 1).getId());
+            pstmt.setInt(2, limit - result.size());
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
                     result.add(BlockDB.loadBlock(con, rs, true));
@@ -232,14 +235,23 @@ public final class BlockchainImpl implements Blockchain {
             return Collections.emptyList();
         }
         List<BlockImpl> result = new ArrayList<>();
+        for (BlockImpl block : BlockArchive.getBlocksAfter(blockId, blockList.size())) {
+            if (block.getId() != blockList.get(result.size())) {
+                return result;
+            }
+            result.add(block);
+        }
+        if (result.size() == blockList.size()) {
+            return result;
+        }
         try (Connection con = BlockDB.getConnection();
                 PreparedStatement pstmt = con.prepareStatement("SELECT * FROM block "
                         + "WHERE db_id > IFNULL ((SELECT db_id FROM block WHERE id = ?), " + Long.MAX_VALUE + ") "
                         + "ORDER BY db_id ASC LIMIT ?")) {
-            pstmt.setLong(1, blockId);
-            pstmt.setInt(2, blockList.size());
+            pstmt.setLong(1, result.isEmpty() ? blockId : result.get(result.size() - 1).getId());
+            pstmt.setInt(2, blockList.size() - result.size());
             try (ResultSet rs = pstmt.executeQuery()) {
-                int index = 0;
+                int index = result.size();
                 while (rs.next()) {
                     BlockImpl block = BlockDB.loadBlock(con, rs, true);
                     if (block.getId() != blockList.get(index++)) {
@@ -317,6 +329,27 @@ public final class BlockchainImpl implements Blockchain {
     @Override
     public DBIterator<? extends SmcTransaction> getTransactions(Mainchain chain, long accountId,
                                                                 int numberOfConfirmations, byte type, byte subtype, int blockTimestamp, int from, int to) {
+        return getTransactions(chain, accountId, numberOfConfirmations, type, subtype, blockTimestamp, null, from, to);
+    }
+
+    /**
+     * Get the account transactions following a cursor position
+     *
+     * Each branch of the union is limited separately so a page can be returned without
+     * reading the earlier transactions for the account
+     */
+    @Override
+    public DBIterator<? extends SmcTransaction> getTransactions(Mainchain chain, long accountId,
+                                                                int numberOfConfirmations, byte type, byte subtype, int blockTimestamp,
+                                                                TransactionCursor cursor, int limit) {
+        return getTransactions(chain, accountId, numberOfConfirmations, type, subtype, blockTimestamp,
+                cursor != null ? cursor : new TransactionCursor(Integer.MAX_VALUE, Short.MAX_VALUE, Long.MAX_VALUE),
+                0, limit > 0 ? limit - 1 : Integer.MAX_VALUE);
+    }
+
+    private DBIterator<? extends SmcTransaction> getTransactions(Mainchain chain, long accountId,
+                                                                 int numberOfConfirmations, byte type, byte subtype, int blockTimestamp,
+                                                                 TransactionCursor cursor, int from, int to) {
         int height = numberOfConfirmations > 0 ? getHeight() - numberOfConfirmations : Integer.MAX_VALUE;
         if (height < 0) {
             throw new IllegalArgumentException("Number of confirmations required " + numberOfConfirmations
@@ -324,35 +357,34 @@ public final class BlockchainImpl implements Blockchain {
         }
         Connection con = null;
         try {
-            StringBuilder buf = new StringBuilder();
-            buf.append("SELECT * FROM transaction_sctk WHERE recipient_id = ? AND sender_id <> ? ");
+            StringBuilder filter = new StringBuilder();
             if (blockTimestamp > 0) {
-                buf.append("AND block_timestamp >= ? ");
+                filter.append("AND block_timestamp >= ? ");
             }
             if (type < 0) {
-                buf.append("AND type = ? ");
+                filter.append("AND type = ? ");
                 if (subtype >= 0) {
-                    buf.append("AND subtype = ? ");
+                    filter.append("AND subtype = ? ");
                 }
             }
             if (height < Integer.MAX_VALUE) {
-                buf.append("AND height <= ? ");
+                filter.append("AND height <= ? ");
             }
-            buf.append("UNION ALL SELECT * FROM transaction_sctk WHERE sender_id = ? ");
-            if (blockTimestamp > 0) {
-                buf.append("AND block_timestamp >= ? ");
+            if (cursor != null) {
+                filter.append("AND ").append(TransactionCursor.CURSOR_CLAUSE);
             }
-            if (type < 0) {
-                buf.append("AND type = ? ");
-                if (subtype >= 0) {
-                    buf.append("AND subtype = ? ");
-                }
-            }
-            if (height < Integer.MAX_VALUE) {
-                buf.append("AND height <= ? ");
+            String sort = "ORDER BY block_timestamp DESC, transaction_index DESC, id DESC";
+            StringBuilder buf = new StringBuilder();
+            if (cursor != null) {
+                buf.append("(SELECT * FROM transaction_sctk WHERE recipient_id = ? AND sender_id <> ? ").append(filter)
+                        .append(sort).append(DBUtils.limitsClause(from, to)).append(") ");
+                buf.append("UNION ALL (SELECT * FROM transaction_sctk WHERE sender_id = ? ").append(filter)
+                        .append(sort).append(DBUtils.limitsClause(from, to)).append(") ");
+            } else {
+                buf.append("SELECT * FROM transaction_sctk WHERE recipient_id = ? AND sender_id <> ? ").append(filter);
+                buf.append("UNION ALL SELECT * FROM transaction_sctk WHERE sender_id = ? ").append(filter);
             }
-
-            buf.append("ORDER BY block_timestamp DESC, transaction_index DESC");
+            buf.append(sort);
             buf.append(DBUtils.limitsClause(from, to));
             con = DB.db.getConnection(Mainchain.mainchain.getDBSchema());
             PreparedStatement pstmt;
@@ -360,30 +392,14 @@ public final class BlockchainImpl implements Blockchain {
             pstmt = con.prepareStatement(buf.toString());
             pstmt.setLong(++i, accountId);
             pstmt.setLong(++i, accountId);
-            if (blockTimestamp > 0) {
-                pstmt.setInt(++i, blockTimestamp);
-            }
-            if (type < 0) {
-                pstmt.setByte(++i, type);
-                if (subtype >= 0) {
-                    pstmt.setByte(++i, subtype);
-                }
-            }
-            if (height < Integer.MAX_VALUE) {
-                pstmt.setInt(++i, height);
+            i = setTransactionFilter(pstmt, i, blockTimestamp, type, subtype, height, cursor);
+            if (cursor != null) {
+                i = DBUtils.setLimits(++i, pstmt, from, to) - 1;
             }
             pstmt.setLong(++i, accountId);
-            if (blockTimestamp > 0) {
-                pstmt.setInt(++i, blockTimestamp);
-            }
-            if (type < 0) {
-                pstmt.setByte(++i, type);
-                if (subtype >= 0) {
-                    pstmt.setByte(++i, subtype);
-                }
-            }
-            if (height < Integer.MAX_VALUE) {
-                pstmt.setInt(++i, height);
+            i = setTransactionFilter(pstmt, i, blockTimestamp, type, subtype, height, cursor);
+            if (cursor != null) {
+                i = DBUtils.setLimits(++i, pstmt, from, to) - 1;
             }
             DBUtils.setLimits(++i, pstmt, from, to);
             return getTransactions(chain, con, pstmt);
@@ -393,6 +409,26 @@ public final class BlockchainImpl implements Blockchain {
         }
     }
 
+    private static int setTransactionFilter(PreparedStatement pstmt, int i, int blockTimestamp, byte type, byte subtype,
+                                            int height, TransactionCursor cursor) throws SQLException {
+        if (blockTimestamp > 0) {
+            pstmt.setInt(++i, blockTimestamp);
+        }
+        if (type < 0) {
+            pstmt.setByte(++i, type);
+            if (subtype >= 0) {
+                pstmt.setByte(++i, subtype);
+            }
+        }
+        if (height < Integer.MAX_VALUE) {
+            pstmt.setInt(++i, height);
+        }
+        if (cursor != null) {
+            i = cursor.setCursor(pstmt, i);
+        }
+        return i;
+    }
+
     @Override
     public DBIterator<SmcTransactionImpl> getTransactions(Mainchain chain, Connection con, PreparedStatement pstmt) {
         return new DBIterator<>(con, pstmt, new DBIterator.ResultSetReader<SmcTransactionImpl>() {
@@ -424,10 +460,29 @@ public final class BlockchainImpl implements Blockchain {
         return result;
     }
 
+    @Override
     public DBIterator<? extends Transaction> getExecutedTransactions(Chain chain, long senderId, long recipientId,
                                                               byte type, byte subtype,
                                                               int height, int numberOfConfirmations,
                                                               int from, int to) {
+        return getExecutedTransactions(chain, senderId, recipientId, type, subtype, height, numberOfConfirmations,
+                null, from, to);
+    }
+
+    @Override
+    public DBIterator<? extends Transaction> getExecutedTransactions(Chain chain, long senderId, long recipientId,
+                                                              byte type, byte subtype,
+                                                              int height, int numberOfConfirmations,
+                                                              TransactionCursor cursor, int limit) {
+        return getExecutedTransactions(chain, senderId, recipientId, type, subtype, height, numberOfConfirmations,
+                cursor != null ? cursor : new TransactionCursor(Integer.MAX_VALUE, Short.MAX_VALUE, Long.MAX_VALUE),
+                0, limit > 0 ? limit - 1 : Integer.MAX_VALUE);
+    }
+
+    private DBIterator<? extends Transaction> getExecutedTransactions(Chain chain, long senderId, long recipientId,
+                                                               byte type, byte subtype,
+                                                               int height, int numberOfConfirmations,
+                                                               TransactionCursor cursor, int from, int to) {
         Connection con = null;
         try {
             boolean isChildChain = false;
@@ -489,6 +544,10 @@ public final class BlockchainImpl implements Blockchain {
                 buf.append(heightFilter);
             }
 
+            if (cursor != null && !isChildChain) {
+                buf.append(" AND ").append(TransactionCursor.CURSOR_CLAUSE);
+            }
+
             if (isChildChain) {
                 buf.append("UNION ALL SELECT transaction.*, phasing_poll_result.height AS execution_height FROM transaction ");
                 buf.append(" JOIN phasing_poll_result ON transaction.id = phasing_poll_result.id ");
@@ -504,7 +563,7 @@ public final class BlockchainImpl implements Blockchain {
                 }
                 buf.append("ORDER BY execution_height DESC, transaction_index DESC");
             } else {
-                buf.append("ORDER BY block_timestamp DESC, transaction_index DESC");
+                buf.append("ORDER BY block_timestamp DESC, transaction_index DESC, id DESC");
             }
 
             buf.append(DBUtils.limitsClause(from, to));
@@ -542,6 +601,10 @@ public final class BlockchainImpl implements Blockchain {
                 }
             } while (setPhasedTransactionsParameters);
 
+            if (cursor != null && !isChildChain) {
+                i = cursor.setCursor(pstmt, i);
+            }
+
             DBUtils.setLimits(++i, pstmt, from, to);
 
             return getTransactions((Mainchain)chain, con, pstmt);
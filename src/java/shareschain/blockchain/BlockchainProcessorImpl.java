@@ -15,6 +15,7 @@ import shareschain.database.DB;
 import shareschain.node.NetworkHandler;
 import shareschain.node.NetworkMessage;
 import shareschain.node.Node;
+import shareschain.node.NodeScore;
 import shareschain.node.Nodes;
 import shareschain.util.JSON;
 import shareschain.util.Listener;
@@ -31,10 +32,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -46,12 +49,15 @@ import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 public final class BlockchainProcessorImpl implements BlockchainProcessor {
 
@@ -72,6 +78,9 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         checksums = Collections.unmodifiableNavigableMap(map);
     }
 
+    /** Interval for checking slow block download requests (milliseconds) */
+    private static final long HEDGE_POLL_INTERVAL = 500;
+
     private static final BlockchainProcessorImpl instance = new BlockchainProcessorImpl();
 
     public static BlockchainProcessorImpl getInstance() {
@@ -447,23 +456,25 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         /**
          * Download the block chain
          *
+         * The download is broken into segments which are sized for each node based on the
+         * node's measured block rate.  A node that is able to return more than a full segment
+         * within the target response time will be given multiple concurrent requests.  A
+         * request that is taking much longer than expected for the node will be sent to a
+         * second node and the first response will be used.
+         *
          * @param   feederNode              Node supplying the blocks list
          * @param   commonBlock             Common block
          * @throws  InterruptedException    Download interrupted
          */
         private void downloadBlockchain(final Node feederNode, final Block commonBlock, final int startHeight) throws InterruptedException {
             Map<Long, NodeBlock> blockMap = new HashMap<>();
-            //
-            // Break the download into multiple segments.  The first block in each segment
-            // is the common block for that segment.
-            //
-            List<GetNextBlocks> getList = new ArrayList<>();
-            int segSize = 36;
             int stop = chainBlockIds.size() - 1;
-            for (int start = 0; start < stop; start += segSize) {
-                getList.add(new GetNextBlocks(chainBlockIds, start, Math.min(start + segSize, stop)));
-            }
-            int nextNodeIndex = ThreadLocalRandom.current().nextInt(connectedPublicNodes.size());
+            int nextStart = 0;
+            Deque<BlockSegment> retryList = new ArrayDeque<>();
+            Map<Future<List<Block>>, GetNextBlocks> activeRequests = new HashMap<>();
+            Map<Node, Integer> inFlight = new HashMap<>();
+            CompletionService<List<Block>> completionService = new ExecutorCompletionService<>(networkService);
+            boolean aborted = false;
             long maxResponseTime = 100;
             Node slowestNode = null;
             //
@@ -472,88 +483,105 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
             // The download will be aborted if we are unable to get a segment after
             // retrying with different nodes.
             //
-            download: while (!getList.isEmpty() && !connectedPublicNodes.isEmpty()) {
+            while (true) {
                 //
                 // Submit threads to issue 'getNextBlocks' requests.  The first segment
-                // will always be sent to the feeder node.  Subsequent segments will
-                // be sent to the feeder node if we failed trying to download the blocks
-                // from another node.  We will stop the download and process any pending
-                // blocks if we are unable to download a segment from the feeder node.
+                // will always be sent to the feeder node.  A failed segment will be sent
+                // to the feeder node unless the feeder node was the node that failed.
+                // We will stop issuing requests and process any pending blocks if we are
+                // unable to download a segment after retrying.
                 //
-                for (GetNextBlocks nextBlocks : getList) {
+                while (!aborted) {
+                    BlockSegment segment = retryList.pollFirst();
                     Node node;
-                    //判断是否有节点在处理
-                    if (nextBlocks.getRequestCount() > 1) {
-                        break download;
-                    }
-                    //第一组区块由eederNode进行处理
-                    if (nextBlocks.getStart() == 0 || nextBlocks.getRequestCount() != 0) {
-                        node = feederNode;
-                    } else {
-                        while (true) {
-                            if (connectedPublicNodes.isEmpty()) {
-                                break download;
-                            }
-                            if (nextNodeIndex >= connectedPublicNodes.size()) {
-                                nextNodeIndex = 0;
-                            }
-                            node = connectedPublicNodes.get(nextNodeIndex++);
-                            if (node.getState() != Node.State.CONNECTED) {
-                                connectedPublicNodes.remove(node);
-                                continue;
+                    if (segment != null) {
+                        if (segment.getFailureCount() > 1) {
+                            aborted = true;
+                            break;
+                        }
+                        node = (segment.getLastNode() != feederNode ? feederNode :
+                                selectNode(inFlight, feederNode));
+                        if (node == null) {
+                            if (activeRequests.isEmpty()) {
+                                aborted = true;
+                            } else {
+                                retryList.addFirst(segment);
                             }
                             break;
                         }
+                    } else if (nextStart < stop) {
+                        node = (nextStart == 0 ? feederNode : selectNode(inFlight, null));
+                        if (node == null) {
+                            break;
+                        }
+                        int segSize = node.getScore().getSegmentSize();
+                        segment = new BlockSegment(nextStart, Math.min(nextStart + segSize, stop));
+                        nextStart = segment.getStop();
+                    } else {
+                        break;
                     }
-                    if (nextBlocks.getNode() == node) {
-                        break download;
-                    }
-                    nextBlocks.setNode(node);
-                    Future<List<Block>> future = networkService.submit(nextBlocks);
-                    nextBlocks.setFuture(future);
+                    submitRequest(completionService, activeRequests, inFlight, segment, node);
+                }
+                if (activeRequests.isEmpty()) {
+                    break;
                 }
                 //
-                // Get the results.  A node is on a different fork if a returned
-                // block is not in the block identifier list.
+                // Get the next result.  A node is on a different fork if a returned
+                // block is not in the block identifier list.  A request that has not
+                // completed within the hedge delay for the node will be sent to
+                // another node.
                 //
-                Iterator<GetNextBlocks> it = getList.iterator();
-                while (it.hasNext()) {
-                    GetNextBlocks nextBlocks = it.next();
-                    List<Block> blockList;
-                    try {
-                        blockList = nextBlocks.getFuture().get();
-                    } catch (ExecutionException exc) {
-                        throw new RuntimeException(exc.getMessage(), exc);
-                    }
-                    if (blockList == null) {
-                        connectedPublicNodes.remove(nextBlocks.getNode());
-                        continue;
+                Future<List<Block>> future = completionService.poll(HEDGE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    if (!aborted) {
+                        hedgeRequests(completionService, activeRequests, inFlight);
                     }
-                    Node node = nextBlocks.getNode();
-                    int index = nextBlocks.getStart() + 1;
-                    for (Block block : blockList) {
-                        if (block.getId() != chainBlockIds.get(index)) {
-                            break;
-                        }
-                        blockMap.put(block.getId(), new NodeBlock(node, (BlockImpl)block));
-                        index++;
-                    }
-                    if (index > nextBlocks.getStop()) {
-                        it.remove();
-                    } else {
-                        nextBlocks.setStart(index - 1);
+                    continue;
+                }
+                GetNextBlocks nextBlocks = activeRequests.remove(future);
+                Node node = nextBlocks.getNode();
+                inFlight.merge(node, -1, Integer::sum);
+                BlockSegment segment = nextBlocks.getSegment();
+                segment.requestCompleted();
+                List<Block> blockList;
+                try {
+                    blockList = future.get();
+                } catch (ExecutionException exc) {
+                    throw new RuntimeException(exc.getMessage(), exc);
+                }
+                if (blockList == null) {
+                    node.getScore().recordFailure();
+                    connectedPublicNodes.remove(node);
+                    if (!segment.isComplete() && !segment.isPending()) {
+                        segment.requestFailed(node);
+                        retryList.addFirst(segment);
                     }
-                    //找出同步最慢的节点
-                    if (nextBlocks.getResponseTime() > maxResponseTime) {
-                        maxResponseTime = nextBlocks.getResponseTime();
-                        slowestNode = nextBlocks.getNode();
+                    continue;
+                }
+                node.getScore().recordResponse(blockList.size(), nextBlocks.getResponseTime());
+                int index = nextBlocks.getStart() + 1;
+                for (Block block : blockList) {
+                    if (block.getId() != chainBlockIds.get(index)) {
+                        break;
                     }
+                    blockMap.putIfAbsent(block.getId(), new NodeBlock(node, (BlockImpl)block));
+                    index++;
+                }
+                segment.setStart(index - 1);
+                if (!segment.isComplete() && !segment.isPending()) {
+                    segment.requestFailed(node);
+                    retryList.addFirst(segment);
+                }
+                //找出同步最慢的节点
+                if (nextBlocks.getResponseTime() > maxResponseTime) {
+                    maxResponseTime = nextBlocks.getResponseTime();
+                    slowestNode = node;
                 }
             }
             //节点多，同步区块数量大的情况下，删除同步最慢的节点
             if (slowestNode != null &&
                     slowestNode != feederNode &&
-                    NetworkHandler.getConnectionCount() >= segSize &&
+                    NetworkHandler.getConnectionCount() >= NodeScore.MAX_SEGMENT_SIZE &&
                     NetworkHandler.getConnectionCount() >= NetworkHandler.getMaxOutboundConnections() &&
                     chainBlockIds.size() > 360) {
                 Logger.logDebugMessage(slowestNode.getHost() + " took " + maxResponseTime + " ms, disconnecting");
@@ -601,6 +629,94 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
             }
         }
 
+        /**
+         * Select the node for the next request
+         *
+         * The node with the best score relative to its number of outstanding requests
+         * will be selected.  Nodes which are no longer connected are removed from the
+         * connected node list.
+         *
+         * @param   inFlight                Outstanding request count for each node
+         * @param   excludedNode            Node to exclude or null
+         * @return                          Selected node or null if no node is available
+         */
+        private Node selectNode(Map<Node, Integer> inFlight, Node excludedNode) {
+            connectedPublicNodes.removeIf(node -> node.getState() != Node.State.CONNECTED);
+            int count = connectedPublicNodes.size();
+            if (count == 0) {
+                return null;
+            }
+            Node selectedNode = null;
+            double selectedScore = 0;
+            int offset = ThreadLocalRandom.current().nextInt(count);
+            for (int i = 0; i < count; i++) {
+                Node node = connectedPublicNodes.get((offset + i) % count);
+                if (node == excludedNode) {
+                    continue;
+                }
+                int requests = inFlight.getOrDefault(node, 0);
+                NodeScore score = node.getScore();
+                if (requests >= score.getMaxInFlight()) {
+                    continue;
+                }
+                double nodeScore = score.getScore() / (requests + 1);
+                if (selectedNode == null || nodeScore > selectedScore) {
+                    selectedNode = node;
+                    selectedScore = nodeScore;
+                }
+            }
+            return selectedNode;
+        }
+
+        /**
+         * Submit a 'getNextBlocks' request
+         *
+         * @param   completionService       Completion service
+         * @param   activeRequests          Active requests
+         * @param   inFlight                Outstanding request count for each node
+         * @param   segment                 Block segment
+         * @param   node                    Node
+         */
+        private void submitRequest(CompletionService<List<Block>> completionService,
+                                   Map<Future<List<Block>>, GetNextBlocks> activeRequests,
+                                   Map<Node, Integer> inFlight, BlockSegment segment, Node node) {
+            GetNextBlocks nextBlocks = new GetNextBlocks(chainBlockIds, segment, node);
+            segment.requestStarted();
+            inFlight.merge(node, 1, Integer::sum);
+            activeRequests.put(completionService.submit(nextBlocks), nextBlocks);
+        }
+
+        /**
+         * Send slow requests to a second node
+         *
+         * A segment is sent to at most one additional node.  The blocks from the first
+         * successful response will be used.
+         *
+         * @param   completionService       Completion service
+         * @param   activeRequests          Active requests
+         * @param   inFlight                Outstanding request count for each node
+         */
+        private void hedgeRequests(CompletionService<List<Block>> completionService,
+                                   Map<Future<List<Block>>, GetNextBlocks> activeRequests,
+                                   Map<Node, Integer> inFlight) {
+            long now = System.currentTimeMillis();
+            List<GetNextBlocks> requests = new ArrayList<>(activeRequests.values());
+            for (GetNextBlocks nextBlocks : requests) {
+                BlockSegment segment = nextBlocks.getSegment();
+                if (segment.isHedged() || segment.isComplete() ||
+                        now - nextBlocks.getSubmitTime() < nextBlocks.getNode().getScore().getHedgeDelay()) {
+                    continue;
+                }
+                Node node = selectNode(inFlight, nextBlocks.getNode());
+                if (node == null) {
+                    break;
+                }
+                Logger.logDebugMessage("Request to " + nextBlocks.getNode().getHost() + " is slow, also sending to " + node.getHost());
+                segment.setHedged();
+                submitRequest(completionService, activeRequests, inFlight, segment, node);
+            }
+        }
+
     };
 
     /**
@@ -658,44 +774,188 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
     }
 
+    /**
+     * Block segment to be downloaded
+     *
+     * The first block in the segment is the common block for that segment.  The start
+     * index is advanced as blocks are received.
+     */
+    private static class BlockSegment {
+
+        /** Start index */
+        private int start;
+
+        /** Stop index */
+        private final int stop;
+
+        /** Number of outstanding requests */
+        private int pendingCount;
+
+        /** Number of failed attempts */
+        private int failureCount;
+
+        /** Last node to fail the segment */
+        private Node lastNode;
+
+        /** Segment has been sent to a second node */
+        private boolean hedged;
+
+        /**
+         * Create the block segment
+         *
+         * @param   start               Start index within the block identifier list
+         * @param   stop                Stop index within the block identifier list
+         */
+        BlockSegment(int start, int stop) {
+            this.start = start;
+            this.stop = stop;
+        }
+
+        /**
+         * Return the start index
+         *
+         * @return                      Start index
+         */
+        int getStart() {
+            return start;
+        }
+
+        /**
+         * Advance the start index
+         *
+         * @param   start               New start index
+         */
+        void setStart(int start) {
+            this.start = Math.max(this.start, start);
+        }
+
+        /**
+         * Return the stop index
+         *
+         * @return                      Stop index
+         */
+        int getStop() {
+            return stop;
+        }
+
+        /**
+         * Check if all blocks in the segment have been received
+         *
+         * @return                      TRUE if the segment is complete
+         */
+        boolean isComplete() {
+            return start >= stop;
+        }
+
+        /**
+         * Indicate a request has been issued for the segment
+         */
+        void requestStarted() {
+            pendingCount++;
+        }
+
+        /**
+         * Indicate a request for the segment has completed
+         */
+        void requestCompleted() {
+            pendingCount--;
+        }
+
+        /**
+         * Check if there are outstanding requests for the segment
+         *
+         * @return                      TRUE if a request is outstanding
+         */
+        boolean isPending() {
+            return pendingCount > 0;
+        }
+
+        /**
+         * Indicate the segment was not completely downloaded
+         *
+         * @param   node                Node that failed the segment
+         */
+        void requestFailed(Node node) {
+            failureCount++;
+            lastNode = node;
+            hedged = false;
+        }
+
+        /**
+         * Return the number of failed attempts
+         *
+         * @return                      Failure count
+         */
+        int getFailureCount() {
+            return failureCount;
+        }
+
+        /**
+         * Return the last node to fail the segment
+         *
+         * @return                      Node or null
+         */
+        Node getLastNode() {
+            return lastNode;
+        }
+
+        /**
+         * Check if the segment has been sent to a second node
+         *
+         * @return                      TRUE if the segment has been hedged
+         */
+        boolean isHedged() {
+            return hedged;
+        }
+
+        /**
+         * Indicate the segment has been sent to a second node
+         */
+        void setHedged() {
+            hedged = true;
+        }
+    }
+
     /**
      * Callable method to get the next block segment from the selected node
      */
     private static class GetNextBlocks implements Callable<List<Block>> {
 
-        /** Callable future */
-        private Future<List<Block>> future;
+        /** Block segment */
+        private final BlockSegment segment;
 
         /** Node */
-        private Node node;
+        private final Node node;
 
         /** Block identifier list */
         private final List<Long> blockIds;
 
         /** Start index */
-        private int start;
+        private final int start;
 
         /** Stop index */
         private final int stop;
 
-        /** Request count */
-        private int requestCount;
+        /** Time the request was submitted */
+        private final long submitTime;
 
         /** Time it took to return getNextBlocks */
-        private long responseTime;
+        private volatile long responseTime;
 
         /**
          * Create the callable future
          *
          * @param   blockIds            Block identifier list
-         * @param   start               Start index within the list
-         * @param   stop                Stop index within the list
+         * @param   segment             Block segment
+         * @param   node                Node
          */
-        GetNextBlocks(List<Long> blockIds, int start, int stop) {
+        GetNextBlocks(List<Long> blockIds, BlockSegment segment, Node node) {
             this.blockIds = blockIds;
-            this.start = start;
-            this.stop = stop;
-            this.requestCount = 0;
+            this.segment = segment;
+            this.node = node;
+            this.start = segment.getStart();
+            this.stop = segment.getStop();
+            this.submitTime = System.currentTimeMillis();
         }
 
         /**
@@ -705,7 +965,6 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
          */
         @Override
         public List<Block> call() {
-            requestCount++;
             List<Long> idList = new ArrayList<>(stop - start);
             for (int i = start + 1; i <= stop; i++) {
                 idList.add(blockIds.get(i));
@@ -737,21 +996,12 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
 
         /**
-         * Return the callable future
-         *
-         * @return                      Callable future
-         */
-        public Future<List<Block>> getFuture() {
-            return future;
-        }
-
-        /**
-         * Set the callable future
+         * Return the block segment
          *
-         * @param   future              Callable future
+         * @return                      Block segment
          */
-        void setFuture(Future<List<Block>> future) {
-            this.future = future;
+        public BlockSegment getSegment() {
+            return segment;
         }
 
         /**
@@ -763,15 +1013,6 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
             return node;
         }
 
-        /**
-         * Set the node
-         *
-         * @param   node                Node
-         */
-        void setNode(Node node) {
-            this.node = node;
-        }
-
         /**
          * Return the start index
          *
@@ -782,30 +1023,12 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         }
 
         /**
-         * Set the start index
-         *
-         * @param   start               Start index
-         */
-        void setStart(int start) {
-            this.start = start;
-        }
-
-        /**
-         * Return the stop index
-         *
-         * @return                      Stop index
-         */
-        public int getStop() {
-            return stop;
-        }
-
-        /**
-         * Return the request count
+         * Return the time the request was submitted
          *
-         * @return                      Request count
+         * @return                      Submit time
          */
-        public int getRequestCount() {
-            return requestCount;
+        public long getSubmitTime() {
+            return submitTime;
         }
 
         /**
@@ -1443,7 +1666,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
             throw new BlockNotAcceptedExceptions("Block timestamp " + block.getTimestamp() + " is before previous block timestamp "
                     + previousLastBlock.getTimestamp(), block);
         }
-        if (!Arrays.equals(Crypto.sha256().digest(previousLastBlock.bytes()), block.getPreviousBlockHash())) {
+        if (!Arrays.equals(previousLastBlock.getHash(), block.getPreviousBlockHash())) {
             throw new BlockNotAcceptedExceptions("Previous block hash doesn't match", block);
         }
         //6、数据库保存的父区块高度是否小于当前区块高度
@@ -1480,6 +1703,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         long calculatedTotalFee = 0;
         MessageDigest digest = Crypto.sha256();
         Set<Long> transactionIds = fullValidation ? new HashSet<>() : null;
+        TransactionImpl.verifySignatures(block.getSmcTransactions());
         for (SmcTransactionImpl smcTransaction : block.getSmcTransactions()) {
             /*
              *验证交易时间戳及交易签名信息
@@ -1835,7 +2059,7 @@ public final class BlockchainProcessorImpl implements BlockchainProcessor {
         /**
          * 获取上一个区块的hash值
          */
-        byte[] previousBlockHash = Crypto.sha256().digest(previousBlock.bytes());
+        byte[] previousBlockHash = previousBlock.getHash();
 
         /**
          * 生成区块信息
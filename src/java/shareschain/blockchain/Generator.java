@@ -12,7 +12,6 @@ import shareschain.util.Logger;
 import shareschain.util.ThreadPool;
 
 import java.math.BigInteger;
-import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -339,9 +338,7 @@ public final class Generator implements Comparable<Generator> {
             return BigInteger.ZERO;
         }
 
-        MessageDigest digest = Crypto.sha256();
-        digest.update(block.getGenerationSignature());
-        byte[] generationSignatureHash = digest.digest(publicKey);
+        byte[] generationSignatureHash = Crypto.sha256(block.getGenerationSignature(), publicKey);
         return new BigInteger(1, new byte[] {generationSignatureHash[7], generationSignatureHash[6], generationSignatureHash[5], generationSignatureHash[4], generationSignatureHash[3], generationSignatureHash[2], generationSignatureHash[1], generationSignatureHash[0]});
     }
 
@@ -12,8 +12,6 @@ import shareschain.util.Logger;
 import org.json.simple.JSONObject;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -211,50 +209,52 @@ public class SmcTransactionImpl extends TransactionImpl implements SmcTransactio
         return (int)(getId() ^ (getId() >>> 32));
     }
 
-    @Override
-    void save(Connection con, String schemaTable) throws SQLException {
-        try (PreparedStatement pstmt = con.prepareStatement("INSERT INTO " + schemaTable
+    /**
+     * Get the SQL statement used to insert transactions
+     *
+     * @param   schemaTable         Transaction table
+     * @return                      INSERT statement for use with save(PreparedStatement)
+     */
+    static String getInsertSQL(String schemaTable) {
+        return "INSERT INTO " + schemaTable
                 + " (id, deadline, recipient_id, amount, fee, height, "
                 + "block_id, signature, timestamp, type, subtype, sender_id, attachment_bytes, "
                 + "block_timestamp, full_hash, version, has_prunable_message, has_prunable_encrypted_message, "
                 + "has_prunable_attachment, ec_block_height, ec_block_id, transaction_index) "
-                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
-            int i = 0;
-            pstmt.setLong(++i, getId());
-            pstmt.setShort(++i, getDeadline());
-            DBUtils.setLongZeroToNull(pstmt, ++i, getRecipientId());
-            pstmt.setLong(++i, getAmount());
-            pstmt.setLong(++i, getFee());
-            pstmt.setInt(++i, getHeight());
-            pstmt.setLong(++i, getBlockId());
-            pstmt.setBytes(++i, getSignature());
-            pstmt.setInt(++i, getTimestamp());
-            pstmt.setByte(++i, getType().getType());
-            pstmt.setByte(++i, getType().getSubtype());
-            pstmt.setLong(++i, getSenderId());
-            int bytesLength = 0;
-            for (Appendix appendage : getAppendages()) {
-                bytesLength += appendage.getSize();
-            }
-            if (bytesLength == 0) {
-                pstmt.setNull(++i, Types.VARBINARY);
-            } else {
-                ByteBuffer buffer = ByteBuffer.allocate(bytesLength + 4);
-                buffer.order(ByteOrder.LITTLE_ENDIAN);
-                putAppendages(buffer, false);
-                pstmt.setBytes(++i, buffer.array());
-            }
-            pstmt.setInt(++i, getBlockTimestamp());
-            pstmt.setBytes(++i, getFullHash());
-            pstmt.setByte(++i, getVersion());
-            pstmt.setBoolean(++i, false);
-            pstmt.setBoolean(++i, false);
-            pstmt.setBoolean(++i, getAttachment() instanceof Appendix.Prunable);
-            pstmt.setInt(++i, getECBlockHeight());
-            DBUtils.setLongZeroToNull(pstmt, ++i, getECBlockId());
-            pstmt.setShort(++i, getIndex());
-            pstmt.executeUpdate();
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    @Override
+    void save(PreparedStatement pstmt) throws SQLException {
+        int i = 0;
+        pstmt.setLong(++i, getId());
+        pstmt.setShort(++i, getDeadline());
+        DBUtils.setLongZeroToNull(pstmt, ++i, getRecipientId());
+        pstmt.setLong(++i, getAmount());
+        pstmt.setLong(++i, getFee());
+        pstmt.setInt(++i, getHeight());
+        pstmt.setLong(++i, getBlockId());
+        pstmt.setBytes(++i, getSignature());
+        pstmt.setInt(++i, getTimestamp());
+        pstmt.setByte(++i, getType().getType());
+        pstmt.setByte(++i, getType().getSubtype());
+        pstmt.setLong(++i, getSenderId());
+        byte[] attachmentBytes = getAppendagesBytes();
+        if (attachmentBytes == null) {
+            pstmt.setNull(++i, Types.VARBINARY);
+        } else {
+            pstmt.setBytes(++i, attachmentBytes);
         }
+        pstmt.setInt(++i, getBlockTimestamp());
+        pstmt.setBytes(++i, getFullHash());
+        pstmt.setByte(++i, getVersion());
+        pstmt.setBoolean(++i, false);
+        pstmt.setBoolean(++i, false);
+        pstmt.setBoolean(++i, getAttachment() instanceof Appendix.Prunable);
+        pstmt.setInt(++i, getECBlockHeight());
+        DBUtils.setLongZeroToNull(pstmt, ++i, getECBlockId());
+        pstmt.setShort(++i, getIndex());
+        pstmt.addBatch();
     }
 
     static SmcTransactionImpl.BuilderImpl newTransactionBuilder(byte version, long amount, long fee, short deadline,
@@ -6,6 +6,7 @@ import shareschain.account.AccountChainLedger;
 import shareschain.util.Filter;
 import org.json.simple.JSONObject;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 public interface Transaction extends AccountChainLedger.LedgerEventId {
@@ -80,6 +81,10 @@ public interface Transaction extends AccountChainLedger.LedgerEventId {
 
     byte[] getPrunableBytes();
 
+    ByteBuffer getBytesBuffer();
+
+    ByteBuffer getPrunableBytesBuffer();
+
     JSONObject getJSONObject();
 
     JSONObject getPrunableAttachmentJSON();
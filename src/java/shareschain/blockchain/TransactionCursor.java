@@ -0,0 +1,64 @@
+package shareschain.blockchain;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Position of a transaction in the blockchain sort order (block timestamp descending,
+ * transaction index descending, transaction identifier descending).  A cursor is used
+ * to return the transactions following a previously returned transaction without
+ * skipping over the earlier transactions.
+ */
+public final class TransactionCursor {
+
+    private final int blockTimestamp;
+    private final short transactionIndex;
+    private final long transactionId;
+
+    public TransactionCursor(int blockTimestamp, short transactionIndex, long transactionId) {
+        this.blockTimestamp = blockTimestamp;
+        this.transactionIndex = transactionIndex;
+        this.transactionId = transactionId;
+    }
+
+    public TransactionCursor(Transaction transaction) {
+        this(transaction.getBlockTimestamp(), transaction.getIndex(), transaction.getId());
+    }
+
+    public int getBlockTimestamp() {
+        return blockTimestamp;
+    }
+
+    public short getTransactionIndex() {
+        return transactionIndex;
+    }
+
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * SQL condition selecting the transactions following the cursor position.  The block_timestamp
+     * range allows the condition to be resolved using a (account, block_timestamp) index.
+     */
+    static final String CURSOR_CLAUSE = "block_timestamp <= ? AND (block_timestamp < ? OR (block_timestamp = ? "
+            + "AND (transaction_index < ? OR (transaction_index = ? AND id < ?)))) ";
+
+    /**
+     * Set the cursor condition parameters
+     *
+     * @param   pstmt               Prepared statement
+     * @param   index               Index of the last parameter already set
+     * @return                      Index of the last parameter set
+     * @throws  SQLException        SQL error occurred
+     */
+    int setCursor(PreparedStatement pstmt, int index) throws SQLException {
+        pstmt.setInt(++index, blockTimestamp);
+        pstmt.setInt(++index, blockTimestamp);
+        pstmt.setInt(++index, blockTimestamp);
+        pstmt.setShort(++index, transactionIndex);
+        pstmt.setShort(++index, transactionIndex);
+        pstmt.setLong(++index, transactionId);
+        return index;
+    }
+}
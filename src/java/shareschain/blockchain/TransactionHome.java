@@ -152,6 +152,31 @@ public final class TransactionHome {
     }
 
 
+    /**
+     * Get the block transactions, using the block archive if the block has been archived
+     *
+     * @param   blockId             Block identifier
+     * @param   height              Block height
+     * @return                      Block transactions
+     */
+    static List<SmcTransactionImpl> findBlockTransactions(long blockId, int height) {
+        List<SmcTransactionImpl> transactions = BlockArchive.getTransactions(height, blockId);
+        return (transactions != null ? transactions : findBlockTransactions(blockId));
+    }
+
+    /**
+     * Get the block transactions, using the block archive if the block has been archived
+     *
+     * @param   con                 Database connection
+     * @param   blockId             Block identifier
+     * @param   height              Block height
+     * @return                      Block transactions
+     */
+    static List<SmcTransactionImpl> findBlockTransactions(Connection con, long blockId, int height) {
+        List<SmcTransactionImpl> transactions = BlockArchive.getTransactions(height, blockId);
+        return (transactions != null ? transactions : findBlockTransactions(con, blockId));
+    }
+
     /**
      * 根据区块id，到交易确认表transaction_sctk 中查询交易数据
      * @param blockId
@@ -220,10 +245,14 @@ public final class TransactionHome {
     }
 
     static void saveTransactions(Connection con, List<SmcTransactionImpl> transactions) {
-        try {
+        if (transactions.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement pstmt = con.prepareStatement(SmcTransactionImpl.getInsertSQL("transaction_sctk"))) {
             for (SmcTransactionImpl transaction : transactions) {
-                transaction.save(con, "transaction_sctk");
+                transaction.save(pstmt);
             }
+            pstmt.executeBatch();
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
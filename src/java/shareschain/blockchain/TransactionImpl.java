@@ -6,6 +6,7 @@ import shareschain.Shareschain;
 import shareschain.ShareschainExceptions;
 import shareschain.account.Account;
 import shareschain.util.crypto.Crypto;
+import shareschain.util.crypto.SignedMessage;
 import shareschain.util.Convert;
 import shareschain.util.Filter;
 import shareschain.util.JSON;
@@ -15,8 +16,7 @@ import org.json.simple.JSONObject;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.security.MessageDigest;
-import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -228,6 +228,8 @@ public abstract class TransactionImpl implements Transaction {
     private volatile byte[] fullHash;
     volatile byte[] bytes = null;
     volatile byte[] prunableBytes = null;
+    private volatile byte[] unsignedBytes = null;
+    private volatile int fullSize;
 
 
     TransactionImpl(BuilderImpl builder) {
@@ -399,12 +401,10 @@ public abstract class TransactionImpl implements Transaction {
                 throw new IllegalStateException("Transaction is not signed yet");
             }
             //现将交易相关信息转换成byte数组，然后在将下标为第69的位置开始将值替换为0，共替换64位，得到新的byte数组 替换原先交易中的签名信息
-            byte[] data = zeroSignature(getBytes());
+            byte[] data = unsignedBytes();
             //获取签名（通过密码对交易进行加密sha256签名），然后再经过sha256加密算法，算出一个交易的全hash
-            byte[] signatureHash = Crypto.sha256().digest(getSignature());
-            MessageDigest digest = Crypto.sha256();
-            digest.update(data);
-            fullHash = digest.digest(signatureHash);
+            byte[] signatureHash = Crypto.sha256(getSignature());
+            fullHash = Crypto.sha256(data, signatureHash);
             BigInteger bigInteger = new BigInteger(1, new byte[]{fullHash[7], fullHash[6], fullHash[5], fullHash[4], fullHash[3], fullHash[2], fullHash[1], fullHash[0]});
             id = bigInteger.longValue();//交易的全hash值取前8位的倒序值
             stringId = getChain().getId() + ":" + Convert.toHexString(getFullHash());
@@ -447,6 +447,26 @@ public abstract class TransactionImpl implements Transaction {
         return Arrays.copyOf(prunableBytes(), prunableBytes.length);
     }
 
+    /**
+     * Get a read-only view of the transaction bytes
+     *
+     * @return                      Transaction bytes
+     */
+    @Override
+    public final ByteBuffer getBytesBuffer() {
+        return ByteBuffer.wrap(bytes()).asReadOnlyBuffer();
+    }
+
+    /**
+     * Get a read-only view of the transaction bytes including the prunable appendages
+     *
+     * @return                      Transaction bytes
+     */
+    @Override
+    public final ByteBuffer getPrunableBytesBuffer() {
+        return ByteBuffer.wrap(prunableBytes()).asReadOnlyBuffer();
+    }
+
     //把交易相关信息 转换成一个byte数组
     public final byte[] bytes() {
         if (bytes == null) {
@@ -502,7 +522,22 @@ public abstract class TransactionImpl implements Transaction {
     }
 
     public final byte[] getUnsignedBytes() {
-        return zeroSignature(getBytes());
+        byte[] data = unsignedBytes();
+        return Arrays.copyOf(data, data.length);
+    }
+
+    /**
+     * Get the transaction bytes with the signature set to zero.  The bytes are created once
+     * and must not be modified.
+     *
+     * @return                      Unsigned transaction bytes
+     */
+    final byte[] unsignedBytes() {
+        if (unsignedBytes == null) {
+            byte[] data = bytes();
+            unsignedBytes = zeroSignature(Arrays.copyOf(data, data.length));
+        }
+        return unsignedBytes;
     }
 
     @Override
@@ -576,15 +611,46 @@ public abstract class TransactionImpl implements Transaction {
      */
     private boolean checkSignature() {
         if (!hasValidSignature) {
-            byte[] bytes = getBytes();//把交易相关信息 转换成一个byte数组
-            hasValidSignature = getSignature() != null && Crypto.verify(getSignature(), zeroSignature(bytes), getSenderPublicKey());
+            hasValidSignature = getSignature() != null && Crypto.verify(getSignature(), unsignedBytes(), getSenderPublicKey());
             if (!hasValidSignature) {
-                Logger.logWarningMessage("Invalid signature for transaction bytes " + Convert.toHexString(bytes));
+                Logger.logWarningMessage("Invalid signature for transaction bytes " + Convert.toHexString(bytes()));
             }
         }
         return hasValidSignature;
     }
 
+    /**
+     * Verify the transaction signatures as a batch.  A transaction with a valid signature is
+     * marked as verified so checkSignature() does not verify it again.  A transaction with an
+     * invalid signature is not marked and is rejected when its signature is checked.
+     *
+     * @param   transactions        Transactions to verify
+     */
+    static void verifySignatures(List<? extends TransactionImpl> transactions) {
+        List<TransactionImpl> pending = new ArrayList<>(transactions.size());
+        List<SignedMessage> messages = new ArrayList<>(transactions.size());
+        for (TransactionImpl transaction : transactions) {
+            if (transaction.hasValidSignature || transaction.getSignature() == null) {
+                continue;
+            }
+            byte[] publicKey = transaction.getSenderPublicKey();
+            if (publicKey == null) {
+                continue;
+            }
+            pending.add(transaction);
+            messages.add(new SignedMessage(transaction.getSignature(), transaction.unsignedBytes(), publicKey));
+        }
+        if (messages.size() < 2) {
+            return;
+        }
+        boolean[] results = Crypto.verifyBatch(messages);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i]) {
+                pending.get(i).hasValidSignature = true;
+            }
+        }
+    }
+
     //代表交易byteBuffer的字节数，数字的由来参考本类中的 generateBytes方法
     private static final int SIGNATURE_OFFSET = 4 + 1 + 1 + 1 + 4 + 2 + 32 + 8 + 8 + 8;
 
@@ -592,11 +658,28 @@ public abstract class TransactionImpl implements Transaction {
         return SIGNATURE_OFFSET + 64 + 4 + 8 + 4 + appendagesSize;
     }
 
+    /**
+     * Get the appendage flags and appendage bytes as stored in the database.  The bytes are
+     * taken from the cached transaction bytes instead of serializing the appendages again.
+     *
+     * @return                      Appendage bytes or null if there are no appendages
+     */
+    final byte[] getAppendagesBytes() {
+        if (appendagesSize == 0) {
+            return null;
+        }
+        int offset = SIGNATURE_OFFSET + 64 + 4 + 8;
+        return Arrays.copyOfRange(bytes(), offset, offset + 4 + appendagesSize);
+    }
+
     @Override
     public final int getFullSize() {
-        int fullSize = getSize() - appendagesSize;
-        for (Appendix.AbstractAppendix appendage : getAppendages()) {
-            fullSize += appendage.getFullSize();
+        if (fullSize == 0) {
+            int size = getSize() - appendagesSize;
+            for (Appendix.AbstractAppendix appendage : getAppendages()) {
+                size += appendage.getFullSize();
+            }
+            fullSize = size;
         }
         return fullSize;
     }
@@ -743,7 +826,13 @@ public abstract class TransactionImpl implements Transaction {
 
     abstract void apply();
 
-    abstract void save(Connection con, String schemaTable) throws SQLException;
+    /**
+     * Bind the transaction to an INSERT statement and add it to the statement batch
+     *
+     * @param   pstmt               Prepared INSERT statement
+     * @throws  SQLException        SQL error occurred
+     */
+    abstract void save(PreparedStatement pstmt) throws SQLException;
 
     abstract UnconfirmedTransaction newUnconfirmedTransaction(long arrivalTime, boolean isBundled);
 
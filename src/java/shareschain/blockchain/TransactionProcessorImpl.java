@@ -29,6 +29,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -226,7 +227,7 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
                         transactionList.add(transaction);
                         if (transactionList.size() >= 10) {
                             TransactionsInventory.cacheTransactions(transactionList);
-                            NetworkHandler.broadcastMessage(new NetworkMessage.TransactionsInventoryMessage(transactionList));
+                            NetworkHandler.broadcastMessage(new NetworkMessage.TransactionsInventoryMessage(transactionList, true));
                             transactionList.clear();
                         }
                     }
@@ -234,7 +235,7 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
 
                 if (transactionList.size() > 0) {
                     TransactionsInventory.cacheTransactions(transactionList);
-                    NetworkHandler.broadcastMessage(new NetworkMessage.TransactionsInventoryMessage(transactionList));
+                    NetworkHandler.broadcastMessage(new NetworkMessage.TransactionsInventoryMessage(transactionList, true));
                 }
 
             } catch (Exception e) {
@@ -707,6 +708,20 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
         List<TransactionImpl> sendToNodesTransactions = new ArrayList<>();
         List<TransactionImpl> addedUnconfirmedTransactions = new ArrayList<>();
         List<Exception> exceptions = new ArrayList<>();
+        //
+        // Only transactions which pass the checks made before signature verification in
+        // processTransaction() are verified as a batch
+        //
+        int curTime = Shareschain.getEpochTime();
+        Set<Long> verifyIds = new HashSet<>();
+        List<TransactionImpl> verifyTransactions = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            if (transaction instanceof TransactionImpl && verifyIds.add(transaction.getId()) &&
+                    isVerificationNeeded((TransactionImpl)transaction, curTime)) {
+                verifyTransactions.add((TransactionImpl)transaction);
+            }
+        }
+        TransactionImpl.verifySignatures(verifyTransactions);
         for (Transaction inputTransaction : transactions) {
             try {
                 TransactionImpl transaction = (TransactionImpl)inputTransaction;
@@ -744,6 +759,23 @@ public final class TransactionProcessorImpl implements TransactionProcessor {
         return addedUnconfirmedTransactions;
     }
 
+    /**
+     * Check if a node transaction passes the checks made by processTransaction() before
+     * the transaction signature is verified
+     *
+     * @param   transaction         Transaction
+     * @param   curTime             Current epoch time
+     * @return                      TRUE if the signature needs to be verified
+     */
+    private boolean isVerificationNeeded(TransactionImpl transaction, int curTime) {
+        if (transaction.getExpiration() < curTime || transaction.getTimestamp() > curTime + Constants.MAX_TIMEDRIFT ||
+                transaction.getVersion() < 1) {
+            return false;
+        }
+        return getUnconfirmedTransaction(unconfirmedTransactionDBKeyFactory.newKey(transaction.getId())) == null &&
+                !transaction.getChain().getTransactionHome().hasTransaction(transaction);
+    }
+
     /**
      * 处理未确认的交易
      * @param unconfirmedTransaction
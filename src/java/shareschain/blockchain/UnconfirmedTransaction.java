@@ -8,6 +8,7 @@ import shareschain.util.Filter;
 import shareschain.util.Logger;
 import org.json.simple.JSONObject;
 
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -226,6 +227,16 @@ public abstract class UnconfirmedTransaction implements Transaction {
         return transaction.getPrunableBytes();
     }
 
+    @Override
+    public ByteBuffer getBytesBuffer() {
+        return transaction.getBytesBuffer();
+    }
+
+    @Override
+    public ByteBuffer getPrunableBytesBuffer() {
+        return transaction.getPrunableBytesBuffer();
+    }
+
     @Override
     public JSONObject getJSONObject() {
         return transaction.getJSONObject();
@@ -10,7 +10,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,6 +20,9 @@ public abstract class EntityDBTable<T> extends DerivedDBTable {
 
     protected static final DBClause LATEST = new DBClause.FixedClause(" latest = TRUE ");
 
+    /** Snapshot height for the current thread or -1 if reads return the latest data */
+    private static final ThreadLocal<Integer> snapshotHeight = ThreadLocal.withInitial(() -> -1);
+
     private final boolean multiversion;
     protected final DBKey.Factory<T> dbKeyFactory;
     private final String defaultSort;
@@ -54,6 +59,39 @@ public abstract class EntityDBTable<T> extends DerivedDBTable {
         db.clearCache(schemaTable);
     }
 
+    /**
+     * Pin the blockchain height for reads by the current thread
+     *
+     * Reads which would return the latest data return the data as of the snapshot height instead,
+     * so a request sees a consistent view of all tables without holding the blockchain lock while
+     * new blocks are being pushed.  Pinned reads always use the height-limited queries, even when
+     * the snapshot height is the current height, so a block pushed during the request is not seen.
+     * The caller must obtain the snapshot height while holding the blockchain read lock.
+     * Full-text searches and blockchain lookups (blocks, transactions and the last block) are not
+     * affected.  The snapshot height must be cleared when the request is complete.
+     *
+     * @param   height              Snapshot height
+     */
+    public static void setSnapshotHeight(int height) {
+        snapshotHeight.set(height);
+    }
+
+    /**
+     * Clear the snapshot height for the current thread
+     */
+    public static void clearSnapshotHeight() {
+        snapshotHeight.remove();
+    }
+
+    /**
+     * Get the snapshot height for the current thread
+     *
+     * @return                      Snapshot height or -1 if the latest data is to be returned
+     */
+    public static int getSnapshotHeight() {
+        return snapshotHeight.get();
+    }
+
     public void checkAvailable(int height) {
         if (multiversion) {
             int minRollBackHeight = isPersistent() && Shareschain.getBlockchainProcessor().isScanning() ?
@@ -88,6 +126,10 @@ public abstract class EntityDBTable<T> extends DerivedDBTable {
     }
 
     public final T get(DBKey dbKey, boolean cache) {
+        int height = getSnapshotHeight();
+        if (height >= 0) {
+            return get(dbKey, height);
+        }
         if (cache && db.isInTransaction()) {
             T t = (T) db.getCache(schemaTable).get(dbKey);
             if (t != null) {
@@ -132,7 +174,86 @@ public abstract class EntityDBTable<T> extends DerivedDBTable {
         }
     }
 
+    /**
+     * Get the entities for a set of identifiers using a single query
+     *
+     * The table must have a single BIGINT key column.  The identifiers are joined
+     * with the table as a table-valued parameter, so one query is executed no matter
+     * how many identifiers are specified.
+     *
+     * @param   ids                 Entity identifiers
+     * @param   height              Blockchain height or -1 for the current height
+     * @return                      Map of identifier to entity (identifiers without an entity are not included)
+     */
+    public final Map<Long, T> getByIds(Long[] ids, int height) {
+        if (!(dbKeyFactory instanceof DBKey.LongKeyFactory)) {
+            throw new IllegalStateException("Table " + schemaTable + " does not have a single BIGINT key");
+        }
+        Map<Long, T> entities = new HashMap<>();
+        if (ids.length == 0) {
+            return entities;
+        }
+        if (height < 0) {
+            height = getSnapshotHeight();
+        }
+        boolean latest = (height < 0 || doesNotExceed(height));
+        if (!latest) {
+            checkAvailable(height);
+        }
+        String idColumn = "a." + dbKeyFactory.getPKColumns();
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("SELECT a.* FROM ").append(schemaTable).append(" AS a, TABLE (id BIGINT=?) T WHERE ")
+                .append(idColumn).append(" = T.id ");
+        if (latest) {
+            if (multiversion) {
+                sb.append("AND a.latest = TRUE");
+            }
+        } else {
+            sb.append("AND a.height <= ? ");
+            if (multiversion) {
+                sb.append("AND (a.latest = TRUE OR EXISTS (SELECT 1 FROM ").append(schemaTable).append(" AS b WHERE ")
+                        .append(dbKeyFactory.getSelfJoinClause()).append(" AND b.height > ?)) ");
+            }
+            sb.append("ORDER BY ").append(idColumn).append(", a.height DESC");
+        }
+        final boolean doCache = latest && db.isInTransaction();
+        try (Connection con = getConnection();
+             PreparedStatement pstmt = con.prepareStatement(sb.toString())) {
+            pstmt.setObject(1, ids);
+            if (!latest) {
+                pstmt.setInt(2, height);
+                if (multiversion) {
+                    pstmt.setInt(3, height);
+                }
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    DBKey dbKey = dbKeyFactory.newKey(rs);
+                    Long id = ((DBKey.LongKey)dbKey).getId();
+                    if (entities.containsKey(id)) {
+                        continue;       // Older version of an entity at the requested height
+                    }
+                    T t = (doCache ? (T)db.getCache(schemaTable).get(dbKey) : null);
+                    if (t == null) {
+                        t = load(con, rs, dbKey);
+                        if (doCache) {
+                            db.getCache(schemaTable).put(dbKey, t);
+                        }
+                    }
+                    entities.put(id, t);
+                }
+            }
+            return entities;
+        } catch (SQLException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+    }
+
     public final T getBy(DBClause dbClause) {
+        int height = getSnapshotHeight();
+        if (height >= 0) {
+            return getBy(dbClause, height);
+        }
         try (Connection con = getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM " + schemaTable
                      + " WHERE " + dbClause.getClause() + (multiversion ? " AND latest = TRUE LIMIT 1" : ""))) {
@@ -195,6 +316,10 @@ public abstract class EntityDBTable<T> extends DerivedDBTable {
     }
 
     public final DBIterator<T> getManyBy(DBClause dbClause, int from, int to, String sort) {
+        int height = getSnapshotHeight();
+        if (height >= 0) {
+            return getManyBy(dbClause, height, from, to, sort);
+        }
         Connection con = null;
         String sql ="SELECT * FROM " + schemaTable
                 + " WHERE " + dbClause.getClause() + (multiversion ? " AND latest = TRUE " : " ") + sort
@@ -297,6 +422,10 @@ public abstract class EntityDBTable<T> extends DerivedDBTable {
     }
 
     public final DBIterator<T> getAll(int from, int to, String sort) {
+        int height = getSnapshotHeight();
+        if (height >= 0) {
+            return getAll(height, from, to, sort);
+        }
         Connection con = null;
         try {
             con = getConnection();
@@ -351,6 +480,10 @@ public abstract class EntityDBTable<T> extends DerivedDBTable {
 
     @Override
     public final int getCount(DBClause dbClause) {
+        int height = getSnapshotHeight();
+        if (height >= 0) {
+            return getCount(dbClause, height);
+        }
         return multiversion ? super.getCount(dbClause.and(LATEST)) : super.getCount(dbClause);
     }
 
@@ -445,6 +578,9 @@ public abstract class EntityDBTable<T> extends DerivedDBTable {
     }
 
     private boolean doesNotExceed(int height) {
+        if (snapshotHeight.get() >= 0) {
+            return false;
+        }
         return Shareschain.getBlockchain().getHeight() <= height && ! (isPersistent() && Shareschain.getBlockchainProcessor().isScanning());
     }
 
@@ -218,6 +218,23 @@ public class SmcDBVersion extends DBVersion {
 
                 apply(null);
             case 68:
+                apply("ALTER TABLE node ADD COLUMN (connect_success INT NOT NULL DEFAULT 0, "
+                        + "connect_failure INT NOT NULL DEFAULT 0, latency INT NOT NULL DEFAULT 0, "
+                        + "bandwidth BIGINT NOT NULL DEFAULT 0, blacklist_count INT NOT NULL DEFAULT 0, "
+                        + "last_blacklisted INT NOT NULL DEFAULT 0, last_height INT NOT NULL DEFAULT 0)");
+            case 69:
+                apply("CREATE INDEX IF NOT EXISTS transaction_sctk_sender_id_timestamp_idx ON transaction_sctk "
+                        + "(sender_id, block_timestamp DESC, transaction_index DESC, id DESC)");
+            case 70:
+                apply("CREATE INDEX IF NOT EXISTS transaction_sctk_recipient_id_timestamp_idx ON transaction_sctk "
+                        + "(recipient_id, block_timestamp DESC, transaction_index DESC, id DESC)");
+            case 71:
+                apply("DROP INDEX IF EXISTS transaction_sctk_sender_id_idx");
+            case 72:
+                apply("DROP INDEX IF EXISTS transaction_sctk_recipient_id_idx");
+            case 73:
+                apply("CREATE INDEX IF NOT EXISTS transaction_sctk_height_idx ON transaction_sctk (height)");
+            case 74:
                 return;
             default:
                 throw new RuntimeException("Forging chain database inconsistent with code, at update " + nextUpdate
@@ -85,8 +85,8 @@ public class TransactionalDB extends BasicDB {
             con.doCommit();
             Set<TransactionCallback> callbacks = transactionCallback.get();
             if (callbacks != null) {
-                callbacks.forEach(TransactionCallback::commit);
                 transactionCallback.set(null);
+                callbacks.forEach(TransactionCallback::commit);
             }
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
@@ -106,8 +106,8 @@ public class TransactionalDB extends BasicDB {
             transactionCaches.get().clear();
             Set<TransactionCallback> callbacks = transactionCallback.get();
             if (callbacks != null) {
-                callbacks.forEach(TransactionCallback::rollback);
                 transactionCallback.set(null);
+                callbacks.forEach(TransactionCallback::rollback);
             }
         }
     }
@@ -119,6 +119,16 @@ public class TransactionalDB extends BasicDB {
         }
         localConnection.set(null);
         transactionCaches.set(null);
+        //
+        // Changes which were not committed are discarded when the connection is closed, so
+        // callbacks registered since the last commit are rolled back instead of being carried
+        // over to the next transaction on this thread
+        //
+        Set<TransactionCallback> callbacks = transactionCallback.get();
+        if (callbacks != null) {
+            transactionCallback.remove();
+            callbacks.forEach(TransactionCallback::rollback);
+        }
         long now = System.currentTimeMillis();
         long elapsed = now - ((DBConnection)con).txStart;
         if (elapsed >= txThreshold) {
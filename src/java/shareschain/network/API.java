@@ -270,9 +270,14 @@ public final class API {
             servletHolder.getRegistration().setMultipartConfig(new MultipartConfigElement(
                     null, Math.max(Shareschain.getIntProperty("shareschain.maxUploadFileSize"), Constants.MAX_TAGGED_DATA_DATA_LENGTH), -1L, 0));
 
+            servletHolder = apiHandler.addServlet(EventStreamServlet.class, "/shareschain-events");
+            servletHolder.setAsyncSupported(true);
+
             GzipHandler gzipHandler = new GzipHandler();
             if (!Shareschain.getBooleanProperty("shareschain.enableAPIServerGZIPFilter", isOpenAPI)) {
-                gzipHandler.setExcludedPaths("/shareschain", "/shareschain-proxy");
+                gzipHandler.setExcludedPaths("/shareschain", "/shareschain-proxy", "/shareschain-events");
+            } else {
+                gzipHandler.setExcludedPaths("/shareschain-events");
             }
             gzipHandler.setIncludedMethods("GET", "POST");
             gzipHandler.setMinGzipSize(MIN_COMPRESS_SIZE);
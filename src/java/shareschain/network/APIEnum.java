@@ -43,7 +43,9 @@ public enum APIEnum {
     GET_BALANCES("getBalances", GetBalances.instance),
     GET_EFFECTIVE_BALANCE("getEffectiveBalance", GetEffectiveBalance.instance),
     EVALUATE_EXPRESSION("evaluateExpression", EvaluateExpression.instance),
-    GET_EXECUTED_TRANSACTIONS("getExecutedTransactions", GetExecutedTransactions.instance);
+    GET_EXECUTED_TRANSACTIONS("getExecutedTransactions", GetExecutedTransactions.instance),
+    BATCH("batch", Batch.instance),
+    GET_ACCOUNT_BALANCES("getAccountBalances", GetAccountBalances.instance);
 
     private static final Map<String, APIEnum> apiByName = new HashMap<>();
 
@@ -7,9 +7,11 @@ import shareschain.node.Node;
 import shareschain.node.Nodes;
 import shareschain.util.Logger;
 import shareschain.util.ThreadPool;
+import org.eclipse.jetty.client.HttpClient;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
@@ -17,15 +19,48 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * <p>
+ * The API proxy forwards API requests to remote nodes which provide an open API.  A small set of
+ * serving nodes is selected and the proxy keeps persistent connections to these nodes, probing them
+ * periodically so the connections stay open and the response times stay current.
+ * </p>
+ * <p>
+ * The response time and error rate are tracked for each serving node as exponentially weighted
+ * moving averages.  A request is sent to the serving node with the best expected response time.
+ * A node is blacklisted for shareschain.apiProxyBlacklistingPeriod milliseconds when its error
+ * rate becomes too high and a replacement node is selected.
+ * </p>
+ */
 public class APIProxy {
     public static final Set<String> NOT_FORWARDED_REQUESTS;
 
+    /** Number of serving nodes */
+    static final int SERVING_NODE_COUNT = 3;
+
+    /** Serving node probe interval (seconds) */
+    private static final int PROBE_INTERVAL = 15;
+
+    /** Weight of a new response time sample */
+    private static final double LATENCY_ALPHA = 0.2;
+
+    /** Weight of a new error sample */
+    private static final double ERROR_ALPHA = 0.3;
+
+    /** Error rate which causes a node to be blacklisted */
+    private static final double MAX_ERROR_RATE = 0.5;
+
+    /** Assumed response time for a node without response time samples (milliseconds) */
+    private static final int DEFAULT_LATENCY = 500;
+
     private static final APIProxy instance = new APIProxy();
 
     static final boolean enableAPIProxy = Constants.isLightClient ||
             (Shareschain.getBooleanProperty("shareschain.enableAPIProxy") && ! API.isOpenAPI);
     private static final int blacklistingPeriod = Shareschain.getIntProperty("shareschain.apiProxyBlacklistingPeriod") / 1000;
+    static final int hedgeDelay = Shareschain.getIntProperty("shareschain.apiProxyHedgeDelay");
     static final String forcedServerURL = Shareschain.getStringProperty("shareschain.forceAPIProxyServerURL", "");
 
     private volatile String forcedNodeHost;
@@ -34,6 +69,10 @@ public class APIProxy {
 
     private final Map<String, Integer> blacklistedNodes = new ConcurrentHashMap<>();
 
+    private final Map<String, NodeStats> nodeStats = new ConcurrentHashMap<>();
+
+    private volatile HttpClient httpClient;
+
     static {
         Set<String> requests = new HashSet<>();
         requests.add("getBlockchainStatus");
@@ -71,9 +110,32 @@ public class APIProxy {
         }
     };
 
+    /**
+     * Send a getBlockchainStatus request to each serving node.  This keeps the proxy connections
+     * to the serving nodes open and provides response time samples when the proxy is idle.
+     */
+    private static final Runnable nodesProbeThread = () -> {
+        HttpClient client = instance.httpClient;
+        if (client == null || !isActivated() || !forcedServerURL.isEmpty()) {
+            return;
+        }
+        for (String host : instance.nodesHosts) {
+            Node node = Nodes.getNode(host);
+            if (node == null || !node.isApiConnectable()) {
+                continue;
+            }
+            long startTime = System.currentTimeMillis();
+            client.newRequest(node.getNodeApiUri().append("/shareschain?requestType=getBlockchainStatus").toString())
+                    .timeout(PROBE_INTERVAL, TimeUnit.SECONDS)
+                    .send(result -> instance.recordResponse(host, System.currentTimeMillis() - startTime,
+                            !result.isFailed() && result.getResponse().getStatus() == 200));
+        }
+    };
+
     static {
         if (!Constants.isOffline && enableAPIProxy) {
             ThreadPool.scheduleThread("APIProxyNodesUpdate", nodesUpdateThread, 60);
+            ThreadPool.scheduleThread("APIProxyNodesProbe", nodesProbeThread, PROBE_INTERVAL);
         }
     }
 
@@ -88,55 +150,136 @@ public class APIProxy {
     }
 
     Node getServingNode(String requestType) {
+        List<Node> servingNodes = getServingNodes(requestType);
+        return (servingNodes.isEmpty() ? null : servingNodes.get(0));
+    }
+
+    /**
+     * Get the serving nodes for a request
+     *
+     * The serving nodes which have not disabled the requested API are returned in order of
+     * expected response time.  Additional nodes are selected if there are fewer than
+     * SERVING_NODE_COUNT nodes available for the request.
+     *
+     * @param   requestType             Request type or null
+     * @return                          Serving nodes ordered by expected response time
+     */
+    List<Node> getServingNodes(String requestType) {
         if (forcedNodeHost != null) {
-            return Nodes.getNode(forcedNodeHost);
+            Node node = Nodes.getNode(forcedNodeHost);
+            return (node != null ? Collections.singletonList(node) : Collections.emptyList());
         }
-
-        APIEnum requestAPI = APIEnum.fromName(requestType);
-        if (!nodesHosts.isEmpty()) {
-            for (String host : nodesHosts) {
-                Node node = Nodes.getNode(host);
-                if (node != null && node.isApiConnectable() && !node.getDisabledAPIs().contains(requestAPI)) {
-                    return node;
-                }
+        APIEnum requestAPI = (requestType != null ? APIEnum.fromName(requestType) : null);
+        List<Node> servingNodes = new ArrayList<>();
+        List<String> currentNodesHosts = nodesHosts;
+        for (String host : currentNodesHosts) {
+            Node node = Nodes.getNode(host);
+            if (node != null && node.isApiConnectable() && !blacklistedNodes.containsKey(host) &&
+                    (requestAPI == null || !node.getDisabledAPIs().contains(requestAPI))) {
+                servingNodes.add(node);
             }
         }
-
-        List<Node> connectableNodes = Nodes.getNodes(p -> p.isApiConnectable() && !blacklistedNodes.containsKey(p.getHost()));
-        if (connectableNodes.isEmpty()) {
-            return null;
+        if (servingNodes.size() < SERVING_NODE_COUNT) {
+            selectNodes(requestAPI, servingNodes);
         }
-        // subset of connectable nodes that have at least one new API enabled, which was disabled for the
-        // The first node (element 0 of nodesHosts) is chosen at random. Next nodes are chosen randomly from a
-        // previously chosen nodes. In worst case the size of nodesHosts will be the number of APIs
-        Node node = getRandomAPINode(connectableNodes);
-        if (node == null) {
-            return null;
+        servingNodes.sort(Comparator.comparingDouble(node -> getScore(node.getHost())));
+        if (!servingNodes.isEmpty() && (requestAPI == null || mainNodeAnnouncedAddress == null)) {
+            mainNodeAnnouncedAddress = servingNodes.get(0).getAnnouncedAddress();
         }
+        return servingNodes;
+    }
 
-        Node resultNode = null;
-        List<String> currentNodesHosts = new ArrayList<>();
-        EnumSet<APIEnum> disabledAPIs = EnumSet.noneOf(APIEnum.class);
-        currentNodesHosts.add(node.getHost());
-        mainNodeAnnouncedAddress = node.getAnnouncedAddress();
-        if (!node.getDisabledAPIs().contains(requestAPI)) {
-            resultNode = node;
+    /**
+     * Select additional serving nodes
+     *
+     * Nodes are chosen at random from the connectable nodes which have not disabled the
+     * requested API.  Serving nodes which are not usable for the request and have the worst
+     * response times are replaced when there are too many serving nodes.
+     *
+     * @param   requestAPI              Requested API or null
+     * @param   servingNodes            Serving nodes for the request
+     */
+    private synchronized void selectNodes(APIEnum requestAPI, List<Node> servingNodes) {
+        Set<String> selectedHosts = new HashSet<>();
+        servingNodes.forEach(node -> selectedHosts.add(node.getHost()));
+        List<Node> connectableNodes = Nodes.getNodes(p -> p.isApiConnectable() &&
+                !blacklistedNodes.containsKey(p.getHost()) && !selectedHosts.contains(p.getHost()) &&
+                (requestAPI == null || !p.getDisabledAPIs().contains(requestAPI)));
+        List<String> addedHosts = new ArrayList<>();
+        while (servingNodes.size() < SERVING_NODE_COUNT) {
+            Node node = getRandomAPINode(connectableNodes);
+            if (node == null) {
+                break;
+            }
+            servingNodes.add(node);
+            addedHosts.add(node.getHost());
         }
-        while (!disabledAPIs.isEmpty() && !connectableNodes.isEmpty()) {
-            // remove all nodes that do not introduce new enabled APIs
-            connectableNodes.removeIf(p -> p.getDisabledAPIs().containsAll(disabledAPIs));
-            node = getRandomAPINode(connectableNodes);
-            if (node != null) {
-                currentNodesHosts.add(node.getHost());
-                if (!node.getDisabledAPIs().contains(requestAPI)) {
-                    resultNode = node;
+        if (addedHosts.isEmpty()) {
+            return;
+        }
+        List<String> currentNodesHosts = new ArrayList<>(nodesHosts);
+        currentNodesHosts.removeIf(host -> blacklistedNodes.containsKey(host) || Nodes.getNode(host) == null);
+        currentNodesHosts.addAll(addedHosts);
+        if (currentNodesHosts.size() > SERVING_NODE_COUNT) {
+            List<String> replaceableHosts = new ArrayList<>(currentNodesHosts);
+            replaceableHosts.removeIf(host -> selectedHosts.contains(host) || addedHosts.contains(host));
+            replaceableHosts.sort(Comparator.comparingDouble(this::getScore).reversed());
+            for (String host : replaceableHosts) {
+                if (currentNodesHosts.size() <= SERVING_NODE_COUNT) {
+                    break;
                 }
-                disabledAPIs.retainAll(node.getDisabledAPIs());
+                currentNodesHosts.remove(host);
+                nodeStats.remove(host);
             }
         }
         nodesHosts = Collections.unmodifiableList(currentNodesHosts);
-        Logger.logInfoMessage("Selected API node " + resultNode + " node hosts selected " + currentNodesHosts);
-        return resultNode;
+        Logger.logInfoMessage("Selected API nodes " + addedHosts + " serving nodes " + currentNodesHosts);
+    }
+
+    /**
+     * Record the result of a request sent to a serving node
+     *
+     * @param   host                    Node host
+     * @param   latency                 Response time (milliseconds)
+     * @param   success                 TRUE if the request was successful
+     */
+    void recordResponse(String host, long latency, boolean success) {
+        NodeStats stats = nodeStats.computeIfAbsent(host, k -> new NodeStats());
+        if (stats.update(latency, success) > MAX_ERROR_RATE) {
+            Logger.logDebugMessage("Blacklisting API node " + host + " due to errors");
+            blacklistHost(host);
+        }
+    }
+
+    /**
+     * Get the expected response time for a node
+     *
+     * @param   host                    Node host
+     * @return                          Expected response time (milliseconds)
+     */
+    double getScore(String host) {
+        NodeStats stats = nodeStats.get(host);
+        return (stats != null ? stats.getScore() : DEFAULT_LATENCY);
+    }
+
+    /**
+     * Get the average response time for a node
+     *
+     * @param   host                    Node host
+     * @return                          Average response time or -1 if there are no samples (milliseconds)
+     */
+    long getLatency(String host) {
+        NodeStats stats = nodeStats.get(host);
+        return (stats != null ? stats.getLatency() : -1);
+    }
+
+    /**
+     * Set the HTTP client used to send requests to the serving nodes
+     *
+     * @param   httpClient              HTTP client
+     */
+    void setHttpClient(HttpClient httpClient) {
+        this.httpClient = httpClient;
     }
 
     Node setForcedNode(Node node) {
@@ -174,9 +317,14 @@ public class APIProxy {
             return false;
         }
         blacklistedNodes.put(host, Shareschain.getEpochTime() + blacklistingPeriod);
-        if (nodesHosts.contains(host)) {
-            nodesHosts = Collections.emptyList();
-            getServingNode(null);
+        nodeStats.remove(host);
+        synchronized (this) {
+            if (nodesHosts.contains(host)) {
+                List<String> currentNodesHosts = new ArrayList<>(nodesHosts);
+                currentNodesHosts.remove(host);
+                nodesHosts = Collections.unmodifiableList(currentNodesHosts);
+                mainNodeAnnouncedAddress = null;
+            }
         }
         return true;
     }
@@ -188,4 +336,51 @@ public class APIProxy {
         int index = ThreadLocalRandom.current().nextInt(nodes.size());
         return nodes.remove(index);
     }
+
+    /**
+     * Serving node response statistics
+     */
+    private static final class NodeStats {
+
+        /** Average response time (milliseconds) or -1 if there are no samples */
+        private double latency = -1;
+
+        /** Average error rate */
+        private double errorRate;
+
+        /**
+         * Update the statistics
+         *
+         * The response time is updated only for successful requests
+         *
+         * @param   responseTime        Response time (milliseconds)
+         * @param   success             TRUE if the request was successful
+         * @return                      Updated error rate
+         */
+        private synchronized double update(long responseTime, boolean success) {
+            if (success) {
+                latency = (latency < 0 ? responseTime : latency + LATENCY_ALPHA * (responseTime - latency));
+            }
+            errorRate += ERROR_ALPHA * ((success ? 0.0 : 1.0) - errorRate);
+            return errorRate;
+        }
+
+        /**
+         * Get the expected response time with a penalty for errors
+         *
+         * @return                      Expected response time (milliseconds)
+         */
+        private synchronized double getScore() {
+            return (latency < 0 ? DEFAULT_LATENCY : latency) * (1.0 + 10.0 * errorRate);
+        }
+
+        /**
+         * Get the average response time
+         *
+         * @return                      Average response time or -1 if there are no samples (milliseconds)
+         */
+        private synchronized long getLatency() {
+            return (long)latency;
+        }
+    }
 }
@@ -9,14 +9,23 @@ import shareschain.util.Logger;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.proxy.AsyncMiddleManServlet;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.MultiMap;
 import org.eclipse.jetty.util.UrlEncoded;
 import org.json.simple.JSONStreamAware;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.ByteArrayOutputStream;
@@ -24,7 +33,12 @@ import java.io.IOException;
 import java.io.Writer;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static shareschain.network.JSONResponses.ERROR_NOT_ALLOWED;
 
@@ -32,14 +46,20 @@ public final class APIProxyServlet extends AsyncMiddleManServlet {
 
     private static final String REMOTE_URL = APIProxyServlet.class.getName() + ".remoteUrl";
     private static final String REMOTE_SERVER_IDLE_TIMEOUT = APIProxyServlet.class.getName() + ".remoteServerIdleTimeout";
+    private static final String REMOTE_HOST = APIProxyServlet.class.getName() + ".remoteHost";
+    private static final String REMOTE_START_TIME = APIProxyServlet.class.getName() + ".remoteStartTime";
     static final int PROXY_IDLE_TIMEOUT_DELTA = 5000;
 
+    /** Minimum hedge delay (milliseconds) */
+    private static final int MIN_HEDGE_DELAY = 50;
+
     static void initClass() {}
 
     @Override
     public void init(ServletConfig config) throws ServletException {
         super.init(config);
         config.getServletContext().setAttribute("apiServlet", new APIServlet());
+        APIProxy.getInstance().setHttpClient(getHttpClient());
     }
 
     @Override
@@ -56,6 +76,13 @@ public final class APIProxyServlet extends AsyncMiddleManServlet {
                 if (parameters.containsKey("secretPhrase") || parameters.containsKey("adminPassword") || parameters.containsKey("sharedKey")) {
                     throw new ParameterExceptions(JSONResponses.PROXY_SECRET_DATA_DETECTED);
                 }
+                if (isHedgeable(request, requestType)) {
+                    List<Node> servingNodes = APIProxy.getInstance().getServingNodes(requestType);
+                    if (!servingNodes.isEmpty()) {
+                        new HedgedRequest(request, response, servingNodes).start();
+                        return;
+                    }
+                }
                 if (!initRemoteRequest(request, requestType)) {
                     if (Nodes.getNodes(node -> node.getState() == Node.State.CONNECTED, 1).size() >= 1) {
                         responseJson = JSONResponses.API_PROXY_NO_OPEN_API_NODES;
@@ -163,6 +190,8 @@ public final class APIProxyServlet extends AsyncMiddleManServlet {
             }
             uri = servingNode.getNodeApiUri();
             clientRequest.setAttribute(REMOTE_SERVER_IDLE_TIMEOUT, servingNode.getApiServerIdleTimeout());
+            clientRequest.setAttribute(REMOTE_HOST, servingNode.getHost());
+            clientRequest.setAttribute(REMOTE_START_TIME, System.currentTimeMillis());
         }
         uri.append("/shareschain");
         String query = clientRequest.getQueryString();
@@ -173,6 +202,22 @@ public final class APIProxyServlet extends AsyncMiddleManServlet {
         return true;
     }
 
+    /**
+     * Check if a request can be hedged
+     *
+     * A read-only GET request can be sent to a second serving node if the first node does not
+     * respond within the hedge delay
+     *
+     * @param   request             Client request
+     * @param   requestType         Request type
+     * @return                      TRUE if the request can be hedged
+     */
+    private boolean isHedgeable(HttpServletRequest request, String requestType) {
+        return APIProxy.hedgeDelay > 0 && APIProxy.forcedServerURL.isEmpty() &&
+                HttpMethod.GET.is(request.getMethod()) &&
+                !APIServlet.apiRequestHandlers.get(requestType).requirePost();
+    }
+
     private boolean isForwardable(String requestType) {
         APIServlet.APIRequestHandler apiRequestHandler = APIServlet.apiRequestHandlers.get(requestType);
         if (!apiRequestHandler.requireBlockchain()) {
@@ -195,15 +240,449 @@ public final class APIProxyServlet extends AsyncMiddleManServlet {
 
     private class APIProxyResponseListener extends AsyncMiddleManServlet.ProxyResponseListener {
 
+        private final HttpServletRequest request;
+
         APIProxyResponseListener(HttpServletRequest request, HttpServletResponse response) {
             super(request, response);
+            this.request = request;
         }
 
         @Override
         public void onFailure(Response response, Throwable failure) {
             super.onFailure(response, failure);
             Logger.logErrorMessage("proxy failed", failure);
-            APIProxy.getInstance().blacklistHost(response.getRequest().getHost());
+        }
+
+        @Override
+        public void onComplete(Result result) {
+            super.onComplete(result);
+            String host = (String)request.getAttribute(REMOTE_HOST);
+            Long startTime = (Long)request.getAttribute(REMOTE_START_TIME);
+            if (host != null && startTime != null) {
+                APIProxy.getInstance().recordResponse(host, System.currentTimeMillis() - startTime,
+                        !result.isFailed() && result.getResponse().getStatus() == HttpStatus.OK_200);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     * A hedged request is sent to the serving node with the best expected response time.  The request
+     * is also sent to the next serving node if there is no response within the hedge delay or if the
+     * first request fails.  The first node to return a successful status is selected and its response
+     * content is streamed to the client, so the response size is not limited.  The other request is
+     * aborted.  An unsuccessful status is relayed to the client when there is no other node left to
+     * try.  A failure after the response has been started aborts the client response.
+     * </p>
+     * <p>
+     * The response content is written using non-blocking servlet output.  The content callback for
+     * the remote response is not completed until the write has completed, so the remote content is
+     * not read faster than the client can accept it and the HttpClient threads are never blocked.
+     * </p>
+     * <p>
+     * The hedge delay is twice the average response time of the first node, limited by
+     * shareschain.apiProxyHedgeDelay.  The client request times out after the remote request
+     * timeouts for all of the serving nodes plus the hedge delay.
+     * </p>
+     */
+    private final class HedgedRequest implements AsyncListener {
+
+        /** Client request */
+        private final HttpServletRequest clientRequest;
+
+        /** Client response */
+        private final HttpServletResponse clientResponse;
+
+        /** Serving nodes ordered by expected response time */
+        private final List<Node> servingNodes;
+
+        /** Asynchronous context */
+        private AsyncContext context;
+
+        /** Remote requests */
+        private final List<Request> remoteRequests = new ArrayList<>();
+
+        /** Number of remote requests in progress */
+        private int activeCount;
+
+        /** Request has been completed */
+        private boolean completed;
+
+        /** Selected remote response listener or null if no response has been selected */
+        private RemoteResponseListener selectedListener;
+
+        /** Asynchronous context has been completed */
+        private final AtomicBoolean contextCompleted = new AtomicBoolean();
+
+        /**
+         * Create a hedged request
+         *
+         * @param   clientRequest       Client request
+         * @param   clientResponse      Client response
+         * @param   servingNodes        Serving nodes ordered by expected response time
+         */
+        private HedgedRequest(HttpServletRequest clientRequest, HttpServletResponse clientResponse, List<Node> servingNodes) {
+            this.clientRequest = clientRequest;
+            this.clientResponse = clientResponse;
+            this.servingNodes = servingNodes.subList(0, Math.min(servingNodes.size(), 2));
+        }
+
+        /**
+         * Start the request
+         */
+        private void start() {
+            long timeout = APIProxy.hedgeDelay;
+            for (Node node : servingNodes) {
+                timeout += getRequestTimeout(node);
+            }
+            context = clientRequest.startAsync();
+            context.setTimeout(timeout);
+            context.addListener(this);
+            synchronized (this) {
+                send();
+            }
+            if (servingNodes.size() > 1) {
+                long latency = APIProxy.getInstance().getLatency(servingNodes.get(0).getHost());
+                long delay = (latency < 0 ? APIProxy.hedgeDelay :
+                        Math.min(APIProxy.hedgeDelay, Math.max(2 * latency, MIN_HEDGE_DELAY)));
+                getHttpClient().getScheduler().schedule(this::hedge, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * Get the remote request timeout for a node
+         *
+         * @param   node                Serving node
+         * @return                      Request timeout (milliseconds)
+         */
+        private long getRequestTimeout(Node node) {
+            return Math.max(node.getApiServerIdleTimeout() - PROXY_IDLE_TIMEOUT_DELTA, PROXY_IDLE_TIMEOUT_DELTA);
+        }
+
+        /**
+         * Send the request to the next serving node if the request has not completed
+         */
+        private synchronized void hedge() {
+            if (!completed && remoteRequests.size() < servingNodes.size()) {
+                send();
+            }
+        }
+
+        /**
+         * Send the request to the next serving node
+         */
+        private void send() {
+            Node node = servingNodes.get(remoteRequests.size());
+            StringBuilder uri = node.getNodeApiUri().append("/shareschain");
+            String query = clientRequest.getQueryString();
+            if (query != null) {
+                uri.append('?').append(query);
+            }
+            Request remoteRequest = getHttpClient().newRequest(uri.toString())
+                    .method(HttpMethod.GET)
+                    .timeout(getRequestTimeout(node), TimeUnit.MILLISECONDS);
+            remoteRequests.add(remoteRequest);
+            activeCount++;
+            remoteRequest.send(new RemoteResponseListener(remoteRequest, node.getHost()));
+        }
+
+        /**
+         * Select a remote response
+         *
+         * A response with an unsuccessful status is selected only if there is no other
+         * serving node left to try
+         *
+         * @param   listener            Remote response listener
+         * @param   success             TRUE if the response has a successful status
+         * @return                      TRUE if the response was selected
+         */
+        private boolean selectResponse(RemoteResponseListener listener, boolean success) {
+            List<Request> abortRequests;
+            synchronized (this) {
+                if (completed) {
+                    return false;
+                }
+                if (!success && (remoteRequests.size() < servingNodes.size() || activeCount > 1)) {
+                    return false;
+                }
+                completed = true;
+                selectedListener = listener;
+                abortRequests = new ArrayList<>(remoteRequests);
+                abortRequests.remove(listener.request);
+            }
+            abortRequests.forEach(request -> request.abort(new CancellationException("Hedged request completed")));
+            clientResponse.setHeader("Cache-Control", "no-cache, no-store, must-revalidate, private");
+            clientResponse.setHeader("Pragma", "no-cache");
+            clientResponse.setDateHeader("Expires", 0);
+            return true;
+        }
+
+        /**
+         * Process a completed remote request
+         *
+         * @param   listener            Remote response listener
+         * @param   result              Request result
+         */
+        private void processResult(RemoteResponseListener listener, Result result) {
+            boolean success = !result.isFailed() && result.getResponse().getStatus() == HttpStatus.OK_200;
+            boolean selected;
+            synchronized (this) {
+                activeCount--;
+                selected = (selectedListener == listener);
+                if (!selected) {
+                    if (completed) {
+                        return;
+                    }
+                    APIProxy.getInstance().recordResponse(listener.host,
+                            System.currentTimeMillis() - listener.startTime, false);
+                    if (remoteRequests.size() < servingNodes.size()) {
+                        send();
+                        return;
+                    }
+                    if (activeCount > 0) {
+                        return;
+                    }
+                    completed = true;
+                }
+            }
+            if (selected) {
+                APIProxy.getInstance().recordResponse(listener.host,
+                        System.currentTimeMillis() - listener.startTime, success);
+                if (!result.isFailed()) {
+                    //
+                    // The remote status and content have been relayed to the client
+                    //
+                    if (contextCompleted.compareAndSet(false, true)) {
+                        context.complete();
+                    }
+                } else {
+                    //
+                    // The response has been started, so the client connection is aborted
+                    //
+                    Logger.logDebugMessage("Proxy response failed: " + result.getFailure());
+                    abortClientResponse();
+                }
+            } else {
+                if (result.isFailed()) {
+                    Logger.logErrorMessage("proxy failed", result.getFailure());
+                }
+                if (contextCompleted.compareAndSet(false, true)) {
+                    sendProxyResponseError(clientRequest, clientResponse, HttpStatus.BAD_GATEWAY_502);
+                }
+            }
+        }
+
+        /**
+         * Abort a client response which has been started
+         */
+        private void abortClientResponse() {
+            if (!contextCompleted.compareAndSet(false, true)) {
+                return;
+            }
+            if (!clientResponse.isCommitted()) {
+                sendProxyResponseError(clientRequest, clientResponse, HttpStatus.BAD_GATEWAY_502);
+                return;
+            }
+            try {
+                // Jetty closes the connection when the status is -1
+                clientResponse.sendError(-1);
+            } catch (IOException | IllegalStateException ignore) {
+                // Connection already closed
+            }
+            context.complete();
+        }
+
+        /**
+         * Client request timed out (AsyncListener interface)
+         *
+         * @param   event               Async event
+         */
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            List<Request> abortRequests;
+            boolean started;
+            synchronized (this) {
+                started = (selectedListener != null);
+                completed = true;
+                abortRequests = new ArrayList<>(remoteRequests);
+            }
+            abortRequests.forEach(request -> request.abort(new TimeoutException("Hedged request timed out")));
+            if (started) {
+                abortClientResponse();
+            } else if (contextCompleted.compareAndSet(false, true)) {
+                sendProxyResponseError(clientRequest, clientResponse, HttpStatus.GATEWAY_TIMEOUT_504);
+            }
+        }
+
+        /**
+         * Async operation completed (AsyncListener interface)
+         *
+         * @param   event               Async event
+         */
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        /**
+         * Async error detected (AsyncListener interface)
+         *
+         * @param   event               Async event
+         */
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        /**
+         * Async operation started (AsyncListener interface)
+         *
+         * @param   event               Async event
+         */
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        /**
+         * Remote response listener.  The response status and content are relayed to the client
+         * if the response is selected.
+         */
+        private final class RemoteResponseListener extends Response.Listener.Adapter implements WriteListener {
+
+            /** Remote request */
+            private final Request request;
+
+            /** Node host */
+            private final String host;
+
+            /** Request start time */
+            private final long startTime = System.currentTimeMillis();
+
+            /** Response has been selected */
+            private volatile boolean selected;
+
+            /** Client output stream */
+            private ServletOutputStream out;
+
+            /** Content waiting to be written or null if the content has been written */
+            private ByteBuffer pendingContent;
+
+            /** Callback for the current content or null if there is no content in progress */
+            private Callback pendingCallback;
+
+            /**
+             * Create a remote response listener
+             *
+             * @param   request         Remote request
+             * @param   host            Node host
+             */
+            private RemoteResponseListener(Request request, String host) {
+                this.request = request;
+                this.host = host;
+            }
+
+            @Override
+            public void onHeaders(Response response) {
+                if (!selectResponse(this, response.getStatus() == HttpStatus.OK_200)) {
+                    response.abort(new CancellationException("Hedged response not selected"));
+                    return;
+                }
+                clientResponse.setStatus(response.getStatus());
+                String contentType = response.getHeaders().get(HttpHeader.CONTENT_TYPE);
+                if (contentType != null) {
+                    clientResponse.setContentType(contentType);
+                }
+                try {
+                    synchronized (this) {
+                        out = clientResponse.getOutputStream();
+                        out.setWriteListener(this);
+                    }
+                    selected = true;
+                } catch (IOException | IllegalStateException e) {
+                    response.abort(e);
+                }
+            }
+
+            @Override
+            public void onContent(Response response, ByteBuffer content, Callback callback) {
+                if (!selected) {
+                    callback.succeeded();
+                    return;
+                }
+                synchronized (this) {
+                    pendingContent = content;
+                    pendingCallback = callback;
+                }
+                writeContent();
+            }
+
+            @Override
+            public void onComplete(Result result) {
+                processResult(this, result);
+            }
+
+            /**
+             * Client output is ready (WriteListener interface)
+             */
+            @Override
+            public void onWritePossible() {
+                writeContent();
+            }
+
+            /**
+             * Client output failed (WriteListener interface)
+             *
+             * @param   failure         Failure
+             */
+            @Override
+            public void onError(Throwable failure) {
+                Callback callback;
+                synchronized (this) {
+                    callback = pendingCallback;
+                    pendingContent = null;
+                    pendingCallback = null;
+                }
+                if (callback != null) {
+                    callback.failed(failure);
+                } else {
+                    request.abort(failure);
+                }
+            }
+
+            /**
+             * Write the pending content to the client
+             *
+             * The content callback is completed once the write has completed.  If the client
+             * output is not ready, the write is resumed by onWritePossible().
+             */
+            private void writeContent() {
+                Callback callback;
+                try {
+                    synchronized (this) {
+                        if (pendingCallback == null || !out.isReady()) {
+                            return;
+                        }
+                        if (pendingContent != null) {
+                            ByteBuffer content = pendingContent;
+                            pendingContent = null;
+                            if (content.hasArray()) {
+                                out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+                            } else {
+                                byte[] bytes = new byte[content.remaining()];
+                                content.get(bytes);
+                                out.write(bytes);
+                            }
+                            if (!out.isReady()) {
+                                return;
+                            }
+                        }
+                        callback = pendingCallback;
+                        pendingCallback = null;
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    onError(e);
+                    return;
+                }
+                callback.succeeded();
+            }
         }
     }
 
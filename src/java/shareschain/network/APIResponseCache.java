@@ -0,0 +1,316 @@
+package shareschain.network;
+
+import shareschain.Shareschain;
+import shareschain.blockchain.BlockchainProcessor;
+import shareschain.blockchain.TransactionProcessor;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The API response cache holds encoded responses for request handlers which return a result
+ * that is completely determined by the request parameters and the last block.  A request
+ * handler opts in by returning a non-zero cache lifetime.
+ * </p>
+ * <p>
+ * The cache key consists of the request type, the handler parameters in the order defined by the
+ * handler and the last block identifier.  Parameters not used by the handler (such as the random
+ * parameter added by the wallet) are not included in the key.  The key for a handler which returns
+ * unconfirmed state also includes the unconfirmed pool generation, which is incremented each time
+ * transactions are added to or removed from the unconfirmed pool.  All cached responses are discarded
+ * when a block is pushed or popped.  A response is not saved if the last block changed while the
+ * response was being created.  Requests which include an administrator password are not cached.
+ * </p>
+ * <p>
+ * The request processing time is not included in a cached response.  It is added to the response
+ * each time the response is returned.
+ * </p>
+ * <p>
+ * The shareschain.apiResponseCacheSize property specifies the maximum total size of the cached
+ * responses in kilobytes (0 disables the cache) and the shareschain.apiResponseCacheMaxEntrySize
+ * property specifies the maximum size of a single response in kilobytes.  The least recently used
+ * responses are discarded when the cache is full.
+ * </p>
+ */
+final class APIResponseCache {
+
+    /** Cache lifetime for a response determined by the last block (seconds) */
+    static final int BLOCK_LIFETIME = 3600;
+
+    /** Cache lifetime for a response which can include unconfirmed transactions (seconds) */
+    static final int UNCONFIRMED_LIFETIME = 10;
+
+    /** Cache lifetime for a response which includes the current server status (seconds) */
+    static final int STATUS_LIFETIME = 1;
+
+    /** Maximum total size of the cached responses (bytes) */
+    private static final long maxCacheSize = Shareschain.getIntProperty("shareschain.apiResponseCacheSize") * 1024L;
+
+    /** Maximum size of a single cached response (bytes) */
+    private static final int maxEntrySize = Shareschain.getIntProperty("shareschain.apiResponseCacheMaxEntrySize") * 1024;
+
+    /** Response cache is enabled */
+    private static final boolean cacheEnabled = (maxCacheSize > 0 && maxEntrySize > 0);
+
+    /** Cached responses in least-recently-used order */
+    private static final LinkedHashMap<String, CacheEntry> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    /** Current total size of the cached responses */
+    private static long cacheSize;
+
+    /** Cache generation (incremented each time the cache is cleared) */
+    private static long cacheGeneration;
+
+    /** Unconfirmed pool generation (incremented each time the unconfirmed pool changes) */
+    private static volatile long unconfirmedGeneration;
+
+    static {
+        if (cacheEnabled) {
+            Shareschain.getBlockchainProcessor().addListener(block -> clear(), BlockchainProcessor.Event.BLOCK_PUSHED);
+            Shareschain.getBlockchainProcessor().addListener(block -> clear(), BlockchainProcessor.Event.BLOCK_POPPED);
+            Shareschain.getTransactionProcessor().addListener(transactions -> unconfirmedChanged(),
+                    TransactionProcessor.Event.ADDED_UNCONFIRMED_TRANSACTIONS);
+            Shareschain.getTransactionProcessor().addListener(transactions -> unconfirmedChanged(),
+                    TransactionProcessor.Event.REMOVED_UNCONFIRMED_TRANSACTIONS);
+        }
+    }
+
+    private APIResponseCache() {}
+
+    /**
+     * Check if the response cache is enabled
+     *
+     * @return                          TRUE if the cache is enabled
+     */
+    static boolean isEnabled() {
+        return cacheEnabled;
+    }
+
+    /**
+     * Get the cache key for a request
+     *
+     * Each parameter name and value is prefixed with its length, so a value containing the
+     * separator characters cannot produce the same key as a different set of parameters.
+     *
+     * @param   requestType             Request type
+     * @param   handler                 Request handler
+     * @param   req                     HTTP request
+     * @param   lastBlockId             Last block identifier
+     * @return                          Cache key
+     */
+    static String getKey(String requestType, APIServlet.APIRequestHandler handler, HttpServletRequest req,
+                         long lastBlockId) {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append(requestType).append('|').append(Long.toUnsignedString(lastBlockId));
+        if (handler.includesUnconfirmed()) {
+            sb.append('|').append(unconfirmedGeneration);
+        }
+        for (String name : handler.getParameterList()) {
+            String[] values = req.getParameterValues(name);
+            if (values == null) {
+                continue;
+            }
+            sb.append('|');
+            appendField(sb, name);
+            for (String value : values) {
+                sb.append('=');
+                appendField(sb, value.trim());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Append a length-prefixed field to a cache key
+     *
+     * @param   sb                      Cache key
+     * @param   field                   Field value
+     */
+    private static void appendField(StringBuilder sb, String field) {
+        sb.append(field.length()).append(':').append(field);
+    }
+
+    /**
+     * Get a cached response
+     *
+     * @param   key                     Cache key
+     * @param   lifetime                Maximum response age (seconds)
+     * @return                          Cached response or null if the response is not cached
+     */
+    static synchronized CacheEntry get(String key, int lifetime) {
+        CacheEntry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.timestamp > lifetime * 1000L) {
+            cache.remove(key);
+            cacheSize -= entry.response.length;
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Get the current cache generation
+     *
+     * @return                          Cache generation
+     */
+    static synchronized long getGeneration() {
+        return cacheGeneration;
+    }
+
+    /**
+     * Save a response
+     *
+     * The response is not saved if the cache has been cleared since the response was started
+     *
+     * @param   key                     Cache key
+     * @param   response                Encoded response
+     * @param   generation              Cache generation when the response was started
+     * @param   addProcessingTime       TRUE if the request processing time is to be added when the response is returned
+     */
+    static synchronized void put(String key, byte[] response, long generation, boolean addProcessingTime) {
+        if (generation != cacheGeneration || response.length > maxEntrySize) {
+            return;
+        }
+        CacheEntry oldEntry = cache.put(key, new CacheEntry(response, addProcessingTime));
+        if (oldEntry != null) {
+            cacheSize -= oldEntry.response.length;
+        }
+        cacheSize += response.length;
+        Iterator<Map.Entry<String, CacheEntry>> it = cache.entrySet().iterator();
+        while (cacheSize > maxCacheSize && it.hasNext()) {
+            cacheSize -= it.next().getValue().response.length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Discard all cached responses
+     */
+    static synchronized void clear() {
+        cache.clear();
+        cacheSize = 0;
+        cacheGeneration++;
+    }
+
+    /**
+     * Unconfirmed pool has changed
+     */
+    private static synchronized void unconfirmedChanged() {
+        unconfirmedGeneration++;
+    }
+
+    /**
+     * Get the request processing time field to be appended to an encoded JSON object
+     *
+     * @param   responseLength          Length of the encoded JSON object
+     * @param   processingTime          Request processing time (milliseconds)
+     * @return                          Processing time field followed by the closing brace
+     */
+    static String getProcessingTimeField(int responseLength, long processingTime) {
+        return (responseLength > 2 ? "," : "") + "\"requestProcessingTime\":" + processingTime + "}";
+    }
+
+    /**
+     * Create a writer which copies the response as it is written
+     *
+     * @param   writer                  Response writer
+     * @return                          Caching writer
+     */
+    static CachingWriter getWriter(Writer writer) {
+        return new CachingWriter(writer);
+    }
+
+    /**
+     * Cached response
+     */
+    static final class CacheEntry {
+
+        /** Encoded response */
+        private final byte[] response;
+
+        /** Add the request processing time when the response is returned */
+        private final boolean addProcessingTime;
+
+        /** Time the response was created */
+        private final long timestamp;
+
+        private CacheEntry(byte[] response, boolean addProcessingTime) {
+            this.response = response;
+            this.addProcessingTime = addProcessingTime;
+            this.timestamp = System.currentTimeMillis();
+        }
+
+        /**
+         * Write the cached response
+         *
+         * @param   out                 Output stream
+         * @param   processingTime      Request processing time (milliseconds)
+         * @throws  IOException         I/O error occurred
+         */
+        void write(OutputStream out, long processingTime) throws IOException {
+            if (addProcessingTime) {
+                out.write(response, 0, response.length - 1);
+                out.write(getProcessingTimeField(response.length, processingTime).getBytes(StandardCharsets.UTF_8));
+            } else {
+                out.write(response);
+            }
+        }
+    }
+
+    /**
+     * Writer which copies the response to a buffer as it is written to the response writer.
+     * The copy is discarded if the response exceeds the maximum cache entry size.
+     */
+    static final class CachingWriter extends Writer {
+
+        /** Response writer */
+        private final Writer writer;
+
+        /** Response copy or null if the response is too large to cache */
+        private StringBuilder sb = new StringBuilder(1024);
+
+        private CachingWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            writer.write(cbuf, off, len);
+            if (sb != null) {
+                if (sb.length() + len > maxEntrySize) {
+                    sb = null;
+                } else {
+                    sb.append(cbuf, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+        /**
+         * Get the encoded response
+         *
+         * @return                      Encoded response or null if the response is too large to cache
+         */
+        byte[] getResponse() {
+            return (sb != null ? sb.toString().getBytes(StandardCharsets.UTF_8) : null);
+        }
+    }
+}
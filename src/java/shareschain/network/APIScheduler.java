@@ -0,0 +1,202 @@
+package shareschain.network;
+
+import shareschain.Shareschain;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The API scheduler limits the number of expensive requests that can execute at the same time
+ * so that a burst of expensive requests can not use all of the API server threads and delay
+ * inexpensive requests such as getBlockchainStatus.
+ * </p>
+ * <p>
+ * Each expensive request type can have at most shareschain.apiExpensiveRequestLimit requests
+ * executing at the same time.  Additional requests wait for up to shareschain.apiRequestQueueTimeout
+ * milliseconds for a request to complete.  A request is rejected with a "server busy" error if it
+ * can not be started within that time or if shareschain.apiExpensiveRequestQueueSize requests are
+ * already waiting.
+ * </p>
+ * <p>
+ * Request counts, queue times and execution times are tracked for all request types and are returned
+ * by the getState API.
+ * </p>
+ */
+final class APIScheduler {
+
+    /** Maximum number of concurrent requests for an expensive request type */
+    private static final int expensiveRequestLimit = Shareschain.getIntProperty("shareschain.apiExpensiveRequestLimit");
+
+    /** Maximum number of waiting requests for an expensive request type */
+    private static final int expensiveRequestQueueSize = Shareschain.getIntProperty("shareschain.apiExpensiveRequestQueueSize");
+
+    /** Maximum time a request can wait before it is started (milliseconds) */
+    private static final int requestQueueTimeout = Shareschain.getIntProperty("shareschain.apiRequestQueueTimeout");
+
+    /** Request types */
+    private static final Map<String, RequestType> requestTypes = new ConcurrentHashMap<>();
+
+    private APIScheduler() {}
+
+    /**
+     * Get the scheduler entry for a request type
+     *
+     * @param   name                    Request type name
+     * @param   handler                 Request handler
+     * @return                          Request type
+     */
+    static RequestType getRequestType(String name, APIServlet.APIRequestHandler handler) {
+        return requestTypes.computeIfAbsent(name,
+                k -> new RequestType(k, handler.isExpensive() ? expensiveRequestLimit : 0));
+    }
+
+    /**
+     * Get the request statistics
+     *
+     * @return                          Request statistics sorted by request type
+     */
+    static JSONArray getStatistics() {
+        JSONArray statistics = new JSONArray();
+        new TreeMap<>(requestTypes).values().forEach(requestType -> statistics.add(requestType.getStatistics()));
+        return statistics;
+    }
+
+    /**
+     * Request type scheduling and statistics
+     */
+    static final class RequestType {
+
+        /** Request type name */
+        private final String name;
+
+        /** Maximum number of concurrent requests or 0 if there is no limit */
+        private final int limit;
+
+        /** Execution permits */
+        private final Semaphore permits;
+
+        /** Number of executing requests */
+        private int activeCount;
+
+        /** Number of waiting requests */
+        private int queuedCount;
+
+        /** Number of completed requests */
+        private long requestCount;
+
+        /** Number of rejected requests */
+        private long rejectedCount;
+
+        /** Total queue time (milliseconds) */
+        private long totalQueueTime;
+
+        /** Maximum queue time (milliseconds) */
+        private long maxQueueTime;
+
+        /** Total execution time (milliseconds) */
+        private long totalExecutionTime;
+
+        /** Maximum execution time (milliseconds) */
+        private long maxExecutionTime;
+
+        /**
+         * Create a request type
+         *
+         * @param   name                Request type name
+         * @param   limit               Maximum number of concurrent requests or 0 if there is no limit
+         */
+        private RequestType(String name, int limit) {
+            this.name = name;
+            this.limit = limit;
+            this.permits = (limit > 0 ? new Semaphore(limit) : null);
+        }
+
+        /**
+         * Start a request
+         *
+         * The request must be ended by calling end() if the request is started
+         *
+         * @return                      Start time or -1 if the server is busy
+         * @throws  InterruptedException    Wait was interrupted
+         */
+        long start() throws InterruptedException {
+            long queueTime = System.currentTimeMillis();
+            if (permits != null && !permits.tryAcquire()) {
+                synchronized (this) {
+                    if (queuedCount >= expensiveRequestQueueSize) {
+                        rejectedCount++;
+                        return -1;
+                    }
+                    queuedCount++;
+                }
+                boolean acquired = false;
+                try {
+                    acquired = permits.tryAcquire(requestQueueTimeout, TimeUnit.MILLISECONDS);
+                } finally {
+                    synchronized (this) {
+                        queuedCount--;
+                        if (!acquired) {
+                            rejectedCount++;
+                        }
+                    }
+                }
+                if (!acquired) {
+                    return -1;
+                }
+            }
+            long startTime = System.currentTimeMillis();
+            synchronized (this) {
+                activeCount++;
+                long waitTime = startTime - queueTime;
+                totalQueueTime += waitTime;
+                maxQueueTime = Math.max(maxQueueTime, waitTime);
+            }
+            return startTime;
+        }
+
+        /**
+         * End a request
+         *
+         * @param   startTime           Start time returned by start()
+         */
+        void end(long startTime) {
+            long executionTime = System.currentTimeMillis() - startTime;
+            synchronized (this) {
+                activeCount--;
+                requestCount++;
+                totalExecutionTime += executionTime;
+                maxExecutionTime = Math.max(maxExecutionTime, executionTime);
+            }
+            if (permits != null) {
+                permits.release();
+            }
+        }
+
+        /**
+         * Get the request statistics
+         *
+         * @return                      Request statistics
+         */
+        synchronized JSONObject getStatistics() {
+            JSONObject json = new JSONObject();
+            json.put("requestType", name);
+            json.put("limit", limit);
+            json.put("active", activeCount);
+            json.put("queued", queuedCount);
+            json.put("requests", requestCount);
+            json.put("rejected", rejectedCount);
+            long startedCount = requestCount + activeCount;
+            json.put("averageQueueTime", startedCount != 0 ? totalQueueTime / startedCount : 0);
+            json.put("maxQueueTime", maxQueueTime);
+            json.put("averageExecutionTime", requestCount != 0 ? totalExecutionTime / requestCount : 0);
+            json.put("maxExecutionTime", maxExecutionTime);
+            return json;
+        }
+    }
+}
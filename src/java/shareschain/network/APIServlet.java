@@ -4,8 +4,10 @@ package shareschain.network;
 import shareschain.Constants;
 import shareschain.Shareschain;
 import shareschain.ShareschainExceptions;
+import shareschain.blockchain.Block;
 import shareschain.blockchain.Chain;
 import shareschain.database.DB;
+import shareschain.database.EntityDBTable;
 import shareschain.util.JSON;
 import shareschain.util.Logger;
 import org.json.simple.JSONObject;
@@ -15,7 +17,9 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -26,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import static shareschain.network.JSONResponses.ERROR_BUSY;
 import static shareschain.network.JSONResponses.ERROR_DISABLED;
 import static shareschain.network.JSONResponses.ERROR_INCORRECT_REQUEST;
 import static shareschain.network.JSONResponses.ERROR_NOT_ALLOWED;
@@ -122,6 +127,40 @@ public final class APIServlet extends HttpServlet {
             return false;
         }
 
+        /**
+         * Get the response cache lifetime
+         *
+         * A cacheable response must be completely determined by the request parameters
+         * and the last block.  Cached responses are discarded when a block is pushed or popped.
+         *
+         * @return                  Maximum age of a cached response in seconds or 0 if the response is not cacheable
+         */
+        protected int getCacheLifetime() {
+            return 0;
+        }
+
+        /**
+         * Check if a cacheable response includes unconfirmed state
+         *
+         * The cache key for such a response includes the unconfirmed pool generation
+         *
+         * @return                  TRUE if the response includes unconfirmed state
+         */
+        protected boolean includesUnconfirmed() {
+            return false;
+        }
+
+        /**
+         * Check if the request is expensive
+         *
+         * The number of concurrent expensive requests is limited by the API scheduler
+         *
+         * @return                  TRUE if the request is expensive
+         */
+        protected boolean isExpensive() {
+            return false;
+        }
+
     }
 
     private static final boolean enforcePost = Shareschain.getBooleanProperty("shareschain.apiServerEnforcePOST");
@@ -195,6 +234,9 @@ public final class APIServlet extends HttpServlet {
         resp.setContentType("text/plain; charset=UTF-8");
 
         JSONStreamAware response = JSON.emptyJSON;
+        JSONStreamAware cacheableResponse = null;
+        String cacheKey = null;
+        long cacheGeneration = 0;
         long startTime = System.currentTimeMillis();
 
         try {
@@ -249,7 +291,45 @@ public final class APIServlet extends HttpServlet {
                     ParameterParser.getUnsignedLong(req, "requireBlock", false) : 0;
             final long requireLastBlockId = apiRequestHandler.allowRequiredBlockParameters() ?
                     ParameterParser.getUnsignedLong(req, "requireLastBlock", false) : 0;
-            if (requireBlockId != 0 || requireLastBlockId != 0) {
+            //
+            // Return a cached response if one is available.  The cache generation must be obtained
+            // before the last block so a response created after a new block has been pushed will not
+            // be saved using the previous cache generation.  A request with an administrator password
+            // is not cached since the response can depend on the password check.
+            //
+            int cacheLifetime = apiRequestHandler.getCacheLifetime();
+            if (cacheLifetime > 0 && APIResponseCache.isEnabled() && !apiRequestHandler.requirePassword()
+                    && req.getParameter("adminPassword") == null) {
+                cacheGeneration = APIResponseCache.getGeneration();
+                cacheKey = APIResponseCache.getKey(requestType, apiRequestHandler, req,
+                        Shareschain.getBlockchain().getLastBlock().getId());
+                APIResponseCache.CacheEntry cachedResponse = APIResponseCache.get(cacheKey, cacheLifetime);
+                if (cachedResponse != null) {
+                    response = null;
+                    try (OutputStream out = resp.getOutputStream()) {
+                        cachedResponse.write(out, System.currentTimeMillis() - startTime);
+                    }
+                    return;
+                }
+            }
+            APIScheduler.RequestType scheduledType = APIScheduler.getRequestType(requestType, apiRequestHandler);
+            long scheduledTime = scheduledType.start();
+            if (scheduledTime < 0) {
+                response = ERROR_BUSY;
+                return;
+            }
+            //
+            // A read-only request which requires a consistent view of the blockchain pins the current
+            // height instead of holding the blockchain read lock, so it does not delay block processing.
+            // Requests which can modify the database still hold the read lock.  Only the entity tables
+            // are pinned.  Blockchain lookups (blocks, transactions and the last block) return the
+            // current chain, so a handler can see blocks above the snapshot height.
+            //
+            final boolean requireConsistency = (requireBlockId != 0 || requireLastBlockId != 0);
+            final boolean snapshotRead = requireConsistency && !apiRequestHandler.requirePost();
+            Block snapshotBlock = null;
+            StreamingResponse<?> streamingResponse = null;
+            if (requireConsistency && !snapshotRead) {
                 Shareschain.getBlockchain().readLock();
             }
             try {
@@ -261,7 +341,24 @@ public final class APIServlet extends HttpServlet {
                         response = REQUIRED_BLOCK_NOT_FOUND;
                         return;
                     }
-                    if (requireLastBlockId != 0 && requireLastBlockId != Shareschain.getBlockchain().getLastBlock().getId()) {
+                    Block lastBlock;
+                    if (snapshotRead) {
+                        //
+                        // The snapshot height is set while holding the read lock so it is not
+                        // obtained while a block is being pushed or popped
+                        //
+                        Shareschain.getBlockchain().readLock();
+                        try {
+                            lastBlock = Shareschain.getBlockchain().getLastBlock();
+                            snapshotBlock = lastBlock;
+                            EntityDBTable.setSnapshotHeight(snapshotBlock.getHeight());
+                        } finally {
+                            Shareschain.getBlockchain().readUnlock();
+                        }
+                    } else {
+                        lastBlock = Shareschain.getBlockchain().getLastBlock();
+                    }
+                    if (requireLastBlockId != 0 && requireLastBlockId != lastBlock.getId()) {
                         response = REQUIRED_LAST_BLOCK_NOT_FOUND;
                         return;
                     }
@@ -269,19 +366,63 @@ public final class APIServlet extends HttpServlet {
                      * 调用实例化类型，获取请求返回值
                      */
                     response = apiRequestHandler.processRequest(req, resp);
+                    if (response instanceof StreamingResponse) {
+                        streamingResponse = (StreamingResponse<?>)response;
+                    }
+                    //
+                    // The response is discarded if the snapshot block was popped while the request was processed.
+                    // A streaming response is checked before it is written.  The rows of a streaming response are
+                    // read at the snapshot height, but a block popped while the response is being written is
+                    // not detected.
+                    //
+                    if (snapshotBlock != null && !Shareschain.getBlockchain().hasBlock(snapshotBlock.getId())) {
+                        response = (requireBlockId != 0 && !Shareschain.getBlockchain().hasBlock(requireBlockId) ?
+                                REQUIRED_BLOCK_NOT_FOUND : REQUIRED_LAST_BLOCK_NOT_FOUND);
+                        return;
+                    }
                     if (requireLastBlockId == 0 && requireBlockId != 0 && response instanceof JSONObject) {
-                        ((JSONObject) response).put("lastBlock", Shareschain.getBlockchain().getLastBlock().getStringId());
+                        ((JSONObject) response).put("lastBlock",
+                                (snapshotBlock != null ? snapshotBlock : Shareschain.getBlockchain().getLastBlock()).getStringId());
+                    }
+                    if (cacheKey != null && (response instanceof JSONObject || response instanceof StreamingResponse)) {
+                        cacheableResponse = response;
+                    }
+                    //
+                    // A streaming response is written while the database connection is still available
+                    //
+                    if (streamingResponse != null) {
+                        response = null;
+                        try {
+                            writeResponse(resp, streamingResponse,
+                                    streamingResponse == cacheableResponse ? cacheKey : null, cacheGeneration, startTime);
+                        } catch (IOException | RuntimeException e) {
+                            throw new StreamingAbortedException(e);
+                        }
                     }
                 } finally {
+                    if (streamingResponse != null) {
+                        streamingResponse.close();
+                    }
+                    if (snapshotBlock != null) {
+                        EntityDBTable.clearSnapshotHeight();
+                    }
                     if (apiRequestHandler.startDBTransaction()) {
                         DB.db.endTransaction();
                     }
                 }
             } finally {
-                if (requireBlockId != 0 || requireLastBlockId != 0) {
+                if (requireConsistency && !snapshotRead) {
                     Shareschain.getBlockchain().readUnlock();
                 }
+                scheduledType.end(scheduledTime);
             }
+        } catch (StreamingAbortedException e) {
+            //
+            // The response has already been partially written, so the connection is aborted
+            // by propagating the exception instead of writing an error response
+            //
+            Logger.logDebugMessage("Error writing streaming API response", e.getCause());
+            throw e;
         } catch (ParameterExceptions e) {
             response = e.getErrorResponse();
         } catch (ShareschainExceptions | RuntimeException e) {
@@ -296,17 +437,66 @@ public final class APIServlet extends HttpServlet {
             Logger.logErrorMessage("Error processing request", e);
             response = ERROR_INCORRECT_REQUEST;
         } finally {
-            // The response will be null if we created an asynchronous context
+            // The response will be null if we created an asynchronous context or streamed the response
             if (response != null) {
-                if (response instanceof JSONObject) {
-                    ((JSONObject) response).put("requestProcessingTime", System.currentTimeMillis() - startTime);
-                }
-                try (Writer writer = resp.getWriter()) {
-                    JSON.writeJSONString(response, writer);
-                }
+                writeResponse(resp, response, response == cacheableResponse ? cacheKey : null, cacheGeneration, startTime);
             }
         }
 
     }
 
+    /**
+     * Write the API response
+     *
+     * @param   resp                HTTP response
+     * @param   response            API response
+     * @param   cacheKey            Response cache key or null if the response is not to be cached
+     * @param   cacheGeneration     Response cache generation when the request was started
+     * @param   startTime           Request start time
+     * @throws  IOException         I/O error occurred
+     */
+    private static void writeResponse(HttpServletResponse resp, JSONStreamAware response,
+                                      String cacheKey, long cacheGeneration, long startTime) throws IOException {
+        //
+        // The writer is not closed if an error occurs, so an incomplete response is not
+        // completed normally and the container aborts the connection instead
+        //
+        Writer writer = resp.getWriter();
+        if (cacheKey == null) {
+            if (response instanceof JSONObject) {
+                ((JSONObject) response).put("requestProcessingTime", System.currentTimeMillis() - startTime);
+            }
+            JSON.writeJSONString(response, writer);
+        } else if (response instanceof JSONObject) {
+            //
+            // The response is cached without the request processing time
+            //
+            String encodedResponse = JSON.toJSONString((JSONObject) response);
+            APIResponseCache.put(cacheKey, encodedResponse.getBytes(StandardCharsets.UTF_8), cacheGeneration, true);
+            writer.write(encodedResponse, 0, encodedResponse.length() - 1);
+            writer.write(APIResponseCache.getProcessingTimeField(encodedResponse.length(),
+                    System.currentTimeMillis() - startTime));
+        } else {
+            APIResponseCache.CachingWriter cachingWriter = APIResponseCache.getWriter(writer);
+            JSON.writeJSONString(response, cachingWriter);
+            byte[] encodedResponse = cachingWriter.getResponse();
+            if (encodedResponse != null) {
+                APIResponseCache.put(cacheKey, encodedResponse, cacheGeneration, false);
+            }
+        }
+        writer.close();
+    }
+
+    /**
+     * Error writing a streaming response after the response has been started
+     */
+    private static final class StreamingAbortedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private StreamingAbortedException(Exception cause) {
+            super(cause.toString(), cause);
+        }
+    }
+
 }
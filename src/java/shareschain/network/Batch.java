@@ -0,0 +1,256 @@
+package shareschain.network;
+
+import shareschain.Constants;
+import shareschain.Shareschain;
+import shareschain.ShareschainExceptions;
+import shareschain.blockchain.Block;
+import shareschain.blockchain.Chain;
+import shareschain.database.EntityDBTable;
+import shareschain.util.Logger;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static shareschain.network.JSONResponses.ERROR_DISABLED;
+import static shareschain.network.JSONResponses.ERROR_INCORRECT_REQUEST;
+import static shareschain.network.JSONResponses.ERROR_NOT_ALLOWED;
+import static shareschain.network.JSONResponses.LIGHT_CLIENT_DISABLED_API;
+import static shareschain.network.JSONResponses.REQUIRED_LAST_BLOCK_NOT_FOUND;
+
+/**
+ * <p>
+ * The Batch API executes multiple read-only requests and returns the results in a single response.
+ * All of the requests are executed using the same database connection and read the account state as
+ * of the last block when the batch was started, so the results are consistent with each other and with
+ * the returned last block.  The blockchain lock is not held, so a batch does not delay block processing.
+ * Blockchain lookups (blocks, transactions and the last block) are not pinned and return the current chain.
+ * </p>
+ * <p>
+ * Request parameters:
+ * <ul>
+ * <li>requests - JSON array of request objects.  Each request object contains the 'requestType'
+ * and the request parameters.  A parameter with multiple values is specified as a JSON array.
+ * At most shareschain.maxAPIRecords requests can be included in a batch.
+ * </ul>
+ * <p>
+ * Response parameters:
+ * <ul>
+ * <li>responses - JSON array containing the response for each request in request order
+ * <li>lastBlock - Last block identifier when the requests were executed
+ * <li>height - Blockchain height when the requests were executed
+ * </ul>
+ * <p>
+ * Requests which must be submitted using POST, which require the administrator password or which are
+ * expensive are not allowed in a batch and return an error response.
+ * </p>
+ */
+public final class Batch extends APIServlet.APIRequestHandler {
+
+    /** Batch instance */
+    static final Batch instance = new Batch();
+
+    /**
+     * Create the Batch instance
+     */
+    private Batch() {
+        super(new APITag[] {APITag.ACCOUNTS, APITag.BLOCKS, APITag.TRANSACTIONS}, "requests");
+    }
+
+    /**
+     * Process the Batch API request
+     *
+     * @param   req                 API request
+     * @return                      API response
+     * @throws  ShareschainExceptions   Invalid request
+     */
+    @Override
+    protected JSONStreamAware processRequest(HttpServletRequest req) throws ShareschainExceptions {
+        return processRequest(req, null);
+    }
+
+    /**
+     * Process the Batch API request
+     *
+     * @param   req                 API request
+     * @param   resp                API response
+     * @return                      API response
+     * @throws  ShareschainExceptions   Invalid request
+     */
+    @Override
+    protected JSONStreamAware processRequest(HttpServletRequest req, HttpServletResponse resp) throws ShareschainExceptions {
+        String requestsValue = req.getParameter("requests");
+        if (requestsValue == null) {
+            return JSONResponses.missing("requests");
+        }
+        List<?> requests;
+        try {
+            requests = (List<?>)JSONValue.parseWithException(requestsValue);
+        } catch (ParseException | RuntimeException e) {
+            return JSONResponses.incorrect("requests");
+        }
+        if (requests == null || requests.isEmpty() || requests.size() > API.maxRecords) {
+            return JSONResponses.incorrect("requests", "(at most " + API.maxRecords + " requests are allowed)");
+        }
+        JSONArray responses = new JSONArray();
+        JSONObject response = new JSONObject();
+        //
+        // The snapshot height of an enclosing request is restored when the batch is complete
+        //
+        int previousHeight = EntityDBTable.getSnapshotHeight();
+        Block lastBlock;
+        Shareschain.getBlockchain().readLock();
+        try {
+            lastBlock = Shareschain.getBlockchain().getLastBlock();
+            EntityDBTable.setSnapshotHeight(lastBlock.getHeight());
+        } finally {
+            Shareschain.getBlockchain().readUnlock();
+        }
+        try {
+            for (Object request : requests) {
+                if (!(request instanceof Map)) {
+                    responses.add(ERROR_INCORRECT_REQUEST);
+                } else {
+                    responses.add(processSubRequest(req, resp, (Map<?, ?>)request));
+                }
+            }
+        } finally {
+            if (previousHeight >= 0) {
+                EntityDBTable.setSnapshotHeight(previousHeight);
+            } else {
+                EntityDBTable.clearSnapshotHeight();
+            }
+        }
+        if (!Shareschain.getBlockchain().hasBlock(lastBlock.getId())) {
+            return REQUIRED_LAST_BLOCK_NOT_FOUND;
+        }
+        response.put("responses", responses);
+        response.put("lastBlock", lastBlock.getStringId());
+        response.put("height", lastBlock.getHeight());
+        return response;
+    }
+
+    /**
+     * Process a request contained in the batch
+     *
+     * @param   req                 Batch request
+     * @param   resp                Batch response
+     * @param   request             Request object
+     * @return                      Request response
+     */
+    private static JSONStreamAware processSubRequest(HttpServletRequest req, HttpServletResponse resp, Map<?, ?> request) {
+        Object requestType = request.get("requestType");
+        if (!(requestType instanceof String)) {
+            return ERROR_INCORRECT_REQUEST;
+        }
+        APIServlet.APIRequestHandler handler = APIServlet.apiRequestHandlers.get(requestType);
+        if (handler == null) {
+            return APIServlet.disabledRequestHandlers.containsKey(requestType) ? ERROR_DISABLED : ERROR_INCORRECT_REQUEST;
+        }
+        if (handler == instance || handler.requirePost() || handler.requirePassword() || handler.isExpensive()) {
+            return ERROR_NOT_ALLOWED;
+        }
+        if (Constants.isLightClient && handler.requireFullClient()) {
+            return LIGHT_CLIENT_DISABLED_API;
+        }
+        HttpServletRequest subRequest = new BatchRequest(req, request);
+        try {
+            if (handler.isChainSpecific()) {
+                Chain chain = ParameterParser.getChain(subRequest, false);
+                if (chain != null && chain.getDisabledAPIs().contains(APIEnum.fromName((String)requestType))) {
+                    return ERROR_DISABLED;
+                }
+            }
+            JSONStreamAware response = handler.processRequest(subRequest, resp);
+            return (response != null ? response : ERROR_INCORRECT_REQUEST);
+        } catch (ParameterExceptions e) {
+            return e.getErrorResponse();
+        } catch (ShareschainExceptions | RuntimeException e) {
+            Logger.logDebugMessage("Error processing batch API request", e);
+            JSONObject json = new JSONObject();
+            JSONData.putException(json, e);
+            return json;
+        }
+    }
+
+    /**
+     * Use a single database connection for all of the requests
+     *
+     * @return                      TRUE
+     */
+    @Override
+    protected boolean startDBTransaction() {
+        return true;
+    }
+
+    @Override
+    protected boolean isChainSpecific() {
+        return false;
+    }
+
+    /**
+     * HTTP request for a request contained in the batch.  The request parameters are
+     * obtained from the request object while everything else is obtained from the batch request.
+     */
+    private static final class BatchRequest extends HttpServletRequestWrapper {
+
+        /** Request parameters */
+        private final Map<String, String[]> parameters = new HashMap<>();
+
+        /**
+         * Create the request
+         *
+         * @param   req             Batch request
+         * @param   request         Request object
+         */
+        private BatchRequest(HttpServletRequest req, Map<?, ?> request) {
+            super(req);
+            request.forEach((name, value) -> {
+                String[] values;
+                if (value == null) {
+                    return;
+                } else if (value instanceof List) {
+                    List<?> list = (List<?>)value;
+                    values = new String[list.size()];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = String.valueOf(list.get(i));
+                    }
+                } else {
+                    values = new String[] {value.toString()};
+                }
+                parameters.put(name.toString(), values);
+            });
+        }
+
+        @Override
+        public String getParameter(String name) {
+            String[] values = parameters.get(name);
+            return (values != null && values.length > 0 ? values[0] : null);
+        }
+
+        @Override
+        public String[] getParameterValues(String name) {
+            return parameters.get(name);
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return Collections.unmodifiableMap(parameters);
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(parameters.keySet());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package shareschain.network;
+
+import shareschain.account.AccountChainLedger.LedgerEntry;
+import shareschain.blockchain.Transaction;
+import shareschain.blockchain.TransactionCursor;
+import shareschain.util.Convert;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * <p>
+ * A continuation token identifies the position following the last row returned by a paged
+ * request.  The token is returned as 'continuationToken' when a page is full and is passed
+ * back unchanged as the 'continuationToken' parameter to get the next page.  The next page is
+ * then located using an index instead of skipping over the rows in the earlier pages, so the
+ * time required to get a page does not depend on how many pages have already been returned.
+ * </p>
+ * <p>
+ * When a continuation token is specified, firstIndex and lastIndex determine the number of rows
+ * to return but firstIndex is not used to skip rows.  The token content is not part of the API
+ * and may change in a future release.
+ * </p>
+ */
+final class ContinuationToken {
+
+    /** Transaction token type */
+    private static final byte TRANSACTION_TOKEN = 'T';
+
+    /** Ledger entry token type */
+    private static final byte LEDGER_TOKEN = 'L';
+
+    private ContinuationToken() {}
+
+    /**
+     * Get the continuation token for a transaction
+     *
+     * @param   transaction             Last transaction returned
+     * @return                          Continuation token
+     */
+    static String getToken(Transaction transaction) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + 2 + 8);
+        buffer.put(TRANSACTION_TOKEN).putInt(transaction.getBlockTimestamp()).putShort(transaction.getIndex())
+                .putLong(transaction.getId());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Get the continuation token for a ledger entry
+     *
+     * @param   entry                   Last ledger entry returned
+     * @return                          Continuation token
+     */
+    static String getToken(LedgerEntry entry) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 8);
+        buffer.put(LEDGER_TOKEN).putLong(entry.getLedgerId());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * Get the transaction cursor specified by the 'continuationToken' parameter
+     *
+     * @param   req                     HTTP request
+     * @return                          Transaction cursor or null if the parameter is not specified
+     * @throws  ParameterExceptions     Invalid continuation token
+     */
+    static TransactionCursor getTransactionCursor(HttpServletRequest req) throws ParameterExceptions {
+        ByteBuffer buffer = getTokenBuffer(req, TRANSACTION_TOKEN, 4 + 2 + 8);
+        return (buffer != null ? new TransactionCursor(buffer.getInt(), buffer.getShort(), buffer.getLong()) : null);
+    }
+
+    /**
+     * Get the ledger entry identifier specified by the 'continuationToken' parameter
+     *
+     * @param   req                     HTTP request
+     * @return                          Ledger entry identifier or 0 if the parameter is not specified
+     * @throws  ParameterExceptions     Invalid continuation token
+     */
+    static long getLedgerId(HttpServletRequest req) throws ParameterExceptions {
+        ByteBuffer buffer = getTokenBuffer(req, LEDGER_TOKEN, 8);
+        return (buffer != null ? buffer.getLong() : 0);
+    }
+
+    /**
+     * Check if the 'continuationToken' parameter is specified
+     *
+     * @param   req                     HTTP request
+     * @return                          TRUE if a continuation token is specified
+     */
+    static boolean isSpecified(HttpServletRequest req) {
+        return Convert.emptyToNull(req.getParameter("continuationToken")) != null;
+    }
+
+    /**
+     * Get the page size specified by the 'firstIndex' and 'lastIndex' parameters
+     *
+     * @param   req                     HTTP request
+     * @return                          Page size or 0 if there is no limit
+     */
+    static int getPageSize(HttpServletRequest req) {
+        int firstIndex = ParameterParser.getFirstIndex(req);
+        int lastIndex = ParameterParser.getLastIndex(req);
+        return (lastIndex < Integer.MAX_VALUE && lastIndex >= firstIndex ? lastIndex - firstIndex + 1 : 0);
+    }
+
+    /**
+     * Decode the 'continuationToken' parameter
+     *
+     * @param   req                     HTTP request
+     * @param   tokenType               Expected token type
+     * @param   length                  Expected token data length
+     * @return                          Token data or null if the parameter is not specified
+     * @throws  ParameterExceptions     Invalid continuation token
+     */
+    private static ByteBuffer getTokenBuffer(HttpServletRequest req, byte tokenType, int length) throws ParameterExceptions {
+        String token = Convert.emptyToNull(req.getParameter("continuationToken"));
+        if (token == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token.trim()));
+            if (buffer.remaining() != 1 + length || buffer.get() != tokenType) {
+                throw new ParameterExceptions(JSONResponses.incorrect("continuationToken"));
+            }
+            return buffer;
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            throw new ParameterExceptions(JSONResponses.incorrect("continuationToken"));
+        }
+    }
+}
@@ -26,12 +26,16 @@ import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReentrantLock;
@@ -124,6 +128,31 @@ class EventListener implements Runnable, AsyncListener, TransactionalDB.Transact
         ledgerEvents.add(AccountChainLedger.Event.ADD_ENTRY);
     }
 
+    /** Transaction event handlers indexed by account */
+    private static final Map<TransactionProcessor.Event, AccountIndex> transactionIndexes =
+            new EnumMap<>(TransactionProcessor.Event.class);
+
+    /** Account ledger event handlers indexed by account */
+    private static final Map<AccountChainLedger.Event, AccountIndex> ledgerIndexes =
+            new EnumMap<>(AccountChainLedger.Event.class);
+
+    /**
+     * A single Shareschain listener is registered for each transaction and account ledger event.
+     * The listener routes each event to the handlers registered for the affected accounts.
+     */
+    static {
+        txEvents.forEach(event -> {
+            AccountIndex index = new AccountIndex();
+            transactionIndexes.put(event, index);
+            transactionProcessor.addListener(txList -> dispatchTransactions(event, index, txList), event);
+        });
+        ledgerEvents.forEach(event -> {
+            AccountIndex index = new AccountIndex();
+            ledgerIndexes.put(event, index);
+            AccountChainLedger.addListener(entry -> dispatchLedgerEntry(event, index, entry), event);
+        });
+    }
+
     /** Application IP address and registration token */
     private final String address;
 
@@ -523,6 +552,144 @@ class EventListener implements Runnable, AsyncListener, TransactionalDB.Transact
         }
     }
 
+    /**
+     * Dispatch a transaction event
+     *
+     * Each transaction identifier is formatted once and added to the event for each handler
+     * registered for all accounts, the sender account or the recipient account
+     *
+     * @param   event                   Transaction event
+     * @param   index                   Event handlers
+     * @param   txList                  Transaction list
+     */
+    private static void dispatchTransactions(TransactionProcessor.Event event, AccountIndex index,
+                                             List<? extends Transaction> txList) {
+        if (index.isEmpty() || txList.isEmpty()) {
+            return;
+        }
+        Map<ShareschainEventListener.ShareschainEventHandler, List<String>> handlerIds = new HashMap<>();
+        for (Transaction tx : txList) {
+            long senderId = tx.getSenderId();
+            long recipientId = tx.getRecipientId();
+            Set<ShareschainEventListener.ShareschainEventHandler> allHandlers = index.get(0);
+            Set<ShareschainEventListener.ShareschainEventHandler> senderHandlers =
+                    (senderId != 0 ? index.get(senderId) : null);
+            Set<ShareschainEventListener.ShareschainEventHandler> recipientHandlers =
+                    (recipientId != 0 && recipientId != senderId ? index.get(recipientId) : null);
+            if (allHandlers == null && senderHandlers == null && recipientHandlers == null) {
+                continue;
+            }
+            String id = tx.getChain().getId() + ":" + Convert.toHexString(tx.getFullHash());
+            addEventId(handlerIds, allHandlers, id);
+            addEventId(handlerIds, senderHandlers, id);
+            addEventId(handlerIds, recipientHandlers, id);
+        }
+        if (!handlerIds.isEmpty()) {
+            String name = "Transaction." + event.name();
+            handlerIds.forEach((handler, idList) -> handler.dispatch(new PendingEvent(name, idList)));
+        }
+    }
+
+    /**
+     * Add an event identifier to the identifier list for each handler
+     *
+     * @param   handlerIds              Identifier lists
+     * @param   handlers                Event handlers or null
+     * @param   id                      Event identifier
+     */
+    private static void addEventId(Map<ShareschainEventListener.ShareschainEventHandler, List<String>> handlerIds,
+                                   Set<ShareschainEventListener.ShareschainEventHandler> handlers, String id) {
+        if (handlers != null) {
+            handlers.forEach(handler -> handlerIds.computeIfAbsent(handler, k -> new ArrayList<>()).add(id));
+        }
+    }
+
+    /**
+     * Dispatch an account ledger event
+     *
+     * The event name and identifier are formatted once for all of the handlers
+     *
+     * @param   event                   Account ledger event
+     * @param   index                   Event handlers
+     * @param   entry                   Ledger entry
+     */
+    private static void dispatchLedgerEntry(AccountChainLedger.Event event, AccountIndex index, LedgerEntry entry) {
+        if (index.isEmpty()) {
+            return;
+        }
+        Set<ShareschainEventListener.ShareschainEventHandler> allHandlers = index.get(0);
+        Set<ShareschainEventListener.ShareschainEventHandler> accountHandlers =
+                (entry.getAccountId() != 0 ? index.get(entry.getAccountId()) : null);
+        if (allHandlers == null && accountHandlers == null) {
+            return;
+        }
+        String name = "Ledger." + event.name() + "." + Convert.rsAccount(entry.getAccountId());
+        String id = Long.toUnsignedString(entry.getLedgerId());
+        if (allHandlers != null) {
+            allHandlers.forEach(handler -> handler.dispatch(new PendingEvent(name, id)));
+        }
+        if (accountHandlers != null) {
+            accountHandlers.forEach(handler -> handler.dispatch(new PendingEvent(name, id)));
+        }
+    }
+
+    /**
+     * Event handlers indexed by account identifier.  Handlers for all accounts
+     * are indexed by account identifier 0.
+     */
+    private static final class AccountIndex {
+
+        /** Event handlers */
+        private final Map<Long, Set<ShareschainEventListener.ShareschainEventHandler>> handlers =
+                new ConcurrentHashMap<>();
+
+        /**
+         * Add an event handler
+         *
+         * @param   handler             Event handler
+         */
+        private void add(ShareschainEventListener.ShareschainEventHandler handler) {
+            handlers.compute(handler.getAccountId(), (accountId, set) -> {
+                if (set == null) {
+                    set = new CopyOnWriteArraySet<>();
+                }
+                set.add(handler);
+                return set;
+            });
+        }
+
+        /**
+         * Remove an event handler
+         *
+         * @param   handler             Event handler
+         */
+        private void remove(ShareschainEventListener.ShareschainEventHandler handler) {
+            handlers.computeIfPresent(handler.getAccountId(), (accountId, set) -> {
+                set.remove(handler);
+                return (set.isEmpty() ? null : set);
+            });
+        }
+
+        /**
+         * Get the event handlers for an account
+         *
+         * @param   accountId           Account identifier or 0 for handlers for all accounts
+         * @return                      Event handlers or null if there are no handlers
+         */
+        private Set<ShareschainEventListener.ShareschainEventHandler> get(long accountId) {
+            return handlers.get(accountId);
+        }
+
+        /**
+         * Check if there are no event handlers
+         *
+         * @return                      TRUE if there are no event handlers
+         */
+        private boolean isEmpty() {
+            return handlers.isEmpty();
+        }
+    }
+
     /**
      * Pending event
      */
@@ -906,7 +1073,7 @@ class EventListener implements Runnable, AsyncListener, TransactionalDB.Transact
         /**
          * Transaction processor event handler
          */
-        private class TransactionEventHandler extends ShareschainEventHandler implements Listener<List<? extends Transaction>> {
+        private class TransactionEventHandler extends ShareschainEventHandler {
 
             /**
              * Create the transaction processor event handler
@@ -918,47 +1085,26 @@ class EventListener implements Runnable, AsyncListener, TransactionalDB.Transact
             }
 
             /**
-             * Add the Shareschain listener for this event
+             * Add the handler to the transaction event index
              */
             @Override
             public void addListener() {
-                transactionProcessor.addListener(this, (TransactionProcessor.Event)event);
+                transactionIndexes.get((TransactionProcessor.Event)event).add(this);
             }
 
             /**
-             * Remove the Shareschain listener for this event
+             * Remove the handler from the transaction event index
              */
             @Override
             public void removeListener() {
-                transactionProcessor.removeListener(this, (TransactionProcessor.Event)event);
-            }
-
-            /**
-             * Event notification
-             *
-             * @param   txList      Transaction list
-             */
-            @Override
-            public void notify(List<? extends Transaction> txList) {
-                if (!txList.isEmpty()) {
-                    List<String> idList = new ArrayList<>();
-                    txList.forEach((tx) -> {
-                        if (accountId == 0 || accountId == tx.getSenderId() || accountId == tx.getRecipientId()) {
-                            idList.add(String.format("%d:%s",
-                                       tx.getChain().getId(), Convert.toHexString(tx.getFullHash())));
-                        }
-                    });
-                    if (!idList.isEmpty()) {
-                        dispatch(new PendingEvent("Transaction." + event.name(), idList));
-                    }
-                }
+                transactionIndexes.get((TransactionProcessor.Event)event).remove(this);
             }
         }
 
         /**
          * Account ledger event handler
          */
-        private class LedgerEventHandler extends ShareschainEventHandler implements Listener<LedgerEntry> {
+        private class LedgerEventHandler extends ShareschainEventHandler {
 
             /**
              * Create the account ledger event handler
@@ -970,32 +1116,19 @@ class EventListener implements Runnable, AsyncListener, TransactionalDB.Transact
             }
 
             /**
-             * Add the Shareschain listener for this event
+             * Add the handler to the account ledger event index
              */
             @Override
             public void addListener() {
-                AccountChainLedger.addListener(this, (AccountChainLedger.Event)event);
+                ledgerIndexes.get((AccountChainLedger.Event)event).add(this);
             }
 
             /**
-             * Remove the Shareschain listener for this event
+             * Remove the handler from the account ledger event index
              */
             @Override
             public void removeListener() {
-                AccountChainLedger.removeListener(this, (AccountChainLedger.Event)event);
-            }
-
-            /**
-             * Event notification
-             *
-             * @param   entry       Ledger entry
-             */
-            @Override
-            public void notify(LedgerEntry entry) {
-                if (entry.getAccountId() == accountId || accountId == 0)
-                    dispatch(new PendingEvent(String.format("Ledger.%s.%s",
-                                event.name(), Convert.rsAccount(entry.getAccountId())),
-                                Long.toUnsignedString(entry.getLedgerId())));
+                ledgerIndexes.get((AccountChainLedger.Event)event).remove(this);
             }
         }
     }
@@ -0,0 +1,523 @@
+package shareschain.network;
+
+import shareschain.Shareschain;
+import shareschain.account.AccountChainLedger;
+import shareschain.database.DB;
+import shareschain.database.TransactionalDB;
+import shareschain.node.Nodes;
+import shareschain.util.Convert;
+import shareschain.util.JSON;
+import shareschain.util.Logger;
+import org.json.simple.JSONObject;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * EventStream pushes server events to subscribers using server-sent events.  A subscriber
+ * connects to the /shareschain-events servlet and receives events as they occur without
+ * issuing EventWait requests.  The event names are the same as for the EventRegister API
+ * (without the account suffix for ledger events).  Transaction and ledger events can be
+ * limited to one or more accounts.
+ * </p>
+ * <p>
+ * Each event is serialized once and the encoded frame is shared by all subscribers.  Events
+ * generated within a database transaction are published when the transaction is committed and
+ * discarded if the transaction is rolled back.
+ * </p>
+ * <p>
+ * Frames are written using non-blocking servlet output, so a subscriber does not use a server
+ * thread while it is idle.  Each subscriber has a bounded frame queue
+ * (shareschain.apiEventStreamBufferSize).  The oldest frame is discarded when the queue is full
+ * and a Stream.DROPPED event is sent to the subscriber with the number of discarded events.
+ * The maximum number of subscribers is specified by shareschain.apiMaxEventStreams.
+ * </p>
+ */
+final class EventStream {
+
+    /** Maximum number of subscribers */
+    static final int maxEventStreams = Shareschain.getIntProperty("shareschain.apiMaxEventStreams");
+
+    /** Subscriber frame queue size */
+    private static final int bufferSize = Math.max(Shareschain.getIntProperty("shareschain.apiEventStreamBufferSize"), 16);
+
+    /** Keep-alive interval (seconds) */
+    private static final int KEEP_ALIVE_INTERVAL = 30;
+
+    /** Keep-alive frame */
+    private static final byte[] KEEP_ALIVE_FRAME = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Initial frame */
+    private static final byte[] INITIAL_FRAME = "retry: 5000\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /** Supported event names */
+    static final Set<String> eventNames;
+    static {
+        Set<String> names = new HashSet<>();
+        EventListener.nodeEvents.forEach(event -> names.add("Node." + event.name()));
+        EventListener.blockEvents.forEach(event -> names.add("Block." + event.name()));
+        EventListener.txEvents.forEach(event -> names.add("Transaction." + event.name()));
+        EventListener.ledgerEvents.forEach(event -> names.add("Ledger." + event.name()));
+        eventNames = Collections.unmodifiableSet(names);
+    }
+
+    /** Subscribers indexed by event name */
+    private static final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    /** Number of subscribers */
+    private static int subscriberCount;
+
+    /** Event sequence number */
+    private static final AtomicLong eventSequence = new AtomicLong();
+
+    /** Events waiting for the current database transaction to complete */
+    private static final ThreadLocal<List<Event>> transactionEvents = new ThreadLocal<>();
+
+    /** Database transaction callback */
+    private static final TransactionalDB.TransactionCallback transactionCallback = new TransactionalDB.TransactionCallback() {
+        @Override
+        public void commit() {
+            List<Event> events = transactionEvents.get();
+            if (events != null) {
+                transactionEvents.remove();
+                events.forEach(EventStream::publish);
+            }
+        }
+
+        @Override
+        public void rollback() {
+            transactionEvents.remove();
+        }
+    };
+
+    /** Event stream writer */
+    private static final ScheduledExecutorService streamExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "EventStream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        EventListener.nodeEvents.forEach(event -> Nodes.addListener(node -> {
+            String name = "Node." + event.name();
+            if (hasSubscribers(name)) {
+                JSONObject json = new JSONObject();
+                json.put("address", node.getHost());
+                publish(new Event(name, json, Convert.EMPTY_LONG));
+            }
+        }, event));
+        EventListener.blockEvents.forEach(event -> Shareschain.getBlockchainProcessor().addListener(block -> {
+            String name = "Block." + event.name();
+            if (hasSubscribers(name)) {
+                JSONObject json = new JSONObject();
+                json.put("block", block.getStringId());
+                json.put("height", block.getHeight());
+                json.put("timestamp", block.getTimestamp());
+                dispatch(new Event(name, json, Convert.EMPTY_LONG));
+            }
+        }, event));
+        EventListener.txEvents.forEach(event -> Shareschain.getTransactionProcessor().addListener(txList -> {
+            String name = "Transaction." + event.name();
+            if (hasSubscribers(name)) {
+                txList.forEach(tx -> {
+                    JSONObject json = new JSONObject();
+                    json.put("chain", tx.getChain().getId());
+                    json.put("fullHash", Convert.toHexString(tx.getFullHash()));
+                    JSONData.putAccount(json, "sender", tx.getSenderId());
+                    if (tx.getRecipientId() != 0) {
+                        JSONData.putAccount(json, "recipient", tx.getRecipientId());
+                    }
+                    dispatch(new Event(name, json, new long[] {tx.getSenderId(), tx.getRecipientId()}));
+                });
+            }
+        }, event));
+        EventListener.ledgerEvents.forEach(event -> AccountChainLedger.addListener(entry -> {
+            String name = "Ledger." + event.name();
+            if (hasSubscribers(name)) {
+                JSONObject json = new JSONObject();
+                JSONData.ledgerEntry(json, entry, false, false);
+                dispatch(new Event(name, json, new long[] {entry.getAccountId()}));
+            }
+        }, event));
+        streamExecutor.scheduleWithFixedDelay(() -> {
+            Set<Subscriber> allSubscribers = Collections.newSetFromMap(new HashMap<>());
+            subscribers.values().forEach(allSubscribers::addAll);
+            allSubscribers.forEach(subscriber -> subscriber.enqueue(KEEP_ALIVE_FRAME, false));
+        }, KEEP_ALIVE_INTERVAL, KEEP_ALIVE_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    private EventStream() {}
+
+    /**
+     * Add a subscriber
+     *
+     * @param   context                 Asynchronous context
+     * @param   events                  Event names
+     * @param   accounts                Account identifiers (empty for all accounts)
+     * @return                          TRUE if the subscriber was added
+     * @throws  IOException             I/O error occurred
+     */
+    static boolean addSubscriber(AsyncContext context, Set<String> events, Set<Long> accounts) throws IOException {
+        synchronized (subscribers) {
+            if (subscriberCount >= maxEventStreams) {
+                return false;
+            }
+            subscriberCount++;
+        }
+        //
+        // The write listener must be set before any output is written.  Frames are queued until
+        // the container calls onWritePossible() and are then written by the frame writer.
+        //
+        Subscriber subscriber = new Subscriber(context, events, accounts);
+        context.addListener(subscriber);
+        subscriber.out.setWriteListener(subscriber);
+        events.forEach(name -> subscribers.computeIfAbsent(name, k -> new CopyOnWriteArraySet<>()).add(subscriber));
+        return true;
+    }
+
+    /**
+     * Remove a subscriber
+     *
+     * @param   subscriber              Subscriber
+     */
+    private static void removeSubscriber(Subscriber subscriber) {
+        boolean removed = false;
+        for (String name : subscriber.events) {
+            Set<Subscriber> eventSubscribers = subscribers.get(name);
+            if (eventSubscribers != null && eventSubscribers.remove(subscriber)) {
+                removed = true;
+            }
+        }
+        if (removed) {
+            synchronized (subscribers) {
+                subscriberCount--;
+            }
+        }
+    }
+
+    /**
+     * Check if an event has subscribers
+     *
+     * @param   name                    Event name
+     * @return                          TRUE if there is at least one subscriber
+     */
+    private static boolean hasSubscribers(String name) {
+        Set<Subscriber> eventSubscribers = subscribers.get(name);
+        return (eventSubscribers != null && !eventSubscribers.isEmpty());
+    }
+
+    /**
+     * Dispatch an event
+     *
+     * The event is published when the current database transaction is committed
+     *
+     * @param   event                   Event
+     */
+    private static void dispatch(Event event) {
+        if (DB.db.isInTransaction()) {
+            List<Event> events = transactionEvents.get();
+            if (events == null) {
+                events = new ArrayList<>();
+                transactionEvents.set(events);
+            }
+            events.add(event);
+            DB.db.registerCallback(transactionCallback);
+        } else {
+            publish(event);
+        }
+    }
+
+    /**
+     * Publish an event to the subscribers
+     *
+     * @param   event                   Event
+     */
+    private static void publish(Event event) {
+        Set<Subscriber> eventSubscribers = subscribers.get(event.name);
+        if (eventSubscribers == null) {
+            return;
+        }
+        byte[] frame = null;
+        for (Subscriber subscriber : eventSubscribers) {
+            if (subscriber.accepts(event)) {
+                if (frame == null) {
+                    frame = event.getFrame();
+                }
+                subscriber.enqueue(frame, true);
+            }
+        }
+    }
+
+    /**
+     * Server event
+     */
+    private static final class Event {
+
+        /** Event name */
+        private final String name;
+
+        /** Event data */
+        private final JSONObject data;
+
+        /** Accounts associated with the event */
+        private final long[] accountIds;
+
+        /**
+         * Create an event
+         *
+         * @param   name                Event name
+         * @param   data                Event data
+         * @param   accountIds          Associated accounts
+         */
+        private Event(String name, JSONObject data, long[] accountIds) {
+            this.name = name;
+            this.data = data;
+            this.accountIds = accountIds;
+        }
+
+        /**
+         * Get the encoded event frame
+         *
+         * @return                      Event frame
+         */
+        private byte[] getFrame() {
+            String frame = "id: " + eventSequence.incrementAndGet() + "\nevent: " + name
+                    + "\ndata: " + JSON.toJSONString(data) + "\n\n";
+            return frame.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Event stream subscriber
+     */
+    static final class Subscriber implements WriteListener, AsyncListener {
+
+        /** Asynchronous context */
+        private final AsyncContext context;
+
+        /** Servlet output stream */
+        private final ServletOutputStream out;
+
+        /** Event names */
+        private final Set<String> events;
+
+        /** Account identifiers (empty for all accounts) */
+        private final Set<Long> accounts;
+
+        /** Pending frames */
+        private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+
+        /** Number of events discarded since the last Stream.DROPPED event */
+        private long droppedCount;
+
+        /** Frame writer has been scheduled */
+        private boolean scheduled;
+
+        /** Container has called onWritePossible() */
+        private boolean writable;
+
+        /** Output stream needs to be flushed */
+        private boolean flushNeeded;
+
+        /** Subscriber is closed */
+        private volatile boolean closed;
+
+        /**
+         * Create a subscriber
+         *
+         * @param   context             Asynchronous context
+         * @param   events              Event names
+         * @param   accounts            Account identifiers (empty for all accounts)
+         * @throws  IOException         I/O error occurred
+         */
+        private Subscriber(AsyncContext context, Set<String> events, Set<Long> accounts) throws IOException {
+            this.context = context;
+            this.out = context.getResponse().getOutputStream();
+            this.events = events;
+            this.accounts = accounts;
+            this.frames.add(INITIAL_FRAME);
+        }
+
+        /**
+         * Check if the subscriber accepts an event
+         *
+         * @param   event               Event
+         * @return                      TRUE if the event is accepted
+         */
+        private boolean accepts(Event event) {
+            if (accounts.isEmpty() || event.accountIds.length == 0) {
+                return true;
+            }
+            for (long accountId : event.accountIds) {
+                if (accounts.contains(accountId)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Add a frame to the frame queue
+         *
+         * @param   frame               Encoded frame
+         * @param   isEvent             TRUE if the frame is an event
+         */
+        private void enqueue(byte[] frame, boolean isEvent) {
+            if (closed) {
+                return;
+            }
+            synchronized (this) {
+                if (!isEvent && !frames.isEmpty()) {
+                    return;
+                }
+                if (frames.size() >= bufferSize) {
+                    frames.poll();
+                    droppedCount++;
+                }
+                frames.add(frame);
+                if (writable && !scheduled) {
+                    scheduled = true;
+                    streamExecutor.execute(this::writeFrames);
+                }
+            }
+        }
+
+        /**
+         * Write pending frames until the queue is empty or the output stream is not ready
+         */
+        private synchronized void writeFrames() {
+            scheduled = false;
+            if (closed) {
+                return;
+            }
+            try {
+                while (out.isReady()) {
+                    byte[] frame;
+                    if (droppedCount != 0) {
+                        frame = ("event: Stream.DROPPED\ndata: {\"count\":" + droppedCount + "}\n\n")
+                                .getBytes(StandardCharsets.UTF_8);
+                        droppedCount = 0;
+                    } else {
+                        frame = frames.poll();
+                    }
+                    if (frame == null) {
+                        if (flushNeeded) {
+                            flushNeeded = false;
+                            out.flush();
+                            continue;
+                        }
+                        return;
+                    }
+                    out.write(frame);
+                    flushNeeded = true;
+                }
+            } catch (IOException | RuntimeException exc) {
+                close(exc);
+            }
+        }
+
+        /**
+         * Close the subscriber
+         *
+         * @param   cause               Reason for closing the subscriber or null
+         */
+        private void close(Throwable cause) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            removeSubscriber(this);
+            synchronized (this) {
+                frames.clear();
+            }
+            if (cause != null) {
+                Logger.logDebugMessage("Event stream closed: " + cause.toString());
+            }
+            try {
+                context.complete();
+            } catch (IllegalStateException ignore) {
+                // Context already completed
+            }
+        }
+
+        /**
+         * Output stream is ready for writing (WriteListener interface)
+         */
+        @Override
+        public void onWritePossible() {
+            synchronized (this) {
+                writable = true;
+            }
+            writeFrames();
+        }
+
+        /**
+         * Write error occurred (WriteListener interface)
+         *
+         * @param   t                   Error
+         */
+        @Override
+        public void onError(Throwable t) {
+            close(t);
+        }
+
+        /**
+         * Async operation completed (AsyncListener interface)
+         *
+         * @param   event               Async event
+         */
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close(null);
+        }
+
+        /**
+         * Async operation timeout (AsyncListener interface)
+         *
+         * @param   event               Async event
+         */
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close(null);
+        }
+
+        /**
+         * Async error detected (AsyncListener interface)
+         *
+         * @param   event               Async event
+         */
+        @Override
+        public void onError(AsyncEvent event) {
+            close(event.getThrowable());
+        }
+
+        /**
+         * Async operation started (AsyncListener interface)
+         *
+         * @param   event               Async event
+         */
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package shareschain.network;
+
+import shareschain.util.Convert;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * The event stream servlet delivers server events using server-sent events (text/event-stream).
+ * </p>
+ * <p>
+ * Request parameters:
+ * <ul>
+ * <li>event - Event name.  This parameter can be repeated to subscribe to multiple events.
+ * All events are included if no event name is specified.  The event names are the same as
+ * for the EventRegister API.
+ * <li>account - Account identifier.  This parameter can be repeated to specify multiple accounts.
+ * Transaction and ledger events are limited to the specified accounts.  Events for all accounts
+ * are included if no account is specified.
+ * </ul>
+ * <p>
+ * Each event contains the event sequence number as the event identifier, the event name and the
+ * event data as a JSON object.  A Stream.DROPPED event is sent if events were discarded because
+ * the client is not reading the event stream fast enough.
+ * </p>
+ */
+public final class EventStreamServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setHeader("Cache-Control", "no-cache, no-store, must-revalidate, private");
+        resp.setHeader("Pragma", "no-cache");
+        resp.setDateHeader("Expires", 0);
+        if (!API.isAllowed(req.getRemoteHost())) {
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        Set<String> events = new HashSet<>();
+        String[] eventValues = req.getParameterValues("event");
+        if (eventValues == null || eventValues.length == 0) {
+            events.addAll(EventStream.eventNames);
+        } else {
+            for (String eventValue : eventValues) {
+                String name = eventValue.trim();
+                if (name.startsWith("Ledger.")) {
+                    int pos = name.indexOf('.', 7);
+                    if (pos > 0) {
+                        name = name.substring(0, pos);
+                    }
+                }
+                if (!EventStream.eventNames.contains(name)) {
+                    resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown event name " + name);
+                    return;
+                }
+                events.add(name);
+            }
+        }
+        Set<Long> accounts = new HashSet<>();
+        String[] accountValues = req.getParameterValues("account");
+        if (accountValues != null) {
+            for (String accountValue : accountValues) {
+                try {
+                    accounts.add(Convert.parseAccountId(accountValue.trim()));
+                } catch (RuntimeException e) {
+                    resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Incorrect account " + accountValue);
+                    return;
+                }
+            }
+        }
+        resp.setContentType("text/event-stream");
+        resp.setCharacterEncoding("UTF-8");
+        AsyncContext context = req.startAsync();
+        context.setTimeout(0);
+        if (!EventStream.addSubscriber(context, events, accounts)) {
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many event streams");
+            context.complete();
+        }
+    }
+}
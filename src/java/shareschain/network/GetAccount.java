@@ -98,4 +98,9 @@ public final class GetAccount extends APIServlet.APIRequestHandler {
         return false;
     }
 
+    @Override
+    protected int getCacheLifetime() {
+        return APIResponseCache.BLOCK_LIFETIME;
+    }
+
 }
@@ -0,0 +1,84 @@
+package shareschain.network;
+
+import shareschain.Shareschain;
+import shareschain.ShareschainExceptions;
+import shareschain.account.BalanceHome;
+import shareschain.blockchain.Chain;
+import shareschain.database.EntityDBTable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+
+/**
+ * <p>
+ * The GetAccountBalances API returns the balances for multiple accounts on a single chain.
+ * The balances are obtained using a single database query and are returned in the same order
+ * as the accounts in the request.  At most shareschain.maxAPIRecords accounts can be specified.
+ * The blockchain lock is not held.  A request which needs the balances to be consistent with
+ * a specific block uses the requireBlock or requireLastBlock parameter, which pins the reads to
+ * the snapshot height.
+ * </p>
+ * <p>
+ * Request parameters:
+ * <ul>
+ * <li>chain - Chain name or identifier
+ * <li>account - Account identifier or Reed-Solomon identifier.  This parameter can be repeated.
+ * <li>height - Return the balances as of this height.  The current balances are returned if
+ * no height is specified.
+ * </ul>
+ * <p>
+ * Response parameters:
+ * <ul>
+ * <li>balances - Array of account balances
+ * <li>height - Blockchain height of the returned balances
+ * </ul>
+ */
+public final class GetAccountBalances extends APIServlet.APIRequestHandler {
+
+    static final GetAccountBalances instance = new GetAccountBalances();
+
+    private GetAccountBalances() {
+        super(new APITag[] {APITag.ACCOUNTS}, "account", "account", "account", "height");
+    }
+
+    @Override
+    protected JSONStreamAware processRequest(HttpServletRequest req) throws ShareschainExceptions {
+        long[] accountIds = ParameterParser.getAccountIds(req, true);
+        if (accountIds.length > API.maxRecords) {
+            return JSONResponses.incorrect("account", "(at most " + API.maxRecords + " accounts are allowed)");
+        }
+        int height = ParameterParser.getHeight(req);
+        Chain chain = ParameterParser.getChain(req);
+        if (height < 0) {
+            int snapshotHeight = EntityDBTable.getSnapshotHeight();
+            height = (snapshotHeight >= 0 ? snapshotHeight : Shareschain.getBlockchain().getHeight());
+        }
+        List<BalanceHome.Balance> balances = chain.getBalanceHome().getBalances(accountIds, height);
+        JSONArray balancesJSON = new JSONArray();
+        for (BalanceHome.Balance balance : balances) {
+            JSONObject json = new JSONObject();
+            JSONData.putAccount(json, "account", balance.getAccountId());
+            json.put("balanceKER", String.valueOf(balance.getBalance()));
+            json.put("unconfirmedBalanceKER", String.valueOf(balance.getUnconfirmedBalance()));
+            balancesJSON.add(json);
+        }
+        JSONObject response = new JSONObject();
+        response.put("balances", balancesJSON);
+        response.put("height", height);
+        return response;
+    }
+
+    @Override
+    protected int getCacheLifetime() {
+        return APIResponseCache.BLOCK_LIFETIME;
+    }
+
+    @Override
+    protected boolean includesUnconfirmed() {
+        return true;
+    }
+
+}
@@ -7,7 +7,6 @@ import shareschain.account.AccountChainLedger.LedgerEntry;
 import shareschain.account.AccountChainLedger.LedgerEvent;
 import shareschain.account.AccountChainLedger.LedgerHolding;
 import shareschain.util.Convert;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
@@ -77,6 +76,14 @@ import java.util.List;
  *           unless the administrator password is specified.
  *       </td>
  *     </tr>
+ *     <tr>
+ *       <td>continuationToken</td>
+ *       <td>The 'continuationToken' returned with the previous page.  The entries following the last entry
+ *           of the previous page are returned and 'firstIndex' and 'lastIndex' determine only the number of
+ *           entries to return.  A 'continuationToken' is returned when the number of entries returned is the
+ *           number requested.
+ *       </td>
+ *     </tr>
  *   </tbody>
  * </table>
  * <br>
@@ -177,7 +184,8 @@ public class GetAccountLedger extends APIServlet.APIRequestHandler {
      */
     private GetAccountLedger() {
         super(new APITag[] {APITag.ACCOUNTS}, "account", "firstIndex", "lastIndex",
-                "eventType", "event", "holdingType", "holding", "includeTransactions", "includeHoldingInfo");
+                "eventType", "event", "holdingType", "holding", "includeTransactions", "includeHoldingInfo",
+                "continuationToken");
     }
 
     /**
@@ -223,20 +231,28 @@ public class GetAccountLedger extends APIServlet.APIRequestHandler {
         //
         // Get the ledger entries
         //
-        List<LedgerEntry> ledgerEntries = AccountChainLedger.getEntries(accountId, event, eventId,
-                                                                   holding, holdingId, firstIndex, lastIndex);
+        int pageSize = ContinuationToken.getPageSize(req);
+        long afterLedgerId = ContinuationToken.getLedgerId(req);
+        List<LedgerEntry> ledgerEntries;
+        if (afterLedgerId != 0) {
+            ledgerEntries = AccountChainLedger.getEntriesAfter(accountId, event, eventId,
+                                                               holding, holdingId, afterLedgerId, pageSize);
+        } else {
+            ledgerEntries = AccountChainLedger.getEntries(accountId, event, eventId,
+                                                          holding, holdingId, firstIndex, lastIndex);
+        }
         //
         // Return the response
         //
-        JSONArray responseEntries = new JSONArray();
-        ledgerEntries.forEach((entry) -> {
+        JSONObject response = new JSONObject();
+        if (pageSize > 0 && ledgerEntries.size() == pageSize) {
+            response.put("continuationToken", ContinuationToken.getToken(ledgerEntries.get(ledgerEntries.size() - 1)));
+        }
+        return new StreamingResponse<>(response, "entries", ledgerEntries.iterator(), (entry) -> {
             JSONObject responseEntry = new JSONObject();
             JSONData.ledgerEntry(responseEntry, entry, includeTransactions, includeHoldingInfo);
-            responseEntries.add(responseEntry);
+            return responseEntry;
         });
-        JSONObject response = new JSONObject();
-        response.put("entries", responseEntries);
-        return response;
     }
 
     @Override
@@ -244,4 +260,9 @@ public class GetAccountLedger extends APIServlet.APIRequestHandler {
         return false;
     }
 
+    @Override
+    protected boolean isExpensive() {
+        return true;
+    }
+
 }
@@ -32,4 +32,14 @@ public final class GetBalance extends APIServlet.APIRequestHandler {
         }
     }
 
+    @Override
+    protected int getCacheLifetime() {
+        return APIResponseCache.BLOCK_LIFETIME;
+    }
+
+    @Override
+    protected boolean includesUnconfirmed() {
+        return true;
+    }
+
 }
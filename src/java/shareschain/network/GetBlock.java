@@ -74,4 +74,9 @@ public final class GetBlock extends APIServlet.APIRequestHandler {
         return false;
     }
 
-}
\ No newline at end of file
+    @Override
+    protected int getCacheLifetime() {
+        return APIResponseCache.BLOCK_LIFETIME;
+    }
+
+}
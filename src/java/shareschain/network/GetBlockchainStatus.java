@@ -70,4 +70,9 @@ public final class GetBlockchainStatus extends APIServlet.APIRequestHandler {
         return false;
     }
 
+    @Override
+    protected int getCacheLifetime() {
+        return APIResponseCache.STATUS_LIFETIME;
+    }
+
 }
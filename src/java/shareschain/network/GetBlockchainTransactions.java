@@ -6,9 +6,8 @@ import shareschain.ShareschainExceptions;
 import shareschain.blockchain.Chain;
 import shareschain.blockchain.Mainchain;
 import shareschain.blockchain.Transaction;
+import shareschain.blockchain.TransactionCursor;
 import shareschain.database.DBIterator;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
 import javax.servlet.http.HttpServletRequest;
@@ -20,7 +19,7 @@ public final class GetBlockchainTransactions extends APIServlet.APIRequestHandle
     private GetBlockchainTransactions() {
         super(new APITag[] {APITag.ACCOUNTS, APITag.TRANSACTIONS}, "account", "timestamp", "type", "subtype",
                 "firstIndex", "lastIndex", "numberOfConfirmations", "withMessage", "phasedOnly", "nonPhasedOnly",
-                "includeExpiredPrunable", "includePhasingResult", "executedOnly");
+                "includeExpiredPrunable", "includePhasingResult", "executedOnly", "continuationToken");
     }
 
     @Override
@@ -52,20 +51,30 @@ public final class GetBlockchainTransactions extends APIServlet.APIRequestHandle
 
         int firstIndex = ParameterParser.getFirstIndex(req);
         int lastIndex = ParameterParser.getLastIndex(req);
+        int pageSize = ContinuationToken.getPageSize(req);
+        TransactionCursor cursor = ContinuationToken.getTransactionCursor(req);
 
-        JSONArray transactions = new JSONArray();
-        try (DBIterator<? extends Transaction> iterator =
-                     Shareschain.getBlockchain().getTransactions((Mainchain)chain, accountId, numberOfConfirmations,
-                             type, subtype, timestamp, firstIndex, lastIndex)) {
-            while (iterator.hasNext()) {
-                Transaction transaction = iterator.next();
-                transactions.add(JSONData.transaction(transaction));
-            }
+        DBIterator<? extends Transaction> iterator;
+        if (cursor != null) {
+            iterator = Shareschain.getBlockchain().getTransactions((Mainchain)chain, accountId, numberOfConfirmations,
+                    type, subtype, timestamp, cursor, pageSize);
+        } else {
+            iterator = Shareschain.getBlockchain().getTransactions((Mainchain)chain, accountId, numberOfConfirmations,
+                    type, subtype, timestamp, firstIndex, lastIndex);
         }
+        Transaction[] lastTransaction = new Transaction[1];
+        int[] count = new int[1];
+        return new StreamingResponse<>("transactions", iterator, transaction -> {
+            lastTransaction[0] = transaction;
+            count[0]++;
+            return JSONData.transaction(transaction);
+        }).setTrailer("continuationToken",
+                () -> pageSize > 0 && count[0] == pageSize ? ContinuationToken.getToken(lastTransaction[0]) : null);
+    }
 
-        JSONObject response = new JSONObject();
-        response.put("transactions", transactions);
-        return response;
+    @Override
+    protected boolean isExpensive() {
+        return true;
     }
 
 }
@@ -5,8 +5,6 @@ import shareschain.Shareschain;
 import shareschain.ShareschainExceptions;
 import shareschain.blockchain.Block;
 import shareschain.database.DBIterator;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
 import javax.servlet.http.HttpServletRequest;
@@ -28,21 +26,9 @@ public final class GetBlocks extends APIServlet.APIRequestHandler {
         boolean includeTransactions = "true".equalsIgnoreCase(req.getParameter("includeTransactions"));
         boolean includeExecutedPhased = "true".equalsIgnoreCase(req.getParameter("includeExecutedPhased"));
 
-        JSONArray blocks = new JSONArray();
-        try (DBIterator<? extends Block> iterator = Shareschain.getBlockchain().getBlocks(firstIndex, lastIndex)) {
-            while (iterator.hasNext()) {
-                Block block = iterator.next();
-                if (block.getTimestamp() < timestamp) {
-                    break;
-                }
-                blocks.add(JSONData.block(block, includeTransactions, includeExecutedPhased));
-            }
-        }
-
-        JSONObject response = new JSONObject();
-        response.put("blocks", blocks);
-
-        return response;
+        DBIterator<? extends Block> iterator = Shareschain.getBlockchain().getBlocks(firstIndex, lastIndex);
+        return new StreamingResponse<>("blocks", iterator, block ->
+                block.getTimestamp() < timestamp ? null : JSONData.block(block, includeTransactions, includeExecutedPhased));
     }
 
     @Override
@@ -50,4 +36,14 @@ public final class GetBlocks extends APIServlet.APIRequestHandler {
         return false;
     }
 
+    @Override
+    protected int getCacheLifetime() {
+        return APIResponseCache.BLOCK_LIFETIME;
+    }
+
+    @Override
+    protected boolean isExpensive() {
+        return true;
+    }
+
 }
@@ -5,6 +5,7 @@ import shareschain.Shareschain;
 import shareschain.ShareschainExceptions;
 import shareschain.blockchain.Chain;
 import shareschain.blockchain.Transaction;
+import shareschain.blockchain.TransactionCursor;
 import shareschain.blockchain.TransactionType;
 import shareschain.database.DBIterator;
 import org.json.simple.JSONArray;
@@ -17,7 +18,8 @@ public final class GetExecutedTransactions extends APIServlet.APIRequestHandler
     static final GetExecutedTransactions instance = new GetExecutedTransactions();
 
     private GetExecutedTransactions() {
-        super(new APITag[] {APITag.TRANSACTIONS}, "height", "numberOfConfirmations", "type", "subtype", "sender", "recipient", "firstIndex", "lastIndex");
+        super(new APITag[] {APITag.TRANSACTIONS}, "height", "numberOfConfirmations", "type", "subtype", "sender", "recipient", "firstIndex", "lastIndex",
+                "continuationToken");
     }
 
     @Override
@@ -54,18 +56,32 @@ public final class GetExecutedTransactions extends APIServlet.APIRequestHandler
 
         int firstIndex = ParameterParser.getFirstIndex(req);
         int lastIndex = ParameterParser.getLastIndex(req);
+        int pageSize = ContinuationToken.getPageSize(req);
+        TransactionCursor cursor = ContinuationToken.getTransactionCursor(req);
 
         JSONArray transactions = new JSONArray();
-        try (DBIterator<? extends Transaction> iterator = Shareschain.getBlockchain().getExecutedTransactions(chain, senderId,
-                recipientId, type, subtype, height, numberOfConfirmations, firstIndex, lastIndex)) {
+        Transaction lastTransaction = null;
+        try (DBIterator<? extends Transaction> iterator = (cursor != null ?
+                Shareschain.getBlockchain().getExecutedTransactions(chain, senderId, recipientId, type, subtype,
+                        height, numberOfConfirmations, cursor, pageSize) :
+                Shareschain.getBlockchain().getExecutedTransactions(chain, senderId, recipientId, type, subtype,
+                        height, numberOfConfirmations, firstIndex, lastIndex))) {
             while (iterator.hasNext()) {
-                Transaction transaction = iterator.next();
-                transactions.add(JSONData.transaction(transaction));
+                lastTransaction = iterator.next();
+                transactions.add(JSONData.transaction(lastTransaction));
             }
         }
 
         JSONObject response = new JSONObject();
         response.put("transactions", transactions);
+        if (pageSize > 0 && transactions.size() == pageSize) {
+            response.put("continuationToken", ContinuationToken.getToken(lastTransaction));
+        }
         return response;
     }
+
+    @Override
+    protected boolean isExpensive() {
+        return true;
+    }
 }
@@ -47,4 +47,9 @@ public final class GetExpectedTransactions extends APIServlet.APIRequestHandler
         return response;
     }
 
+    @Override
+    protected boolean isExpensive() {
+        return true;
+    }
+
 }
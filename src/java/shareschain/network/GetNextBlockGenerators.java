@@ -103,4 +103,9 @@ public final class GetNextBlockGenerators extends APIServlet.APIRequestHandler {
         return false;
     }
 
+    @Override
+    protected boolean isExpensive() {
+        return true;
+    }
+
 }
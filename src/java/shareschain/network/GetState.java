@@ -9,6 +9,7 @@ import shareschain.blockchain.Generator;
 import shareschain.node.NetworkHandler;
 import shareschain.node.Nodes;
 import shareschain.util.UPnP;
+import shareschain.util.crypto.VerifyKeyCache;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONStreamAware;
 
@@ -20,7 +21,7 @@ public final class GetState extends APIServlet.APIRequestHandler {
     static final GetState instance = new GetState();
 
     private GetState() {
-        super(new APITag[] {APITag.INFO}, "includeCounts", "adminPassword");
+        super(new APITag[] {APITag.INFO}, "includeCounts", "includeAPIStatistics", "adminPassword");
     }
 
     @Override
@@ -35,6 +36,18 @@ public final class GetState extends APIServlet.APIRequestHandler {
             response.put("numberOfAccountLeases", Account.getAccountLeaseCount());
             response.put("numberOfActiveAccountLeases", Account.getActiveLeaseCount());
         }
+        if ("true".equalsIgnoreCase(req.getParameter("includeAPIStatistics")) && API.checkPassword(req)) {
+            response.put("apiStatistics", APIScheduler.getStatistics());
+        }
+        if (VerifyKeyCache.isEnabled()) {
+            JSONObject verifyKeyCache = new JSONObject();
+            verifyKeyCache.put("hits", VerifyKeyCache.getHits());
+            verifyKeyCache.put("misses", VerifyKeyCache.getMisses());
+            verifyKeyCache.put("hitRate", VerifyKeyCache.getHitRate());
+            verifyKeyCache.put("size", VerifyKeyCache.getSize());
+            verifyKeyCache.put("maxSize", VerifyKeyCache.getMaxSize());
+            response.put("verifyKeyCache", verifyKeyCache);
+        }
         response.put("numberOfNodes", Nodes.getAllNodes().size());
         response.put("numberOfConnectedNodes", NetworkHandler.getConnectionCount());
         response.put("numberOfUnlockedAccounts", Generator.getAllGenerators().size());
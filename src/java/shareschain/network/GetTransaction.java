@@ -43,4 +43,9 @@ public final class GetTransaction extends APIServlet.APIRequestHandler {
         }
     }
 
+    @Override
+    protected int getCacheLifetime() {
+        return APIResponseCache.UNCONFIRMED_LIFETIME;
+    }
+
 }
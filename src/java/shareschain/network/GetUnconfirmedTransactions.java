@@ -57,4 +57,9 @@ public final class GetUnconfirmedTransactions extends APIServlet.APIRequestHandl
         return response;
     }
 
+    @Override
+    protected boolean isExpensive() {
+        return true;
+    }
+
 }
@@ -171,7 +171,7 @@ public final class JSONData {
         byte[] signature = Convert.emptyToNull(transaction.getSignature());
         if (signature != null) {
             json.put("signature", Convert.toHexString(signature));
-            json.put("signatureHash", Convert.toHexString(Crypto.sha256().digest(signature)));
+            json.put("signatureHash", Convert.toHexString(Crypto.sha256(signature)));
             json.put("fullHash", Convert.toHexString(transaction.getFullHash()));
             if (transaction instanceof SmcTransaction) {
                 json.put("transaction", Long.toUnsignedString(transaction.getId()));
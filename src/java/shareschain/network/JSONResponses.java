@@ -74,6 +74,14 @@ public final class JSONResponses {
         ERROR_INCORRECT_REQUEST = JSON.prepare(response);
     }
 
+    public static final JSONStreamAware ERROR_BUSY;
+    static {
+        JSONObject response  = new JSONObject();
+        response.put("errorCode", 23);
+        response.put("errorDescription", "Server busy, try again later");
+        ERROR_BUSY = JSON.prepare(response);
+    }
+
     public static final JSONStreamAware NOT_FORGING;
     static {
         JSONObject response = new JSONObject();
@@ -0,0 +1,158 @@
+package shareschain.network;
+
+import shareschain.util.JSON;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * A streaming API response consists of a JSON object containing an array whose elements
+ * are created one at a time as the response is written.  This allows a request handler to
+ * return a large number of database rows without first building the complete response.
+ * </p>
+ * <p>
+ * The row iterator is closed when the response has been written.  The row function can
+ * return null to end the array before the iterator is exhausted.  A trailer field can be
+ * written after the array using a value which is not known until all of the rows have been
+ * written (such as a continuation token).  APIServlet writes a
+ * streaming response before it ends the database transaction and releases the blockchain
+ * read lock, so a database iterator remains valid until the response is complete.
+ * </p>
+ *
+ * @param   <T>                         Row type
+ */
+final class StreamingResponse<T> implements JSONStreamAware {
+
+    /** Response fields written before the array */
+    private final JSONObject response;
+
+    /** Array name */
+    private final String arrayName;
+
+    /** Row iterator */
+    private final Iterator<T> iterator;
+
+    /** Row function */
+    private final Function<T, Object> rowFunction;
+
+    /** Trailer field name */
+    private String trailerName;
+
+    /** Trailer field value supplier */
+    private Supplier<Object> trailerSupplier;
+
+    /** Row iterator has been closed */
+    private boolean closed;
+
+    /**
+     * Create a streaming response
+     *
+     * @param   response                Response fields written before the array
+     * @param   arrayName               Array name
+     * @param   iterator                Row iterator
+     * @param   rowFunction             Function returning the JSON value for a row or null to end the array
+     */
+    StreamingResponse(JSONObject response, String arrayName, Iterator<T> iterator, Function<T, Object> rowFunction) {
+        this.response = response;
+        this.arrayName = arrayName;
+        this.iterator = iterator;
+        this.rowFunction = rowFunction;
+    }
+
+    /**
+     * Create a streaming response
+     *
+     * @param   arrayName               Array name
+     * @param   iterator                Row iterator
+     * @param   rowFunction             Function returning the JSON value for a row or null to end the array
+     */
+    StreamingResponse(String arrayName, Iterator<T> iterator, Function<T, Object> rowFunction) {
+        this(new JSONObject(), arrayName, iterator, rowFunction);
+    }
+
+    /**
+     * Set the field written after the array
+     *
+     * @param   name                    Field name
+     * @param   supplier                Supplier returning the field value or null to omit the field
+     * @return                          This response
+     */
+    StreamingResponse<T> setTrailer(String name, Supplier<Object> supplier) {
+        this.trailerName = name;
+        this.trailerSupplier = supplier;
+        return this;
+    }
+
+    /**
+     * Write the response
+     *
+     * @param   out                     Writer
+     * @throws  IOException             I/O error occurred
+     */
+    @Override
+    public void writeJSONString(Writer out) throws IOException {
+        try {
+            out.write('{');
+            for (Object obj : response.entrySet()) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>)obj;
+                out.write('\"');
+                out.write(entry.getKey().toString());
+                out.write("\":");
+                JSON.writeJSONValue(entry.getValue(), out);
+                out.write(',');
+            }
+            out.write('\"');
+            out.write(arrayName);
+            out.write("\":[");
+            boolean firstElement = true;
+            while (iterator.hasNext()) {
+                Object value = rowFunction.apply(iterator.next());
+                if (value == null) {
+                    break;
+                }
+                if (firstElement) {
+                    firstElement = false;
+                } else {
+                    out.write(',');
+                }
+                JSON.writeJSONValue(value, out);
+            }
+            out.write(']');
+            if (trailerSupplier != null) {
+                Object trailerValue = trailerSupplier.get();
+                if (trailerValue != null) {
+                    out.write(",\"");
+                    out.write(trailerName);
+                    out.write("\":");
+                    JSON.writeJSONValue(trailerValue, out);
+                }
+            }
+            out.write('}');
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Release the row iterator.  The iterator is released when the response is written
+     * and must also be released if the response is not written.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (iterator instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable)iterator).close();
+            } catch (Exception ignore) {}
+        }
+    }
+}
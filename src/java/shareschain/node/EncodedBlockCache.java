@@ -0,0 +1,112 @@
+package shareschain.node;
+
+import shareschain.Shareschain;
+import shareschain.blockchain.Block;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * The encoded block cache holds blocks in the network encoding used by the Blocks message.
+ * Blocks requested by syncing nodes are loaded and encoded once and are then served by
+ * copying the cached bytes to the message buffer.  The block identifier is the hash of the
+ * block bytes, so a cached block never changes and the cache does not need to be cleared
+ * when blocks are popped off.
+ * </p>
+ * <p>
+ * The shareschain.nodeBlockCacheKB property specifies the maximum memory used by the cache in
+ * kilobytes (0 disables the cache).  The least recently served blocks are discarded when the
+ * cache is full.
+ * </p>
+ */
+final class EncodedBlockCache {
+
+    /** Maximum cache size (bytes) */
+    private static final long maxSize = Math.max(0, Shareschain.getIntProperty("shareschain.nodeBlockCacheKB")) * 1024L;
+
+    /** Encoded blocks in least-recently-used order */
+    private static final LinkedHashMap<Long, ByteBuffer> cache = new LinkedHashMap<>(256, 0.75f, true);
+
+    /** Current cache size (bytes) */
+    private static long size;
+
+    private EncodedBlockCache() {}
+
+    /**
+     * Get the encoded blocks.  Blocks which are not in the cache are loaded from the
+     * blockchain and added to the cache.  The block identifiers are checked against the
+     * blockchain again after the blocks have been assembled, so the returned list stops
+     * at the first block which is no longer in the blockchain, including cached blocks.
+     *
+     * @param   blockId             Identifier of the block preceding the first requested block
+     * @param   blockIds            Block identifiers
+     * @return                      Encoded blocks
+     */
+    static List<ByteBuffer> getBlocks(long blockId, List<Long> blockIds) {
+        List<ByteBuffer> encodedBlocks = new ArrayList<>(blockIds.size());
+        List<? extends Block> blocks = null;
+        int firstLoaded = 0;
+        for (int i = 0; i < blockIds.size(); i++) {
+            long id = blockIds.get(i);
+            ByteBuffer encodedBlock = get(id);
+            if (encodedBlock == null) {
+                if (blocks == null) {
+                    blocks = Shareschain.getBlockchain().getBlocksAfter(i == 0 ? blockId : blockIds.get(i - 1), blockIds.size() - i);
+                    firstLoaded = i;
+                }
+                int index = i - firstLoaded;
+                if (index >= blocks.size() || blocks.get(index).getId() != id) {
+                    break;
+                }
+                encodedBlock = NetworkMessage.BlocksMessage.encodeBlock(blocks.get(index));
+                put(id, encodedBlock);
+            }
+            encodedBlocks.add(encodedBlock);
+        }
+        if (encodedBlocks.isEmpty()) {
+            return encodedBlocks;
+        }
+        List<Long> chainBlockIds = Shareschain.getBlockchain().getBlockIdsAfter(blockId, encodedBlocks.size());
+        int count = 0;
+        while (count < chainBlockIds.size() && chainBlockIds.get(count).equals(blockIds.get(count))) {
+            count++;
+        }
+        return (count < encodedBlocks.size() ? encodedBlocks.subList(0, count) : encodedBlocks);
+    }
+
+    /**
+     * Get a cached block
+     *
+     * @param   blockId             Block identifier
+     * @return                      Encoded block or null if the block is not cached
+     */
+    private static synchronized ByteBuffer get(Long blockId) {
+        return cache.get(blockId);
+    }
+
+    /**
+     * Add a block to the cache, discarding the least recently used blocks if the cache is full
+     *
+     * @param   blockId             Block identifier
+     * @param   encodedBlock        Encoded block
+     */
+    private static synchronized void put(Long blockId, ByteBuffer encodedBlock) {
+        if (encodedBlock.remaining() > maxSize) {
+            return;
+        }
+        ByteBuffer oldBlock = cache.put(blockId, encodedBlock);
+        if (oldBlock != null) {
+            size -= oldBlock.remaining();
+        }
+        size += encodedBlock.remaining();
+        while (size > maxSize) {
+            Map.Entry<Long, ByteBuffer> eldest = cache.entrySet().iterator().next();
+            size -= eldest.getValue().remaining();
+            cache.remove(eldest.getKey());
+        }
+    }
+}
@@ -1,9 +1,8 @@
-
 package shareschain.node;
 
 import shareschain.Shareschain;
-import shareschain.blockchain.Block;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 final class GetNextBlocks {
@@ -11,7 +10,8 @@ final class GetNextBlocks {
     private GetNextBlocks() {}
 
     /**
-     * Process the GetNextBlocks message and return the Blocks message
+     * Process the GetNextBlocks message and return the Blocks message.  The blocks are
+     * returned from the encoded block cache so they are not serialized again for each node.
      *
      * @param   Node                    Node
      * @param   request                 Request message
@@ -21,18 +21,24 @@ final class GetNextBlocks {
         long blockId = request.getBlockId();
         List<Long> blockIds = request.getBlockIds();
         int limit = (request.getLimit() != 0 ? request.getLimit() : 36);
-        List<? extends Block> blocks;
+        List<Long> chainBlockIds;
         if (!blockIds.isEmpty()) {
             if (blockIds.size() > 36) {
                 throw new IllegalArgumentException(Errors.TOO_MANY_BLOCKS_REQUESTED);
             }
-            blocks = Shareschain.getBlockchain().getBlocksAfter(blockId, blockIds);
+            chainBlockIds = Shareschain.getBlockchain().getBlockIdsAfter(blockId, blockIds.size());
+            int count = 0;
+            while (count < chainBlockIds.size() && chainBlockIds.get(count).equals(blockIds.get(count))) {
+                count++;
+            }
+            chainBlockIds = chainBlockIds.subList(0, count);
         } else {
             if (limit > 36) {
                 throw new IllegalArgumentException(Errors.TOO_MANY_BLOCKS_REQUESTED);
             }
-            blocks = Shareschain.getBlockchain().getBlocksAfter(blockId, limit);
+            chainBlockIds = Shareschain.getBlockchain().getBlockIdsAfter(blockId, limit);
         }
-        return new NetworkMessage.BlocksMessage(request.getMessageId(), blocks);
+        List<ByteBuffer> encodedBlocks = EncodedBlockCache.getBlocks(blockId, chainBlockIds);
+        return new NetworkMessage.BlocksMessage(request.getMessageId(), encodedBlocks.toArray(new ByteBuffer[0]));
     }
 }
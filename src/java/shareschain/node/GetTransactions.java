@@ -28,6 +28,10 @@ final class GetTransactions {
         if (transactionIds.size() > 100) {
             throw new IllegalArgumentException(Errors.TOO_MANY_TRANSACTIONS_REQUESTED);
         }
+        //
+        // The node has asked for these transactions, so we won't announce them to the node
+        //
+        Node.addKnownTransactions(transactionIds);
         List<Transaction> transactions = new ArrayList<>(transactionIds.size());
         for (ChainTransactionId transactionId : transactionIds) {
             //first check the transaction inventory
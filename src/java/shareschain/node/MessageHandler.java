@@ -8,15 +8,60 @@ import shareschain.util.Logger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.SelectionKey;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Node message handler
+ *
+ * Each node has its own message queue.  The message handlers service the nodes
+ * in weighted round-robin order so that a single node can not monopolize the
+ * message handler threads.  The processing cost of each request is charged
+ * against a token bucket for the node and a node which has exhausted its budget
+ * will not be serviced until the budget has been replenished.
+ *
+ * High priority requests and all responses are processed as soon as they are
+ * decoded.  Normal and bulk requests are placed in the corresponding priority
+ * lane of the node queue.  The lanes are serviced during the node's turn and
+ * each lane is guaranteed a share of the node's turns, so deferred requests
+ * are not starved by a node which keeps sending messages.
  */
 class MessageHandler implements Runnable {
 
-    /** Message queue */
-    private static final LinkedBlockingQueue<QueueEntry> messageQueue = new LinkedBlockingQueue<>();
+    /** Message budget refill rate (tokens per second) */
+    private static final int messageBudgetRate = Math.max(1, Shareschain.getIntProperty("shareschain.nodeMessageBudget", 100));
+
+    /** Maximum message budget (tokens) */
+    private static final int messageBudgetBurst = Math.max(messageBudgetRate, Shareschain.getIntProperty("shareschain.nodeMessageBurst", 500));
+
+    /** Consecutive messages processed for an outbound node before servicing the next node */
+    private static final int OUTBOUND_WEIGHT = 2;
+
+    /** Consecutive messages processed for an inbound node before servicing the next node */
+    private static final int INBOUND_WEIGHT = 1;
+
+    /** Every LANE_SHARE turn of a node services its deferred requests, every LANE_SHARE squared turn its bulk requests */
+    private static final int LANE_SHARE = 4;
+
+    /** Wait time when all nodes with pending messages have exhausted their budget (milliseconds) */
+    private static final long THROTTLE_WAIT = 50;
+
+    /** Nodes with pending messages in service order */
+    private static final ArrayDeque<NodeQueue> readyQueue = new ArrayDeque<>();
+
+    /** Nodes with pending messages which have exhausted their message budget */
+    private static final List<NodeQueue> throttledQueue = new ArrayList<>();
+
+    /** Message queue lock */
+    private static final ReentrantLock queueLock = new ReentrantLock();
+
+    /** Message queue condition */
+    private static final Condition queueCondition = queueLock.newCondition();
 
     /** Shutdown started */
     private static volatile boolean messageShutdown = false;
@@ -36,19 +81,184 @@ class MessageHandler implements Runnable {
     static void processMessage(NodeImpl Node, ByteBuffer bytes) {
         bytes.position(bytes.position() - 4);
         int msgLength = bytes.getInt();
-        messageQueue.offer(new QueueEntry(Node, bytes, (msgLength & 0x80000000) != 0));
+        QueueEntry entry = new QueueEntry(Node, bytes, (msgLength & 0x80000000) != 0);
+        NodeQueue nodeQueue = Node.getMessageQueue();
+        queueLock.lock();
+        try {
+            if (messageShutdown) {
+                return;
+            }
+            nodeQueue.offer(entry);
+            if (!nodeQueue.isScheduled()) {
+                nodeQueue.setScheduled(true);
+                readyQueue.addLast(nodeQueue);
+            }
+            queueCondition.signal();
+        } finally {
+            queueLock.unlock();
+        }
     }
 
     /**
      * Shutdown the message handlers
      */
     static void shutdown() {
-        if (!messageShutdown) {
-            messageShutdown = true;
-            messageQueue.offer(new QueueEntry(null, null, false));
+        queueLock.lock();
+        try {
+            if (!messageShutdown) {
+                messageShutdown = true;
+                readyQueue.forEach(NodeQueue::clear);
+                throttledQueue.forEach(NodeQueue::clear);
+                readyQueue.clear();
+                throttledQueue.clear();
+                queueCondition.signalAll();
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Get the next message to process
+     *
+     * Nodes are serviced in round-robin order.  An outbound node will have up to
+     * OUTBOUND_WEIGHT messages processed before the next node is serviced.  A node which
+     * has exhausted its message budget is held until the budget has been replenished.
+     * The node queue decides whether a turn decodes a new message or processes a
+     * deferred request from one of the node priority lanes.
+     *
+     * @return                          Queue entry or null if the message handlers are shutting down
+     * @throws  InterruptedException    Wait interrupted
+     */
+    private static QueueEntry takeMessage() throws InterruptedException {
+        queueLock.lock();
+        try {
+            while (!messageShutdown) {
+                long now = System.currentTimeMillis();
+                if (!throttledQueue.isEmpty()) {
+                    Iterator<NodeQueue> it = throttledQueue.iterator();
+                    while (it.hasNext()) {
+                        NodeQueue nodeQueue = it.next();
+                        if (nodeQueue.hasBudget(now)) {
+                            it.remove();
+                            readyQueue.addLast(nodeQueue);
+                        }
+                    }
+                }
+                NodeQueue nodeQueue = readyQueue.pollFirst();
+                if (nodeQueue == null) {
+                    if (throttledQueue.isEmpty()) {
+                        queueCondition.await();
+                    } else {
+                        queueCondition.await(THROTTLE_WAIT, TimeUnit.MILLISECONDS);
+                    }
+                    continue;
+                }
+                if (!nodeQueue.hasBudget(now)) {
+                    throttledQueue.add(nodeQueue);
+                    continue;
+                }
+                QueueEntry entry = nodeQueue.poll();
+                if (nodeQueue.isEmpty()) {
+                    nodeQueue.setScheduled(false);
+                } else if (nodeQueue.nextTurn()) {
+                    readyQueue.addLast(nodeQueue);
+                } else {
+                    readyQueue.addFirst(nodeQueue);
+                }
+                return entry;
+            }
+        } finally {
+            queueLock.unlock();
+        }
+        return null;
+    }
+
+    /**
+     * Queue a decoded request in its node priority lane
+     *
+     * @param   entry                   Queue entry
+     * @param   message                 Decoded request message
+     */
+    private static void deferMessage(QueueEntry entry, NetworkMessage message) {
+        entry.setMessage(message);
+        NodeQueue nodeQueue = entry.getNode().getMessageQueue();
+        queueLock.lock();
+        try {
+            if (messageShutdown) {
+                return;
+            }
+            nodeQueue.defer(entry, message.getPriority() == NetworkMessage.Priority.BULK);
+            if (!nodeQueue.isScheduled()) {
+                nodeQueue.setScheduled(true);
+                readyQueue.addLast(nodeQueue);
+            }
+            queueCondition.signal();
+        } finally {
+            queueLock.unlock();
         }
     }
 
+    /**
+     * Charge the processing cost for a request against the node message budget
+     *
+     * @param   node                    Node
+     * @param   message                 Request message
+     */
+    private static void chargeMessage(NodeImpl node, NetworkMessage message) {
+        int cost = message.getProcessingCost();
+        queueLock.lock();
+        try {
+            node.getMessageQueue().charge(cost);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    /**
+     * Decode a message
+     *
+     * @param   node                    Node
+     * @param   entry                   Queue entry
+     * @return                          Network message
+     * @throws  NetworkException        Message is not valid
+     */
+    private static NetworkMessage decodeMessage(NodeImpl node, QueueEntry entry) throws NetworkException {
+        ByteBuffer buffer = entry.getBytes();
+
+        // 如果消息是加密的，那么先解密
+        if (entry.isEncrypted()) {
+            byte[] sessionKey = node.getSessionKey();
+            if (sessionKey == null) {
+                throw new IllegalStateException("Encrypted message received without a session key");
+            }
+            byte[] encryptedBytes = new byte[buffer.limit() - buffer.position()];
+            buffer.get(encryptedBytes);
+            byte[] msgBytes = Crypto.aesGCMDecrypt(encryptedBytes, sessionKey);
+            buffer = ByteBuffer.wrap(msgBytes);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        // 根据字节数组构造出消息对象
+        NetworkMessage message = NetworkMessage.getMessage(buffer);
+
+        // 这个地方原来的代码默认是不打印在处理什么消息
+        if (Nodes.isLogLevelEnabled(Nodes.LOG_LEVEL_DETAILS)) {
+            Logger.logDebugMessage(String.format("%s[%d] message received from %s",
+                    message.getMessageName(), message.getMessageId(), node.getHost()));
+        }
+
+        /**
+         * 是否打印日志
+         */
+        if (Nodes.isLogLevelEnabled(Nodes.LOG_LEVEL_NAMES)) {
+            Logger.logDebugMessage(String.format("%s[%d]  message received from %s",
+                    message.getMessageName(), message.getMessageId(), node.getHost()));
+        }
+        Logger.logDebugMessage("Does the message needs to be answered : %s",message.isResponse());
+        return message;
+    }
+
     /**
      * Message handling thread
      */
@@ -58,19 +268,10 @@ class MessageHandler implements Runnable {
         try {
             while (true) {
 
-                // LinkedBlockingQueue 在take时如果在头位置的元素不可用时则等待。
-                QueueEntry entry = messageQueue.take();
-                //
-                // During shutdown, discard all pending messages until we reach the shutdown entry.
-                // Requeue the shutdown entry to wake up the next message handler so that
-                // it can then shutdown.
-                //
-                if (messageShutdown) {
-                    if (entry.getNode() == null) {
-                        messageQueue.offer(entry);
-                        break;
-                    }
-                    continue;
+                // 按节点轮询获取下一个消息，关闭时返回null
+                QueueEntry entry = takeMessage();
+                if (entry == null) {
+                    break;
                 }
                 //
                 // Process the message
@@ -83,47 +284,30 @@ class MessageHandler implements Runnable {
                 }
 
                 // 节点在处理其它节点发送给自己的消息时需要判断这个节点有没有给自己发送过GetInfo消息，没有则不处理该节点的消息。
-                if (node.isHandshakePending() && entry.isEncrypted()) {
+                if (entry.getMessage() == null && node.isHandshakePending() && entry.isEncrypted()) {
                     node.queueInputMessage(entry.getBytes());
                     continue;
                 }
 
                 // 开始处理消息
-                NetworkMessage message = null;
+                NetworkMessage message = entry.getMessage();
                 NetworkMessage response;
                 try {
-                    ByteBuffer buffer = entry.getBytes();
+                    if (message == null) {
+                        message = decodeMessage(node, entry);
 
-                    // 如果消息是加密的，那么先解密
-                    if (entry.isEncrypted()) {
-                        byte[] sessionKey = node.getSessionKey();
-                        if (sessionKey == null) {
-                            throw new IllegalStateException("Encrypted message received without a session key");
+                        //
+                        // Requests which are not high priority are queued and processed after
+                        // any pending high priority requests
+                        //
+                        if (!message.isResponse()) {
+                            chargeMessage(node, message);
+                            if (message.getPriority() != NetworkMessage.Priority.HIGH) {
+                                deferMessage(entry, message);
+                                continue;
+                            }
                         }
-                        byte[] encryptedBytes = new byte[buffer.limit() - buffer.position()];
-                        buffer.get(encryptedBytes);
-                        byte[] msgBytes = Crypto.aesGCMDecrypt(encryptedBytes, sessionKey);
-                        buffer = ByteBuffer.wrap(msgBytes);
-                        buffer.order(ByteOrder.LITTLE_ENDIAN);
-                    }
-
-                    // 根据字节数组构造出消息对象
-                    message = NetworkMessage.getMessage(buffer);
-
-                    // 这个地方原来的代码默认是不打印在处理什么消息
-                    if (Nodes.isLogLevelEnabled(Nodes.LOG_LEVEL_DETAILS)) {
-                        Logger.logDebugMessage(String.format("%s[%d] message received from %s",
-                                message.getMessageName(), message.getMessageId(), node.getHost()));
-                    }
-
-                    /**
-                     * 是否打印日志
-                     */
-                    if (Nodes.isLogLevelEnabled(Nodes.LOG_LEVEL_NAMES)) {
-                        Logger.logDebugMessage(String.format("%s[%d]  message received from %s",
-                                message.getMessageName(), message.getMessageId(), node.getHost()));
                     }
-                    Logger.logDebugMessage("Does the message needs to be answered : %s",message.isResponse());
 
                     /**
                      *判断消息是否其它节点回复的
@@ -154,7 +338,7 @@ class MessageHandler implements Runnable {
                             if (response == null) {
                                 Logger.logErrorMessage("No response for " + message.getMessageName() + " message");
                             } else {
-                                node.sendMessage(response);
+                                node.sendMessage(response, message.getPriority());
                             }
                         }
                     }
@@ -214,6 +398,9 @@ class MessageHandler implements Runnable {
         /** Message is encrypted */
         private final boolean isEncrypted;
 
+        /** Decoded message or null if the message has not been decoded */
+        private NetworkMessage message;
+
         /**
          * Construct a queue entry
          *
@@ -253,5 +440,164 @@ class MessageHandler implements Runnable {
         private boolean isEncrypted() {
             return isEncrypted;
         }
+
+        /**
+         * Get the decoded message
+         *
+         * @return                      Message or null if the message has not been decoded
+         */
+        private NetworkMessage getMessage() {
+            return message;
+        }
+
+        /**
+         * Set the decoded message
+         *
+         * @param   message             Decoded message
+         */
+        private void setMessage(NetworkMessage message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * Message queue for a single node
+     *
+     * The message budget is a token bucket which is refilled at the configured rate
+     * up to the configured maximum.  The budget can become negative since the cost
+     * of a request is not known until the message has been decoded.  Access to the
+     * node queue is serialized by the message handler queue lock.
+     */
+    static class NodeQueue {
+
+        /** Node */
+        private final NodeImpl node;
+
+        /** Pending messages */
+        private final ArrayDeque<QueueEntry> entries = new ArrayDeque<>();
+
+        /** Decoded normal priority requests */
+        private final ArrayDeque<QueueEntry> normalLane = new ArrayDeque<>();
+
+        /** Decoded bulk requests */
+        private final ArrayDeque<QueueEntry> bulkLane = new ArrayDeque<>();
+
+        /** Number of entries returned by poll() */
+        private int pollCount;
+
+        /** Node is in the ready or throttled queue */
+        private boolean scheduled;
+
+        /** Messages processed during the current turn */
+        private int turnCount;
+
+        /** Available message budget */
+        private double budget = messageBudgetBurst;
+
+        /** Time the budget was last refilled */
+        private long refillTime = System.currentTimeMillis();
+
+        /**
+         * Construct the node message queue
+         *
+         * @param   node                Node
+         */
+        NodeQueue(NodeImpl node) {
+            this.node = node;
+        }
+
+        private void offer(QueueEntry entry) {
+            entries.offer(entry);
+        }
+
+        /**
+         * Queue a decoded request in a priority lane
+         *
+         * @param   entry               Queue entry
+         * @param   isBulk              TRUE for a bulk request
+         */
+        private void defer(QueueEntry entry, boolean isBulk) {
+            if (isBulk) {
+                bulkLane.offer(entry);
+            } else {
+                normalLane.offer(entry);
+            }
+        }
+
+        /**
+         * Get the next entry.  Pending messages are decoded first, except that every
+         * LANE_SHARE poll returns a deferred request.  Normal requests are returned before
+         * bulk requests, except that every LANE_SHARE squared poll returns a bulk request.
+         *
+         * @return                      Queue entry or null if the queue is empty
+         */
+        private QueueEntry poll() {
+            pollCount++;
+            boolean laneTurn = (pollCount % LANE_SHARE == 0);
+            if (!entries.isEmpty() && (!laneTurn || (normalLane.isEmpty() && bulkLane.isEmpty()))) {
+                return entries.poll();
+            }
+            boolean bulkTurn = (pollCount % (LANE_SHARE * LANE_SHARE) == 0);
+            if (!bulkLane.isEmpty() && (bulkTurn || normalLane.isEmpty())) {
+                return bulkLane.poll();
+            }
+            return normalLane.poll();
+        }
+
+        private boolean isEmpty() {
+            return entries.isEmpty() && normalLane.isEmpty() && bulkLane.isEmpty();
+        }
+
+        private void clear() {
+            entries.clear();
+            normalLane.clear();
+            bulkLane.clear();
+            scheduled = false;
+        }
+
+        private boolean isScheduled() {
+            return scheduled;
+        }
+
+        private void setScheduled(boolean scheduled) {
+            this.scheduled = scheduled;
+            turnCount = 0;
+        }
+
+        /**
+         * Advance the turn count
+         *
+         * @return                      TRUE if the node has completed its turn
+         */
+        private boolean nextTurn() {
+            if (++turnCount >= (node.isInbound() ? INBOUND_WEIGHT : OUTBOUND_WEIGHT)) {
+                turnCount = 0;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Refill the message budget and check if it is available
+         *
+         * @param   now                 Current time in milliseconds
+         * @return                      TRUE if the budget is available
+         */
+        private boolean hasBudget(long now) {
+            if (now > refillTime) {
+                budget = Math.min(messageBudgetBurst, budget + (now - refillTime) * messageBudgetRate / 1000.0);
+                refillTime = now;
+            }
+            return budget >= 0;
+        }
+
+        /**
+         * Charge a processing cost against the message budget
+         *
+         * @param   cost                Processing cost
+         */
+        private void charge(int cost) {
+            budget -= cost;
+        }
     }
 }
@@ -988,13 +988,16 @@ public final class NetworkHandler implements Runnable {
             return 0;
         }
         int n = 0;
-        for (Node node : connectionMap.values()) {
+        for (NodeImpl node : connectionMap.values()) {
             if (node.getState() == Node.State.CONNECTED &&
                     node != sender &&
                     (node.getBlockchainState() != Node.BlockchainState.LIGHT_CLIENT ||
                      message.sendToLightClient())) {
-                node.sendMessage(message);
-                n += 1;
+                NetworkMessage nodeMessage = message.getBroadcastMessage(node);
+                if (nodeMessage != null) {
+                    node.sendMessage(nodeMessage);
+                    n += 1;
+                }
             }
         }
         wakeup();
@@ -13,6 +13,7 @@ import java.math.BigInteger;
 import java.nio.BufferOverflowException;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.BitSet;
@@ -36,6 +37,13 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public abstract class NetworkMessage {
 
+    /** Message priority */
+    enum Priority {
+        HIGH,                           // Consensus-critical messages
+        NORMAL,                         // Default priority
+        BULK                            // Bulk data transfers
+    }
+
     /** Current protocol level - change this whenever a message format changes */
     private static final int PROTOCOL_LEVEL = 2;
 
@@ -244,6 +252,41 @@ public abstract class NetworkMessage {
         return false;
     }
 
+    /**
+     * Get the message priority
+     *
+     * High priority messages are processed and sent before normal priority messages
+     * and normal priority messages are processed and sent before bulk messages.  A
+     * response message is sent using the priority of the request message.
+     *
+     * @return                              Message priority
+     */
+    Priority getPriority() {
+        return Priority.NORMAL;
+    }
+
+    /**
+     * Get the message to be broadcast to a node
+     *
+     * @param   node                        Node
+     * @return                              Message or null if the message should not be sent to the node
+     */
+    NetworkMessage getBroadcastMessage(NodeImpl node) {
+        return this;
+    }
+
+    /**
+     * Get the processing cost for a request message
+     *
+     * The cost is charged against the message budget of the node sending the request.
+     * Response messages are not charged.
+     *
+     * @return                              Processing cost
+     */
+    int getProcessingCost() {
+        return 1;
+    }
+
     /**
      * Check if light client should receive this message
      *
@@ -295,6 +338,65 @@ public abstract class NetworkMessage {
         }
     }
 
+    /**
+     * Get the length of an encoded array
+     *
+     * @param   bytes                       Array bytes
+     * @return                              Encoded array length
+     */
+    private static int getEncodedArrayLength(ByteBuffer bytes) {
+        int length = bytes.remaining();
+        if (length < 254) {
+            length++;
+        } else if (length < 65536) {
+            length += 3;
+        } else {
+            length += 5;
+        }
+        return length;
+    }
+
+    /**
+     * Encode a read-only view of a byte array without copying the array
+     *
+     * @param   bytes                       Byte buffer
+     * @param   arrayBytes                  Array bytes
+     * @throws  BufferOverflowException     Byte buffer is too small
+     */
+    private static void encodeArray(ByteBuffer bytes, ByteBuffer arrayBytes) throws BufferOverflowException {
+        int length = arrayBytes.remaining();
+        if (length > MAX_ARRAY_LENGTH) {
+            throw new RuntimeException("Array length " + length + " exceeds the maximum of " + MAX_ARRAY_LENGTH);
+        }
+        if (length < 254) {
+            bytes.put((byte)length);
+        } else if (length < 65536) {
+            bytes.put((byte)254).putShort((short)length);
+        } else {
+            bytes.put((byte)255).putInt(length);
+        }
+        if (length > 0) {
+            bytes.put(arrayBytes.duplicate());
+        }
+    }
+
+    /**
+     * Get the bytes of a byte array view.  The backing array is returned when the view
+     * covers a complete writable array, otherwise the bytes are copied.
+     *
+     * @param   arrayBytes                  Array bytes
+     * @return                              Byte array
+     */
+    private static byte[] getArray(ByteBuffer arrayBytes) {
+        if (arrayBytes.hasArray() && arrayBytes.arrayOffset() == 0 && arrayBytes.position() == 0
+                && arrayBytes.remaining() == arrayBytes.array().length) {
+            return arrayBytes.array();
+        }
+        byte[] array = new byte[arrayBytes.remaining()];
+        arrayBytes.duplicate().get(array);
+        return array;
+    }
+
     /**
      * Decode a byte array
      *
@@ -880,6 +982,16 @@ public abstract class NetworkMessage {
         boolean downloadNotAllowed() {
             return true;
         }
+
+        /**
+         * Get the message priority
+         *
+         * @return                              Message priority
+         */
+        @Override
+        Priority getPriority() {
+            return Priority.HIGH;
+        }
     }
 
     /**
@@ -1003,6 +1115,16 @@ public abstract class NetworkMessage {
         public int getBlockHeight() {
             return blockHeight;
         }
+
+        /**
+         * Get the message priority
+         *
+         * @return                              Message priority
+         */
+        @Override
+        Priority getPriority() {
+            return Priority.HIGH;
+        }
     }
 
     /**
@@ -1323,6 +1445,16 @@ public abstract class NetworkMessage {
             return true;
         }
 
+        /**
+         * Get the processing cost for a request message
+         *
+         * @return                              Processing cost
+         */
+        @Override
+        int getProcessingCost() {
+            return 5;
+        }
+
         /**
          * Check if blockchain download is not allowed
          *
@@ -1598,6 +1730,16 @@ public abstract class NetworkMessage {
             return true;
         }
 
+        /**
+         * Get the processing cost for a request message
+         *
+         * @return                              Processing cost
+         */
+        @Override
+        int getProcessingCost() {
+            return 2 + Math.max(0, Math.min(limit, MAX_LIST_SIZE)) / 100;
+        }
+
         /**
          * Check if blockchain download is not allowed
          *
@@ -1625,6 +1767,16 @@ public abstract class NetworkMessage {
         public int getLimit() {
             return limit;
         }
+
+        /**
+         * Get the message priority
+         *
+         * @return                              Message priority
+         */
+        @Override
+        Priority getPriority() {
+            return Priority.BULK;
+        }
     }
 
     /**
@@ -1875,6 +2027,16 @@ public abstract class NetworkMessage {
             return true;
         }
 
+        /**
+         * Get the processing cost for a request message
+         *
+         * @return                              Processing cost
+         */
+        @Override
+        int getProcessingCost() {
+            return 2 + (blockIds.isEmpty() ? 36 : blockIds.size());
+        }
+
         /**
          * Check if blockchain download is not allowed
          *
@@ -1911,6 +2073,16 @@ public abstract class NetworkMessage {
         public List<Long> getBlockIds() {
             return blockIds;
         }
+
+        /**
+         * Get the message priority
+         *
+         * @return                              Message priority
+         */
+        @Override
+        Priority getPriority() {
+            return Priority.BULK;
+        }
     }
 
     /**
@@ -2054,6 +2226,16 @@ public abstract class NetworkMessage {
             return true;
         }
 
+        /**
+         * Get the processing cost for a request message
+         *
+         * @return                              Processing cost
+         */
+        @Override
+        int getProcessingCost() {
+            return 4;
+        }
+
         /**
          * Check if blockchain download is not allowed
          *
@@ -2081,6 +2263,16 @@ public abstract class NetworkMessage {
         public byte[] getExcludedTransactions() {
             return excludedTransactions;
         }
+
+        /**
+         * Get the message priority
+         *
+         * @return                              Message priority
+         */
+        @Override
+        Priority getPriority() {
+            return Priority.HIGH;
+        }
     }
 
     /**
@@ -2149,6 +2341,46 @@ public abstract class NetworkMessage {
             }
         }
 
+        /**
+         * Construct a Blocks message from encoded blocks.  The encoded block bytes are
+         * copied to the message buffer without serializing the blocks again.
+         *
+         * @param   messageId               Message identifier
+         * @param   encodedBlocks           Encoded blocks as returned by encodeBlock()
+         */
+        BlocksMessage(long messageId, ByteBuffer[] encodedBlocks) {
+            super("Blocks");
+            if (encodedBlocks.length > MAX_LIST_SIZE) {
+                throw new RuntimeException("List size " + encodedBlocks.length + " exceeds the maximum of " + MAX_LIST_SIZE);
+            }
+            this.messageId = messageId;
+            blockBytes = new ArrayList<>(encodedBlocks.length);
+            totalBlockLength = 0;
+            for (ByteBuffer encodedBlock : encodedBlocks) {
+                BlockBytes bytes = BlockBytes.fromEncodedBytes(encodedBlock);
+                if (getLength() + bytes.getLength() > NetworkHandler.MAX_MESSAGE_SIZE) {
+                    break;
+                }
+                blockBytes.add(bytes);
+                totalBlockLength += bytes.getLength();
+            }
+        }
+
+        /**
+         * Encode a block for use with BlocksMessage(long, ByteBuffer[])
+         *
+         * @param   block                   Block
+         * @return                          Read-only buffer containing the encoded block
+         */
+        static ByteBuffer encodeBlock(Block block) {
+            BlockBytes bytes = new BlockBytes(block);
+            ByteBuffer buffer = ByteBuffer.allocate(bytes.getLength());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            bytes.getBytes(buffer);
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+
         /**
          * Construct a Blocks message
          *
@@ -2269,6 +2501,16 @@ public abstract class NetworkMessage {
             }
             return blockBytes.get(0).getBlock(excludedTransactions);
         }
+
+        /**
+         * Get the message priority
+         *
+         * @return                              Message priority
+         */
+        @Override
+        Priority getPriority() {
+            return Priority.BULK;
+        }
     }
 
     /**
@@ -2387,6 +2629,16 @@ public abstract class NetworkMessage {
             return true;
         }
 
+        /**
+         * Get the processing cost for a request message
+         *
+         * @return                              Processing cost
+         */
+        @Override
+        int getProcessingCost() {
+            return 1 + transactionIds.size() / 10;
+        }
+
         /**
          * Get the transaction identifiers
          *
@@ -2514,6 +2766,16 @@ public abstract class NetworkMessage {
             return true;
         }
 
+        /**
+         * Get the processing cost for a request message
+         *
+         * @return                              Processing cost
+         */
+        @Override
+        int getProcessingCost() {
+            return 10;
+        }
+
         /**
          * Check if blockchain download is not allowed
          *
@@ -2532,6 +2794,16 @@ public abstract class NetworkMessage {
         public List<Long> getExclusions() {
             return exclusionIds;
         }
+
+        /**
+         * Get the message priority
+         *
+         * @return                              Message priority
+         */
+        @Override
+        Priority getPriority() {
+            return Priority.BULK;
+        }
     }
 
     /**
@@ -2618,7 +2890,7 @@ public abstract class NetworkMessage {
             this.transactionBytes = new ArrayList<>(transactionCount);
             totalTransactionLength = 0;
             for (int i=0; i<transactionCount; i++) {
-                TransactionBytes txBytes = new TransactionBytes(bytes);
+                TransactionBytes txBytes = new TransactionBytes(ByteBuffer.wrap(decodeArray(bytes)));
                 transactionBytes.add(txBytes);
                 totalTransactionLength += txBytes.getLength();
             }
@@ -2680,6 +2952,16 @@ public abstract class NetworkMessage {
             }
             return transactions;
         }
+
+        /**
+         * Get the message priority
+         *
+         * @return                              Message priority
+         */
+        @Override
+        Priority getPriority() {
+            return Priority.BULK;
+        }
     }
 
     /**
@@ -2903,6 +3185,16 @@ public abstract class NetworkMessage {
         public List<ChainTransactionId> getTransactionIds() {
             return transactionIds;
         }
+
+        /**
+         * Get the message priority
+         *
+         * @return                              Message priority
+         */
+        @Override
+        Priority getPriority() {
+            return Priority.HIGH;
+        }
     }
 
     /**
@@ -2925,6 +3217,9 @@ public abstract class NetworkMessage {
         /** Transaction identifier */
         private final List<ChainTransactionId> transactionIds;
 
+        /** Transactions are rebroadcast to nodes which already know them */
+        private final boolean isRebroadcast;
+
         /**
          * Construct the message from the message bytes
          *
@@ -2957,6 +3252,7 @@ public abstract class NetworkMessage {
         private TransactionsInventoryMessage() {
             super("TransactionsInventory");
             transactionIds = null;
+            isRebroadcast = false;
         }
 
         /**
@@ -2965,7 +3261,21 @@ public abstract class NetworkMessage {
          * @param   transactions                Transaction list
          */
         public TransactionsInventoryMessage(List<? extends Transaction> transactions) {
+            this(transactions, false);
+        }
+
+        /**
+         * Construct a TransactionsInventory message
+         *
+         * A rebroadcast message is sent to every node, including nodes which have
+         * already announced or been sent the transactions.
+         *
+         * @param   transactions                Transaction list
+         * @param   isRebroadcast               TRUE if the transactions are being rebroadcast
+         */
+        public TransactionsInventoryMessage(List<? extends Transaction> transactions, boolean isRebroadcast) {
             super("TransactionsInventory");
+            this.isRebroadcast = isRebroadcast;
             Set<ChainTransactionId> set = new HashSet<>();
             for (Transaction transaction : transactions) {
                 set.add(ChainTransactionId.getChainTransactionId(transaction));
@@ -2976,6 +3286,17 @@ public abstract class NetworkMessage {
             }
         }
 
+        /**
+         * Construct a TransactionsInventory message
+         *
+         * @param   transactionIds              Transaction identifiers
+         */
+        private TransactionsInventoryMessage(ArrayList<ChainTransactionId> transactionIds) {
+            super("TransactionsInventory");
+            this.transactionIds = transactionIds;
+            this.isRebroadcast = false;
+        }
+
         /**
          * Construct a TransactionsInventory message
          *
@@ -2985,6 +3306,7 @@ public abstract class NetworkMessage {
          */
         private TransactionsInventoryMessage(ByteBuffer bytes) throws BufferUnderflowException, NetworkException {
             super("TransactionsInventory", bytes);
+            isRebroadcast = false;
             int count = (int)bytes.getShort() & 0xffff;
             if (count > MAX_LIST_SIZE) {
                 throw new NetworkException("List size " + count + " exceeds the maximum of " + MAX_LIST_SIZE);
@@ -3039,6 +3361,38 @@ public abstract class NetworkMessage {
             return transactionIds;
         }
 
+        /**
+         * Get the message to be broadcast to a node
+         *
+         * Transactions which have already been announced by or to the node are removed
+         * unless the transactions are being rebroadcast
+         *
+         * @param   node                        Node
+         * @return                              Message or null if all transactions are known to the node
+         */
+        @Override
+        NetworkMessage getBroadcastMessage(NodeImpl node) {
+            if (isRebroadcast) {
+                node.addKnownTransactions(transactionIds);
+                return this;
+            }
+            List<ChainTransactionId> unknownIds = node.filterKnownTransactions(transactionIds);
+            if (unknownIds.isEmpty()) {
+                return null;
+            }
+            return (unknownIds.size() == transactionIds.size() ? this :
+                    new TransactionsInventoryMessage(new ArrayList<>(unknownIds)));
+        }
+
+        /**
+         * Get the message priority
+         *
+         * @return                              Message priority
+         */
+        @Override
+        Priority getPriority() {
+            return Priority.BULK;
+        }
     }
 
     /**
@@ -3196,7 +3550,7 @@ public abstract class NetworkMessage {
     private static class BlockBytes {
 
         /** Block bytes */
-        private final byte[] blockBytes;
+        private final ByteBuffer blockBytes;
 
         /** Block transactions, each SmcTransaction is followed by its ChildTransactions, if any */
         private final List<TransactionBytes> blockTransactions;
@@ -3204,16 +3558,44 @@ public abstract class NetworkMessage {
         /** Child transaction counts for each SmcTransaction */
         private final int[] childCounts;
 
+        /** Complete encoded block or null if the block is encoded from its parts */
+        private final ByteBuffer encodedBytes;
+
         /** Total block byte length */
         private int length;
 
+        /**
+         * Construct an encoded block from a previously encoded block
+         *
+         * @param   encodedBytes        Encoded block
+         * @return                      Encoded block
+         */
+        private static BlockBytes fromEncodedBytes(ByteBuffer encodedBytes) {
+            return new BlockBytes(encodedBytes.duplicate(), encodedBytes.remaining());
+        }
+
+        /**
+         * Construct an encoded block
+         *
+         * @param   encodedBytes        Encoded block
+         * @param   length              Encoded block length
+         */
+        private BlockBytes(ByteBuffer encodedBytes, int length) {
+            this.encodedBytes = encodedBytes;
+            this.length = length;
+            blockBytes = null;
+            blockTransactions = Collections.emptyList();
+            childCounts = new int[0];
+        }
+
         /**
          * Construct an encoded block
          *
          * @param   block               Block
          */
         private BlockBytes(Block block) {
-            blockBytes = block.getBytes();
+            encodedBytes = null;
+            blockBytes = block.getBytesBuffer();
             length = getEncodedArrayLength(blockBytes) + 2; // smcTransactions count (short)
             List<? extends SmcTransaction> transactions = block.getSmcTransactions();
             blockTransactions = new ArrayList<>();
@@ -3234,7 +3616,8 @@ public abstract class NetworkMessage {
          * @param   excludedTransactions    transactions to exclude
          */
         private BlockBytes(Block block, BitSet excludedTransactions) {
-            blockBytes = block.getBytes();
+            encodedBytes = null;
+            blockBytes = block.getBytesBuffer();
             length = getEncodedArrayLength(blockBytes) + 2;
             List<? extends SmcTransaction> transactions = block.getSmcTransactions();
             blockTransactions = new ArrayList<>();
@@ -3263,7 +3646,8 @@ public abstract class NetworkMessage {
          * @throws  NetworkException            Block is not valid
          */
         private BlockBytes(ByteBuffer bytes) throws BufferUnderflowException, NetworkException {
-            blockBytes = decodeArray(bytes);
+            encodedBytes = null;
+            blockBytes = ByteBuffer.wrap(decodeArray(bytes));
             length = getEncodedArrayLength(blockBytes) + 2;
             int count = (int)bytes.getShort() & 0xffff; //SmcTransaction count
             if (count > MAX_LIST_SIZE) {
@@ -3305,6 +3689,10 @@ public abstract class NetworkMessage {
          * @throws  BufferOverflowException     Buffer is too small
          */
         private void getBytes(ByteBuffer bytes) throws BufferOverflowException {
+            if (encodedBytes != null) {
+                bytes.put(encodedBytes.duplicate());
+                return;
+            }
             encodeArray(bytes, blockBytes);
             bytes.putShort((short)childCounts.length);
             Iterator<TransactionBytes> iterator = blockTransactions.iterator();
@@ -3336,7 +3724,7 @@ public abstract class NetworkMessage {
 
                 smcTransactions.add(smcTransaction);
             }
-            return Shareschain.parseBlock(blockBytes, smcTransactions);
+            return Shareschain.parseBlock(getArray(blockBytes), smcTransactions);
 
 
         }
@@ -3370,7 +3758,7 @@ public abstract class NetworkMessage {
 
                 smcTransactions.add(smcTransaction);
             }
-            return Shareschain.parseBlock(blockBytes, smcTransactions);
+            return Shareschain.parseBlock(getArray(blockBytes), smcTransactions);
 
         }
     }
@@ -3384,18 +3772,18 @@ public abstract class NetworkMessage {
      */
     private static class TransactionBytes {
 
-        private static final TransactionBytes EXCLUDED = new TransactionBytes(Convert.EMPTY_BYTE);
+        private static final TransactionBytes EXCLUDED = new TransactionBytes(ByteBuffer.wrap(Convert.EMPTY_BYTE).asReadOnlyBuffer());
 
         private static TransactionBytes parse(ByteBuffer bytes) throws BufferUnderflowException, NetworkException {
             byte[] transactionBytes = decodeArray(bytes);
             if (transactionBytes.length == 0) {
                 return EXCLUDED;
             }
-            return new TransactionBytes(transactionBytes);
+            return new TransactionBytes(ByteBuffer.wrap(transactionBytes));
         }
 
         /** Transaction bytes */
-        private final byte[] transactionBytes;
+        private final ByteBuffer transactionBytes;
 
         /**
          * Construct an encoded transaction
@@ -3403,7 +3791,7 @@ public abstract class NetworkMessage {
          * @param   transaction         Transaction
          */
         private TransactionBytes(Transaction transaction) {
-            transactionBytes = transaction.getPrunableBytes();
+            transactionBytes = transaction.getPrunableBytesBuffer();
         }
 
         /**
@@ -3411,21 +3799,10 @@ public abstract class NetworkMessage {
          *
          * @param   transactionBytes    transaction bytes
          */
-        private TransactionBytes(byte[] transactionBytes) {
+        private TransactionBytes(ByteBuffer transactionBytes) {
             this.transactionBytes = transactionBytes;
         }
 
-        /**
-         * Construct an encoded transaction
-         *
-         * @param   bytes                       Message buffer
-         * @throws  BufferUnderflowException    Message is too small
-         * @throws  NetworkException            Transaction is not valid
-         */
-        private TransactionBytes(ByteBuffer bytes) throws BufferUnderflowException, NetworkException {
-            transactionBytes = decodeArray(bytes);
-        }
-
         /**
          * Get the encoded transaction length
          *
@@ -3454,10 +3831,10 @@ public abstract class NetworkMessage {
          * @throws NotValidExceptions   Transaction is not valid
          */
         private Transaction getTransaction() throws NotValidExceptions {
-            if (transactionBytes.length == 0) {
+            if (!transactionBytes.hasRemaining()) {
                 throw new IllegalArgumentException("No excluded transactions provided");
             }
-            return Shareschain.parseTransaction(transactionBytes);
+            return Shareschain.parseTransaction(getArray(transactionBytes));
         }
 
         /**
@@ -3469,7 +3846,7 @@ public abstract class NetworkMessage {
          * @throws NotValidExceptions       Transaction is not valid
          */
         private Transaction getTransaction(Iterator<Transaction> excluded) throws NotValidExceptions {
-            if (transactionBytes.length != 0) {
+            if (transactionBytes.hasRemaining()) {
                 return getTransaction();
             }
             return excluded.next();
@@ -226,6 +226,13 @@ public interface Node {
      */
     boolean providesServices(long services);
 
+    /**
+     * Get the node performance score
+     *
+     * @return                          Node score
+     */
+    NodeScore getScore();
+
     /**
      * Send an asynchronous message
      *
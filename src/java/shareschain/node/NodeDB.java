@@ -1,4 +1,3 @@
-
 package shareschain.node;
 
 import shareschain.database.Table;
@@ -17,11 +16,17 @@ final class NodeDB {
         private final String address;
         private final long services;
         private final int lastUpdated;
+        private final NodeScore score;
 
         Entry(String address, long services, int lastUpdated) {
+            this(address, services, lastUpdated, null);
+        }
+
+        Entry(String address, long services, int lastUpdated, NodeScore score) {
             this.address = address;
             this.services = services;
             this.lastUpdated = lastUpdated;
+            this.score = score;
         }
 
         public String getAddress() {
@@ -36,6 +41,10 @@ final class NodeDB {
             return lastUpdated;
         }
 
+        public NodeScore getScore() {
+            return score;
+        }
+
         @Override
         public int hashCode() {
             return address.hashCode();
@@ -49,13 +58,20 @@ final class NodeDB {
 
     private static final Table nodeTable = new Table("PUBLIC.NODE");
 
+    private static final String MERGE_NODE = "MERGE INTO node (address, services, last_updated, "
+            + "connect_success, connect_failure, latency, bandwidth, blacklist_count, last_blacklisted, last_height) "
+            + "KEY(address) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     static List<Entry> loadNodes() {
         List<Entry> nodes = new ArrayList<>();
         try (Connection con = nodeTable.getConnection();
              PreparedStatement pstmt = con.prepareStatement("SELECT * FROM Node");
              ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) {
-                nodes.add(new Entry(rs.getString("address"), rs.getLong("services"), rs.getInt("last_updated")));
+                NodeScore score = new NodeScore(rs.getInt("connect_success"), rs.getInt("connect_failure"),
+                        rs.getInt("latency"), rs.getLong("bandwidth"), rs.getInt("blacklist_count"),
+                        rs.getInt("last_blacklisted"), rs.getInt("last_height"));
+                nodes.add(new Entry(rs.getString("address"), rs.getLong("services"), rs.getInt("last_updated"), score));
             }
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
@@ -63,28 +79,33 @@ final class NodeDB {
         return nodes;
     }
 
-    static void deleteNodes(Collection<Entry> nodes) {
+    static void deleteNodes(Collection<String> addresses) {
+        if (addresses.isEmpty()) {
+            return;
+        }
         try (Connection con = nodeTable.getConnection();
              PreparedStatement pstmt = con.prepareStatement("DELETE FROM node WHERE address = ?")) {
-            for (Entry node : nodes) {
-                pstmt.setString(1, node.getAddress());
-                pstmt.executeUpdate();
+            for (String address : addresses) {
+                pstmt.setString(1, address);
+                pstmt.addBatch();
             }
+            pstmt.executeBatch();
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
     }
 
     static void updateNodes(Collection<Entry> nodes) {
+        if (nodes.isEmpty()) {
+            return;
+        }
         try (Connection con = nodeTable.getConnection();
-                PreparedStatement pstmt = con.prepareStatement("MERGE INTO node "
-                        + "(address, services, last_updated) KEY(address) VALUES(?, ?, ?)")) {
+                PreparedStatement pstmt = con.prepareStatement(MERGE_NODE)) {
             for (Entry node : nodes) {
-                pstmt.setString(1, node.getAddress());
-                pstmt.setLong(2, node.getServices());
-                pstmt.setInt(3, node.getLastUpdated());
-                pstmt.executeUpdate();
+                setNode(pstmt, node.getAddress(), node.getServices(), node.getLastUpdated(), node.getScore());
+                pstmt.addBatch();
             }
+            pstmt.executeBatch();
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
@@ -92,14 +113,26 @@ final class NodeDB {
 
     static void updateNode(NodeImpl node) {
         try (Connection con = nodeTable.getConnection();
-                PreparedStatement pstmt = con.prepareStatement("MERGE INTO node "
-                        + "(address, services, last_updated) KEY(address) VALUES(?, ?, ?)")) {
-            pstmt.setString(1, node.getAnnouncedAddress());
-            pstmt.setLong(2, node.getServices());
-            pstmt.setInt(3, node.getLastUpdated());
+                PreparedStatement pstmt = con.prepareStatement(MERGE_NODE)) {
+            setNode(pstmt, node.getAnnouncedAddress(), node.getServices(), node.getLastUpdated(), node.getScore());
             pstmt.executeUpdate();
         } catch (SQLException e) {
             throw new RuntimeException(e.toString(), e);
         }
     }
+
+    private static void setNode(PreparedStatement pstmt, String address, long services, int lastUpdated,
+                                NodeScore score) throws SQLException {
+        int i = 0;
+        pstmt.setString(++i, address);
+        pstmt.setLong(++i, services);
+        pstmt.setInt(++i, lastUpdated);
+        pstmt.setInt(++i, score.getConnectSuccessCount());
+        pstmt.setInt(++i, score.getConnectFailureCount());
+        pstmt.setInt(++i, score.getLatency());
+        pstmt.setLong(++i, score.getBandwidth());
+        pstmt.setInt(++i, score.getBlacklistCount());
+        pstmt.setInt(++i, score.getLastBlacklisted());
+        pstmt.setInt(++i, score.getLastHeight());
+    }
 }
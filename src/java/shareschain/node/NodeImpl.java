@@ -5,10 +5,12 @@ import shareschain.Constants;
 import shareschain.Shareschain;
 import shareschain.ShareschainExceptions;
 import shareschain.blockchain.BlockchainProcessor;
+import shareschain.blockchain.ChainTransactionId;
 import shareschain.network.API;
 import shareschain.network.APIEnum;
 import shareschain.util.Convert;
 import shareschain.util.Logger;
+import shareschain.util.RollingBloomFilter;
 
 import java.io.IOException;
 import java.net.InetAddress;
@@ -20,8 +22,11 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -32,6 +37,9 @@ import java.util.concurrent.locks.ReentrantLock;
 
 final class NodeImpl implements Node {
 
+    /** Number of transactions in a generation of the known transactions filter */
+    private static final int KNOWN_TRANSACTIONS_CAPACITY = 4096;
+
     /** Host address */
     private final String host;
 
@@ -113,11 +121,12 @@ final class NodeImpl implements Node {
     /** Session key */
     private byte[] sessionKey;
 
-    /** Output message queue */
-    private final ConcurrentLinkedQueue<ByteBuffer> outputQueue = new ConcurrentLinkedQueue<>();
+    /** Output message queues by message priority */
+    private final EnumMap<NetworkMessage.Priority, ConcurrentLinkedQueue<ByteBuffer>> outputQueues =
+            new EnumMap<>(NetworkMessage.Priority.class);
 
     /** Pending output message queue */
-    private final ConcurrentLinkedQueue<NetworkMessage> pendingOutputQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<PendingMessage> pendingOutputQueue = new ConcurrentLinkedQueue<>();
 
     /** Pending input message queue */
     private final ConcurrentLinkedQueue<ByteBuffer> pendingInputQueue = new ConcurrentLinkedQueue<>();
@@ -149,6 +158,15 @@ final class NodeImpl implements Node {
     /** Handshake in progress */
     private volatile boolean handshakePending = false;
 
+    /** Node performance score */
+    private final NodeScore score = new NodeScore();
+
+    /** Transactions announced by or to the node */
+    private final RollingBloomFilter knownTransactions = new RollingBloomFilter(KNOWN_TRANSACTIONS_CAPACITY, 0.001);
+
+    /** Input message queue */
+    private final MessageHandler.NodeQueue messageQueue = new MessageHandler.NodeQueue(this);
+
     /**
      * Construct a NodeImpl
      *
@@ -163,6 +181,9 @@ final class NodeImpl implements Node {
         this.disabledAPIs = EnumSet.noneOf(APIEnum.class);
         this.apiServerIdleTimeout = API.apiServerIdleTimeout;
         this.blockchainState = BlockchainState.UP_TO_DATE;
+        for (NetworkMessage.Priority priority : NetworkMessage.Priority.values()) {
+            outputQueues.put(priority, new ConcurrentLinkedQueue<>());
+        }
     }
 
     /**
@@ -543,6 +564,7 @@ final class NodeImpl implements Node {
     public void blacklist(String cause) {
         blacklistingTime = Shareschain.getEpochTime();
         blacklistingCause = cause;
+        score.recordBlacklist(blacklistingTime);
         disconnectNode();
         Nodes.notifyListeners(this, Nodes.Event.BLACKLIST);
     }
@@ -725,6 +747,64 @@ final class NodeImpl implements Node {
         return isProvided;
     }
 
+    /**
+     * Get the node performance score
+     *
+     * @return                          Node score
+     */
+    @Override
+    public NodeScore getScore() {
+        return score;
+    }
+
+    /**
+     * Indicate the node knows about the transactions
+     *
+     * @param   transactionIds          Transaction identifiers
+     */
+    void addKnownTransactions(List<ChainTransactionId> transactionIds) {
+        transactionIds.forEach(transactionId -> knownTransactions.add(getTransactionKey(transactionId)));
+    }
+
+    /**
+     * Remove the transactions that are already known to the node
+     *
+     * The remaining transactions are marked as known since they will be sent to the node
+     *
+     * @param   transactionIds          Transaction identifiers
+     * @return                          Transactions not known to the node
+     */
+    List<ChainTransactionId> filterKnownTransactions(List<ChainTransactionId> transactionIds) {
+        List<ChainTransactionId> unknownIds = new ArrayList<>(transactionIds.size());
+        for (ChainTransactionId transactionId : transactionIds) {
+            long key = getTransactionKey(transactionId);
+            if (!knownTransactions.contains(key)) {
+                knownTransactions.add(key);
+                unknownIds.add(transactionId);
+            }
+        }
+        return unknownIds;
+    }
+
+    /**
+     * Get the known transactions filter key
+     *
+     * @param   transactionId           Transaction identifier
+     * @return                          Filter key
+     */
+    private static long getTransactionKey(ChainTransactionId transactionId) {
+        return transactionId.getTransactionId() ^ ((long)transactionId.getChainId() << 32);
+    }
+
+    /**
+     * Get the input message queue (used by MessageHandler)
+     *
+     * @return                          Message queue
+     */
+    MessageHandler.NodeQueue getMessageQueue() {
+        return messageQueue;
+    }
+
     /**
      * Get the connection address (used by NetworkHandler)
      *
@@ -898,7 +978,7 @@ final class NodeImpl implements Node {
                     connectPending = true;
                 }
                 if (!connectCondition.await(NetworkHandler.nodeConnectTimeout, TimeUnit.SECONDS)) {
-                    disconnectNode();
+                    connectComplete(false);
                 }
             }
         } catch (InterruptedException exc) {
@@ -924,6 +1004,7 @@ final class NodeImpl implements Node {
             if (connectPending) {
                 connectPending = false;
                 connectCondition.signalAll();
+                score.recordConnect(success && channel != null);
             }
             if (success && channel != null) {
                 handshakePending = true;
@@ -958,9 +1039,10 @@ final class NodeImpl implements Node {
             MessageHandler.processMessage(this, pendingInputQueue.poll());
         }
         while (!pendingOutputQueue.isEmpty()) {
-            outputQueue.offer(NetworkHandler.getMessageBytes(this, pendingOutputQueue.poll()));
+            PendingMessage pending = pendingOutputQueue.poll();
+            outputQueues.get(pending.priority).offer(NetworkHandler.getMessageBytes(this, pending.message));
         }
-        if (!outputQueue.isEmpty()) {
+        if (getOutputQueueSize() != 0) {
             try {
                 keyEvent.update(SelectionKey.OP_WRITE, 0);
             } catch (IllegalStateException exc) {
@@ -1015,9 +1097,10 @@ final class NodeImpl implements Node {
                 connectCondition.signalAll();
             }
             NetworkHandler.closeConnection(this);
-            outputQueue.clear();
+            outputQueues.values().forEach(ConcurrentLinkedQueue::clear);
             pendingOutputQueue.clear();
             pendingInputQueue.clear();
+            knownTransactions.clear();
             for (ResponseEntry entry : responseMap.values()) {
                 entry.responseSignal(null);
             }
@@ -1074,11 +1157,30 @@ final class NodeImpl implements Node {
         } else if (handshakePending) {
             message = null;
         } else {
-            message = outputQueue.poll();
+            message = null;
+            for (ConcurrentLinkedQueue<ByteBuffer> outputQueue : outputQueues.values()) {
+                message = outputQueue.poll();
+                if (message != null) {
+                    break;
+                }
+            }
         }
         return message;
     }
 
+    /**
+     * Get the number of queued output messages
+     *
+     * @return                          Number of queued messages
+     */
+    private int getOutputQueueSize() {
+        int size = 0;
+        for (ConcurrentLinkedQueue<ByteBuffer> outputQueue : outputQueues.values()) {
+            size += outputQueue.size();
+        }
+        return size;
+    }
+
     /**
      * Send a message
      *
@@ -1089,6 +1191,19 @@ final class NodeImpl implements Node {
      */
     @Override
     public void sendMessage(NetworkMessage message) {
+        sendMessage(message, message.getPriority());
+    }
+
+    /**
+     * Send a message using the specified priority (used by MessageHandler)
+     *
+     * Higher priority messages are sent before lower priority messages that are
+     * already queued for the node.
+     *
+     * @param   message                 Network message
+     * @param   priority                Message priority
+     */
+    void sendMessage(NetworkMessage message, NetworkMessage.Priority priority) {
         boolean sendMessage = false;
         boolean serializeMessage = false;
         boolean disconnect = false;
@@ -1097,11 +1212,11 @@ final class NodeImpl implements Node {
                 if (handshakePending && message instanceof NetworkMessage.GetInfoMessage) {
                     handshakeMessage = NetworkHandler.getMessageBytes(this, message);
                     sendMessage = true;
-                } else if (outputQueue.size() >= NetworkHandler.MAX_PENDING_MESSAGES) {
+                } else if (getOutputQueueSize() >= NetworkHandler.MAX_PENDING_MESSAGES) {
                     Logger.logErrorMessage("Too many pending messages for " + host);
                     disconnect = true;
                 } else if (handshakePending) {
-                    pendingOutputQueue.offer(message);
+                    pendingOutputQueue.offer(new PendingMessage(message, priority));
                 } else {
                     serializeMessage = true;
                     sendMessage = true;
@@ -1112,7 +1227,7 @@ final class NodeImpl implements Node {
             }
         }
         if (serializeMessage && !disconnectPending) {
-            outputQueue.offer(NetworkHandler.getMessageBytes(this, message));
+            outputQueues.get(priority).offer(NetworkHandler.getMessageBytes(this, message));
         }
         if (sendMessage) {
             try {
@@ -1144,6 +1259,7 @@ final class NodeImpl implements Node {
         }
         ResponseEntry entry = new ResponseEntry();
         responseMap.put(message.getMessageId(), entry);
+        long startTime = System.currentTimeMillis();
         sendMessage(message);
         if (state != State.CONNECTED) {
             responseMap.remove(message.getMessageId());
@@ -1155,6 +1271,10 @@ final class NodeImpl implements Node {
             disconnectNode();
             return null;
         }
+        score.recordLatency(System.currentTimeMillis() - startTime, response.getLength());
+        if (response instanceof NetworkMessage.CumulativeDifficultyMessage) {
+            score.setLastHeight(((NetworkMessage.CumulativeDifficultyMessage)response).getBlockHeight());
+        }
         if (response instanceof NetworkMessage.ErrorMessage) {
             NetworkMessage.ErrorMessage error = (NetworkMessage.ErrorMessage)response;
             if (error.isSevereError()) {
@@ -1266,4 +1386,20 @@ final class NodeImpl implements Node {
         }
     }
 
+    /**
+     * Message waiting for the connection handshake to complete
+     */
+    private static final class PendingMessage {
+
+        /** Network message */
+        private final NetworkMessage message;
+
+        /** Priority used to queue the message */
+        private final NetworkMessage.Priority priority;
+
+        private PendingMessage(NetworkMessage message, NetworkMessage.Priority priority) {
+            this.message = message;
+            this.priority = priority;
+        }
+    }
 }
@@ -0,0 +1,439 @@
+package shareschain.node;
+
+/**
+ * Node performance score
+ *
+ * The response time and block throughput for a node are tracked as exponentially
+ * weighted moving averages.  The score is retained for the life of the node entry
+ * (it is not reset when the node is disconnected) so the block download scheduler
+ * can favor nodes which have performed well in the past.
+ *
+ * The connection history, request latency, bandwidth, blacklist history and last
+ * reported blockchain height are saved in the node database and restored when the
+ * server is restarted so that outbound connections can be made to reliable nodes.
+ */
+public final class NodeScore {
+
+    /** Maximum number of blocks returned for a GetNextBlocks request */
+    public static final int MAX_SEGMENT_SIZE = 36;
+
+    /** Minimum number of blocks requested from a node */
+    public static final int MIN_SEGMENT_SIZE = 4;
+
+    /** Number of blocks requested from a node without a download history */
+    private static final int DEFAULT_SEGMENT_SIZE = 18;
+
+    /** Maximum number of concurrent requests for a single node */
+    private static final int MAX_IN_FLIGHT = 4;
+
+    /** Target response time for a single request (milliseconds) */
+    private static final long TARGET_RESPONSE_TIME = 2000;
+
+    /** Minimum delay before a slow request is sent to another node (milliseconds) */
+    private static final long MIN_HEDGE_DELAY = 2000;
+
+    /** Minimum response size used to measure the node bandwidth */
+    private static final int MIN_BANDWIDTH_SAMPLE = 4096;
+
+    /** Weight given to the most recent sample */
+    private static final double SAMPLE_WEIGHT = 0.25;
+
+    /** Relative change in the latency or bandwidth which causes the statistics to be saved */
+    private static final double SAVE_THRESHOLD = 0.10;
+
+    /** Block rate assumed for a node without a download history (blocks per second) */
+    private static final double DEFAULT_BLOCK_RATE = DEFAULT_SEGMENT_SIZE * 1000.0 / TARGET_RESPONSE_TIME;
+
+    /** Average block rate (blocks per second) or 0 if not known */
+    private double blockRate;
+
+    /** Average response time (milliseconds) or 0 if not known */
+    private double responseTime;
+
+    /** Number of successful requests */
+    private int successCount;
+
+    /** Number of failed requests */
+    private int failureCount;
+
+    /** Number of successful connection attempts */
+    private int connectSuccessCount;
+
+    /** Number of failed connection attempts */
+    private int connectFailureCount;
+
+    /** Average request latency (milliseconds) or 0 if not known */
+    private double latency;
+
+    /** Average bandwidth (bytes per second) or 0 if not known */
+    private double bandwidth;
+
+    /** Number of times the node has been blacklisted */
+    private int blacklistCount;
+
+    /** Time the node was last blacklisted (epoch time) */
+    private int lastBlacklisted;
+
+    /** Last blockchain height reported by the node */
+    private int lastHeight;
+
+    /** Number of changes to the persistent statistics */
+    private int modCount;
+
+    /** Change count when the persistent statistics were last saved */
+    private int savedModCount;
+
+    /** Latency when the latency was last marked as changed */
+    private double markedLatency;
+
+    /** Bandwidth when the bandwidth was last marked as changed */
+    private double markedBandwidth;
+
+    /**
+     * Create a new node score
+     */
+    NodeScore() {
+    }
+
+    /**
+     * Create a node score from the saved statistics
+     *
+     * @param   connectSuccessCount     Number of successful connection attempts
+     * @param   connectFailureCount     Number of failed connection attempts
+     * @param   latency                 Average request latency
+     * @param   bandwidth               Average bandwidth
+     * @param   blacklistCount          Number of times the node has been blacklisted
+     * @param   lastBlacklisted         Time the node was last blacklisted
+     * @param   lastHeight              Last reported blockchain height
+     */
+    NodeScore(int connectSuccessCount, int connectFailureCount, int latency, long bandwidth,
+              int blacklistCount, int lastBlacklisted, int lastHeight) {
+        this.connectSuccessCount = connectSuccessCount;
+        this.connectFailureCount = connectFailureCount;
+        this.latency = latency;
+        this.bandwidth = bandwidth;
+        this.markedLatency = latency;
+        this.markedBandwidth = bandwidth;
+        this.blacklistCount = blacklistCount;
+        this.lastBlacklisted = lastBlacklisted;
+        this.lastHeight = lastHeight;
+    }
+
+    /**
+     * Restore the saved statistics
+     *
+     * @param   savedScore              Saved node score
+     */
+    synchronized void restore(NodeScore savedScore) {
+        synchronized (savedScore) {
+            connectSuccessCount = savedScore.connectSuccessCount;
+            connectFailureCount = savedScore.connectFailureCount;
+            latency = savedScore.latency;
+            bandwidth = savedScore.bandwidth;
+            markedLatency = savedScore.latency;
+            markedBandwidth = savedScore.bandwidth;
+            blacklistCount = savedScore.blacklistCount;
+            lastBlacklisted = savedScore.lastBlacklisted;
+            lastHeight = savedScore.lastHeight;
+        }
+    }
+
+    /**
+     * Record a successful response
+     *
+     * @param   blockCount              Number of blocks returned
+     * @param   elapsedTime             Elapsed time in milliseconds
+     */
+    public synchronized void recordResponse(int blockCount, long elapsedTime) {
+        long time = Math.max(elapsedTime, 1);
+        responseTime = (responseTime == 0 ? time : responseTime + SAMPLE_WEIGHT * (time - responseTime));
+        if (blockCount > 0) {
+            double rate = blockCount * 1000.0 / time;
+            blockRate = (blockRate == 0 ? rate : blockRate + SAMPLE_WEIGHT * (rate - blockRate));
+        }
+        successCount++;
+    }
+
+    /**
+     * Record a failed request
+     */
+    public synchronized void recordFailure() {
+        failureCount++;
+    }
+
+    /**
+     * Record a connection attempt
+     *
+     * @param   success                 TRUE if the connection was established
+     */
+    synchronized void recordConnect(boolean success) {
+        if (success) {
+            connectSuccessCount++;
+        } else {
+            connectFailureCount++;
+        }
+        modCount++;
+    }
+
+    /**
+     * Record the response to a request
+     *
+     * The statistics are marked as changed only when the latency or bandwidth has changed
+     * by more than the save threshold since it was last marked, so the node database is not
+     * rewritten for every response.
+     *
+     * @param   elapsedTime             Elapsed time in milliseconds
+     * @param   length                  Response length in bytes
+     */
+    synchronized void recordLatency(long elapsedTime, int length) {
+        long time = Math.max(elapsedTime, 1);
+        latency = (latency == 0 ? time : latency + SAMPLE_WEIGHT * (time - latency));
+        if (length >= MIN_BANDWIDTH_SAMPLE) {
+            double rate = length * 1000.0 / time;
+            bandwidth = (bandwidth == 0 ? rate : bandwidth + SAMPLE_WEIGHT * (rate - bandwidth));
+        }
+        if (exceedsThreshold(latency, markedLatency) || exceedsThreshold(bandwidth, markedBandwidth)) {
+            markedLatency = latency;
+            markedBandwidth = bandwidth;
+            modCount++;
+        }
+    }
+
+    /**
+     * Check if a value has changed by more than the save threshold
+     *
+     * @param   value                   Current value
+     * @param   markedValue             Value when it was last marked as changed
+     * @return                          TRUE if the change exceeds the threshold
+     */
+    private static boolean exceedsThreshold(double value, double markedValue) {
+        return (markedValue == 0 ? value != 0 : Math.abs(value - markedValue) > SAVE_THRESHOLD * markedValue);
+    }
+
+    /**
+     * Record the node being blacklisted
+     *
+     * @param   time                    Epoch time
+     */
+    synchronized void recordBlacklist(int time) {
+        blacklistCount++;
+        lastBlacklisted = time;
+        modCount++;
+    }
+
+    /**
+     * Set the last blockchain height reported by the node
+     *
+     * @param   height                  Blockchain height
+     */
+    synchronized void setLastHeight(int height) {
+        if (height != lastHeight) {
+            lastHeight = height;
+            modCount++;
+        }
+    }
+
+    /**
+     * Check if the persistent statistics have changed since they were last saved
+     *
+     * @return                          TRUE if the statistics have been modified
+     */
+    synchronized boolean isModified() {
+        return modCount != savedModCount;
+    }
+
+    /**
+     * Get the change count for the persistent statistics.  The change count is passed
+     * to setSaved() after the statistics have been written to the database.
+     *
+     * @return                          Change count
+     */
+    synchronized int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Record that the persistent statistics have been saved.  Changes made after the
+     * change count was obtained will be saved by the next update.
+     *
+     * @param   modCount                Change count obtained before the statistics were written
+     */
+    synchronized void setSaved(int modCount) {
+        savedModCount = modCount;
+    }
+
+    /**
+     * Get the number of successful connection attempts
+     *
+     * @return                          Connect success count
+     */
+    public synchronized int getConnectSuccessCount() {
+        return connectSuccessCount;
+    }
+
+    /**
+     * Get the number of failed connection attempts
+     *
+     * @return                          Connect failure count
+     */
+    public synchronized int getConnectFailureCount() {
+        return connectFailureCount;
+    }
+
+    /**
+     * Get the average request latency
+     *
+     * @return                          Latency in milliseconds or 0 if not known
+     */
+    public synchronized int getLatency() {
+        return (int)latency;
+    }
+
+    /**
+     * Get the average bandwidth
+     *
+     * @return                          Bytes per second or 0 if not known
+     */
+    public synchronized long getBandwidth() {
+        return (long)bandwidth;
+    }
+
+    /**
+     * Get the number of times the node has been blacklisted
+     *
+     * @return                          Blacklist count
+     */
+    public synchronized int getBlacklistCount() {
+        return blacklistCount;
+    }
+
+    /**
+     * Get the time the node was last blacklisted
+     *
+     * @return                          Epoch time or 0 if the node has not been blacklisted
+     */
+    public synchronized int getLastBlacklisted() {
+        return lastBlacklisted;
+    }
+
+    /**
+     * Get the last blockchain height reported by the node
+     *
+     * @return                          Blockchain height or 0 if not known
+     */
+    public synchronized int getLastHeight() {
+        return lastHeight;
+    }
+
+    /**
+     * Get the connection score
+     *
+     * The connection score is used to select nodes for outbound connections.  It is the
+     * connection success rate reduced by the request latency and the number of times the
+     * node has been blacklisted.  A node without a connection history has a score of 0.5.
+     *
+     * @return                          Connection score between 0 and 1
+     */
+    public synchronized double getConnectScore() {
+        double successRate = (connectSuccessCount + 1.0) / (connectSuccessCount + connectFailureCount + 2.0);
+        double latencyFactor = (latency != 0 ? 1000.0 / (1000.0 + latency) : 1.0);
+        return successRate * latencyFactor / (1 + blacklistCount);
+    }
+
+    /**
+     * Get the average block rate
+     *
+     * @return                          Blocks per second or 0 if not known
+     */
+    public synchronized double getBlockRate() {
+        return blockRate;
+    }
+
+    /**
+     * Get the average response time
+     *
+     * @return                          Response time in milliseconds or 0 if not known
+     */
+    public synchronized long getResponseTime() {
+        return (long)responseTime;
+    }
+
+    /**
+     * Get the number of successful requests
+     *
+     * @return                          Success count
+     */
+    public synchronized int getSuccessCount() {
+        return successCount;
+    }
+
+    /**
+     * Get the number of failed requests
+     *
+     * @return                          Failure count
+     */
+    public synchronized int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Get the node score
+     *
+     * The score is the average block rate weighted by the request success rate.  A node
+     * without a download history is given the default block rate.
+     *
+     * @return                          Node score
+     */
+    public synchronized double getScore() {
+        double successRate = (successCount + 1.0) / (successCount + failureCount + 2.0);
+        return (blockRate != 0 ? blockRate : DEFAULT_BLOCK_RATE) * successRate;
+    }
+
+    /**
+     * Get the number of blocks to request from the node
+     *
+     * The segment size is chosen so the request will complete in the target response time
+     *
+     * @return                          Segment size
+     */
+    public synchronized int getSegmentSize() {
+        if (blockRate == 0) {
+            return DEFAULT_SEGMENT_SIZE;
+        }
+        long size = Math.round(blockRate * TARGET_RESPONSE_TIME / 1000);
+        return (int)Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, size));
+    }
+
+    /**
+     * Get the maximum number of concurrent requests for the node
+     *
+     * Additional requests are allowed for a node that can return more than the
+     * maximum segment size within the target response time
+     *
+     * @return                          Maximum number of concurrent requests
+     */
+    public synchronized int getMaxInFlight() {
+        long count = Math.round(blockRate * TARGET_RESPONSE_TIME / 1000 / MAX_SEGMENT_SIZE);
+        return (int)Math.max(1, Math.min(MAX_IN_FLIGHT, count));
+    }
+
+    /**
+     * Get the time to wait before the request is also sent to another node
+     *
+     * @return                          Hedge delay in milliseconds
+     */
+    public synchronized long getHedgeDelay() {
+        if (responseTime == 0) {
+            return Math.max(MIN_HEDGE_DELAY, NetworkHandler.nodeReadTimeout * 1000L / 2);
+        }
+        return Math.max(MIN_HEDGE_DELAY, (long)(responseTime * 3));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("NodeScore{blockRate=%.1f, responseTime=%d, success=%d, failure=%d, "
+                        + "connectSuccess=%d, connectFailure=%d, latency=%d, bandwidth=%d, blacklistCount=%d, lastHeight=%d}",
+                blockRate, (long)responseTime, successCount, failureCount, connectSuccessCount, connectFailureCount,
+                (long)latency, (long)bandwidth, blacklistCount, lastHeight);
+    }
+}
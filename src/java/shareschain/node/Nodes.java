@@ -144,6 +144,12 @@ public final class Nodes {
     /** Known nodes */
     private static final ConcurrentMap<String, NodeImpl> nodes = new ConcurrentHashMap<>();
 
+    /** Node database entries (announced address and last update time) */
+    private static final ConcurrentMap<String, Integer> savedNodes = new ConcurrentHashMap<>();
+
+    /** Node database entries have been loaded */
+    private static volatile boolean savedNodesLoaded;
+
     /** Known announced addresses */
     private static final ConcurrentMap<String, String> selfAnnouncedAddresses = new ConcurrentHashMap<>();
 
@@ -217,6 +223,8 @@ public final class Nodes {
                     if (saveNodes) {
                         List<NodeDB.Entry> dbNodes = NodeDB.loadNodes();
                         dbNodes.forEach(entry -> {
+                            savedNodes.put(entry.getAddress(), entry.getLastUpdated());
+                            savedNodesLoaded = true;
                             if (!entries.add(entry)) {
                                 // Database entries override entries from shareschain.properties
                                 entries.remove(entry);
@@ -238,6 +246,9 @@ public final class Nodes {
                             node.setShareAddress(true);
                             node.setLastUpdated(entry.getLastUpdated());
                             node.setServices(entry.getServices());
+                            if (entry.getScore() != null) {
+                                node.getScore().restore(entry.getScore());
+                            }
                             Nodes.addNode(node);
 
                             // 连接成功，返回null。
@@ -294,7 +305,7 @@ public final class Nodes {
             ThreadPool.scheduleThread("GetMoreNodes", getMoreNodesThread, 60);
     	}
         if (saveNodes) {
-            ThreadPool.scheduleThread("UpdateNodeDB", updateNodeDBThread, 60*60);
+            ThreadPool.scheduleThread("UpdateNodeDB", updateNodeDBThread, 5*60);
         }
     }
 
@@ -631,7 +642,9 @@ public final class Nodes {
             // Create new outbound connections
             //
             // The well-known nodes are tried first.  If we need more outbound connections, we
-            // will randomly select nodes from the list of known nodes.
+            // will randomly select nodes from the list of known nodes.  The selection is
+            // weighted by the node connection score so that nodes which have been reliable
+            // in the past are preferred.
             //
             int connectCount = Math.min(10, NetworkHandler.getMaxOutboundConnections() - NetworkHandler.getOutboundCount());
             List<NodeImpl> connectList = new ArrayList<>();
@@ -670,8 +683,7 @@ public final class Nodes {
                         && (now - node.getLastUpdated() > 60*60 || node.getLastUpdated() < startTime)
                         && now - node.getLastConnectAttempt() > 10*60 || node.getLastConnectAttempt() < startTime);
                 while (!resultList.isEmpty() && connectCount > 0) {
-                    int i = ThreadLocalRandom.current().nextInt(resultList.size());
-                    NodeImpl node = (NodeImpl)resultList.remove(i);
+                    NodeImpl node = (NodeImpl)removeWeightedNode(resultList);
                     node.setLastConnectAttempt(now);
                     connectList.add(node);
                     connectCount--;
@@ -764,45 +776,76 @@ public final class Nodes {
         }
     };
 
+    /**
+     * Select a node from the list and remove it
+     *
+     * The probability of selecting a node is proportional to its connection score
+     *
+     * @param   nodeList                Node list
+     * @return                          Selected node
+     */
+    private static Node removeWeightedNode(List<Node> nodeList) {
+        double totalScore = 0;
+        for (Node node : nodeList) {
+            totalScore += node.getScore().getConnectScore();
+        }
+        double target = ThreadLocalRandom.current().nextDouble() * totalScore;
+        int index = nodeList.size() - 1;
+        for (int i = 0; i < nodeList.size() - 1; i++) {
+            target -= nodeList.get(i).getScore().getConnectScore();
+            if (target < 0) {
+                index = i;
+                break;
+            }
+        }
+        return nodeList.remove(index);
+    }
+
     /**
      * Update the node database
+     *
+     * Only nodes which are new, have changed statistics or have been updated since
+     * the database entry was written are saved.  Entries for nodes which are no longer
+     * known are deleted.  The updates are written as a single batch.
      */
     private static final Runnable updateNodeDBThread = () -> {
         try {
             int now = Shareschain.getEpochTime();
+            if (!savedNodesLoaded) {
+                NodeDB.loadNodes().forEach(entry -> savedNodes.putIfAbsent(entry.getAddress(), entry.getLastUpdated()));
+                savedNodesLoaded = true;
+            }
             //
-            // Load the current database entries and map announced address to database entry
-            //
-            List<NodeDB.Entry> oldNodes = NodeDB.loadNodes();
-            Map<String, NodeDB.Entry> oldMap = new HashMap<>(oldNodes.size());
-            oldNodes.forEach(entry -> oldMap.put(entry.getAddress(), entry));
-            //
-            // Create the current node map (note that there can be duplicate node entries with
+            // Build the toUpdate list (note that there can be duplicate node entries with
             // the same announced address)
             //
-            Map<String, NodeDB.Entry> currentNodes = new HashMap<>();
+            Map<String, NodeDB.Entry> toUpdate = new HashMap<>();
+            Map<NodeScore, Integer> updatedScores = new HashMap<>();
+            Set<String> currentNodes = new HashSet<>();
             nodes.values().forEach(node -> {
-                if (node.getAnnouncedAddress() != null
+                String address = node.getAnnouncedAddress();
+                if (address != null
                         && node.shareAddress()
-                        && !node.isBlacklisted()
                         && now - node.getLastUpdated() < 7*24*3600) {
-                    currentNodes.put(node.getAnnouncedAddress(),
-                            new NodeDB.Entry(node.getAnnouncedAddress(), node.getServices(), node.getLastUpdated()));
+                    currentNodes.add(address);
+                    Integer savedTime = savedNodes.get(address);
+                    NodeScore score = node.getScore();
+                    int modCount = score.getModCount();
+                    if (savedTime == null || score.isModified() || node.getLastUpdated() - savedTime > 24*3600) {
+                        toUpdate.put(address,
+                                new NodeDB.Entry(address, node.getServices(), node.getLastUpdated(), score));
+                        updatedScores.put(score, modCount);
+                    }
                 }
             });
             //
-            // Build toDelete and toUpdate lists
+            // Build the toDelete list
             //
-            List<NodeDB.Entry> toDelete = new ArrayList<>(oldNodes.size());
-            oldNodes.forEach(entry -> {
-                if (currentNodes.get(entry.getAddress()) == null)
-                    toDelete.add(entry);
-            });
-            List<NodeDB.Entry> toUpdate = new ArrayList<>(currentNodes.size());
-            currentNodes.values().forEach(entry -> {
-                NodeDB.Entry oldEntry = oldMap.get(entry.getAddress());
-                if (oldEntry == null || entry.getLastUpdated() - oldEntry.getLastUpdated() > 24*3600)
-                    toUpdate.add(entry);
+            List<String> toDelete = new ArrayList<>();
+            savedNodes.keySet().forEach(address -> {
+                if (!currentNodes.contains(address)) {
+                    toDelete.add(address);
+                }
             });
             //
             // Nothing to do if all of the lists are empty
@@ -816,7 +859,7 @@ public final class Nodes {
             try {
                 DB.db.beginTransaction();
                 NodeDB.deleteNodes(toDelete);
-                NodeDB.updateNodes(toUpdate);
+                NodeDB.updateNodes(toUpdate.values());
                 DB.db.commitTransaction();
             } catch (Exception e) {
                 DB.db.rollbackTransaction();
@@ -824,6 +867,9 @@ public final class Nodes {
             } finally {
                 DB.db.endTransaction();
             }
+            updatedScores.forEach(NodeScore::setSaved);
+            toDelete.forEach(savedNodes::remove);
+            toUpdate.values().forEach(entry -> savedNodes.put(entry.getAddress(), entry.getLastUpdated()));
         } catch (Throwable t) {
             Logger.logErrorMessage("CRITICAL ERROR. PLEASE REPORT TO THE DEVELOPERS", t);
             System.exit(1);
@@ -837,9 +883,13 @@ public final class Nodes {
         Nodes.addListener(node -> nodesService.submit(() -> {
             if (node.getAnnouncedAddress() != null && !node.isBlacklisted()) {
                 try {
+                    NodeScore score = ((NodeImpl)node).getScore();
+                    int modCount = score.getModCount();
                     DB.db.beginTransaction();
                     NodeDB.updateNode((NodeImpl) node);
                     DB.db.commitTransaction();
+                    score.setSaved(modCount);
+                    savedNodes.put(node.getAnnouncedAddress(), node.getLastUpdated());
                 } catch (RuntimeException e) {
                     Logger.logErrorMessage("Unable to update node database", e);
                     DB.db.rollbackTransaction();
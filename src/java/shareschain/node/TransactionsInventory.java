@@ -40,6 +40,10 @@ public final class TransactionsInventory {
         //获取请求交易id、交易hash、链的id集合，
         List<ChainTransactionId> transactionIds = request.getTransactionIds();
         //
+        // The node knows about these transactions, so we won't announce them back to the node
+        //
+        Node.addKnownTransactions(transactionIds);
+        //
         // Request transactions that are not already in our cache
         //构造ChainTransactionId类型的集合requestIds(大小最大100)，
         // 这个集合是用来构造后续请求其它节点获取交易信息的GetTransactionsMessage对象
@@ -99,6 +103,11 @@ public final class TransactionsInventory {
                             //获取请求后的交易列表，并封装到未接收的交易池notAcceptedTransactions中，方便后面处理
                             List<Transaction> transactions = response.getTransactions();
                             notAcceptedTransactions.addAll(transactions);
+                            if (feederNode != Node) {
+                                List<ChainTransactionId> receivedIds = new ArrayList<>(transactions.size());
+                                transactions.forEach(tx -> receivedIds.add(ChainTransactionId.getChainTransactionId(tx)));
+                                ((NodeImpl)feederNode).addKnownTransactions(receivedIds);
+                            }
                             //循环从请求的交易列表和未完成的交易列表中删除请求节点返回中包含的交易
                             transactions.forEach(tx -> {
                                 ChainTransactionId transactionId = ChainTransactionId.getChainTransactionId(tx);
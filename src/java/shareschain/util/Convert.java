@@ -110,9 +110,10 @@ public final class Convert {
         }
     }
 
+    private static final Pattern numericPattern = Pattern.compile("[0-9]*");
+
     private static boolean isNumeric(String str){
-        Pattern pattern = Pattern.compile("[0-9]*");
-        return pattern.matcher(str).matches();
+        return numericPattern.matcher(str).matches();
     }
 
     public static String rsAccount(long accountId) {
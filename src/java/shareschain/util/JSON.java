@@ -8,12 +8,8 @@ import org.json.simple.JSONStreamAware;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public final class JSON {
 
@@ -39,9 +35,11 @@ public final class JSON {
         return stringWriter.toString();
     }
 
-    /** String escape pattern */
-    private static final Pattern pattern = Pattern.compile(
-            "[\"\\\\\\u0008\\f\\n\\r\\t/\\u0000-\\u001f\\u007f-\\u009f\\u2000-\\u20ff\\ud800-\\udbff]");
+    /** Size of the per-thread encoding buffer */
+    private static final int ENCODE_BUFFER_SIZE = 8192;
+
+    /** Per-thread encoding buffer (null while the buffer is in use) */
+    private static final ThreadLocal<char[]> encodeBuffer = new ThreadLocal<>();
 
     /**
      * Create a formatted JSON string
@@ -52,14 +50,9 @@ public final class JSON {
     public static String toJSONString(JSONAware json) {
         if (json == null)
             return "null";
-        if (json instanceof Map) {
-            StringBuilder sb = new StringBuilder(1024);
-            encodeObject((Map)json, sb);
-            return sb.toString();
-        }
-        if (json instanceof List) {
+        if (json instanceof Map || json instanceof List) {
             StringBuilder sb = new StringBuilder(1024);
-            encodeArray((List)json, sb);
+            encodeValue(json, sb);
             return sb.toString();
         }
         return json.toJSONString();
@@ -68,180 +61,330 @@ public final class JSON {
     /**
      * Write a formatted JSON string
      *
-     * @param   json                            JSON list or map
+     * The JSON is encoded directly to the writer using a per-thread buffer, so the
+     * encoded response is never held in memory as a single string.  A JSONStreamAware
+     * object which is not a list or map is passed the buffered writer, allowing it to
+     * stream its content.
+     *
+     * @param   json                            JSON list, map or stream
      * @param   writer                          Writer
      * @throws  IOException                     I/O error occurred
      */
     public static void writeJSONString(JSONStreamAware json, Writer writer) throws IOException {
-        if (json == null) {
-            writer.write("null");
+        writeJSONValue(json, writer);
+    }
+
+    /**
+     * Write a formatted JSON value
+     *
+     * @param   value                           JSON value
+     * @param   writer                          Writer
+     * @throws  IOException                     I/O error occurred
+     */
+    public static void writeJSONValue(Object value, Writer writer) throws IOException {
+        if (writer instanceof JSONWriter) {
+            encodeValue(value, (JSONWriter)writer);
             return;
         }
-        if (json instanceof Map) {
-            StringBuilder sb = new StringBuilder(1024);
-            encodeObject((Map)json, sb);
-            writer.write(sb.toString());
-            return;
+        char[] buffer = encodeBuffer.get();
+        if (buffer == null) {
+            buffer = new char[ENCODE_BUFFER_SIZE];
+        } else {
+            encodeBuffer.set(null);
         }
-        if (json instanceof List) {
-            StringBuilder sb = new StringBuilder(1024);
-            encodeArray((List)json, sb);
-            writer.write(sb.toString());
-            return;
+        try {
+            JSONWriter jsonWriter = new JSONWriter(writer, buffer);
+            encodeValue(value, jsonWriter);
+            jsonWriter.flush();
+        } finally {
+            encodeBuffer.set(buffer);
         }
-        json.writeJSONString(writer);
     }
 
     /**
-     * Create a formatted string from a list
+     * Create a formatted string from a map
      *
-     * @param   list                            List
+     * @param   map                             Map
      * @param   sb                              String builder
      */
-    private static void encodeArray(List<?> list, StringBuilder sb) {
-        if (list == null) {
-            sb.append("null");
-            return;
+    public static void encodeObject(Map<?, ?> map, StringBuilder sb) {
+        encodeValue(map, sb);
+    }
+
+    /**
+     * Encode a JSON value
+     *
+     * @param   value                           JSON value
+     * @param   sb                              String builder
+     */
+    public static void encodeValue(Object value, StringBuilder sb) {
+        try {
+            encodeValue(value, new JSONWriter(sb));
+        } catch (IOException exc) {
+            throw new RuntimeException(exc.getMessage(), exc);     // Never happens for a string builder
         }
+    }
+
+    /**
+     * Write a list
+     *
+     * @param   list                            List
+     * @param   out                             JSON writer
+     * @throws  IOException                     I/O error occurred
+     */
+    private static void encodeArray(List<?> list, JSONWriter out) throws IOException {
         boolean firstElement = true;
-        sb.append('[');
+        out.write('[');
         for (Object obj : list) {
             if (firstElement)
                 firstElement = false;
             else
-                sb.append(',');
-            encodeValue(obj, sb);
+                out.write(',');
+            encodeValue(obj, out);
         }
-        sb.append(']');
+        out.write(']');
     }
 
     /**
-     * Create a formatted string from a map
+     * Write a map
      *
      * @param   map                             Map
-     * @param   sb                              String builder
+     * @param   out                             JSON writer
+     * @throws  IOException                     I/O error occurred
      */
-    public static void encodeObject(Map<?, ?> map, StringBuilder sb) {
-        if (map == null) {
-            sb.append("null");
-            return;
-        }
-        Set<Map.Entry<Object, Object>> entries = (Set)map.entrySet();
-        Iterator<Map.Entry<Object, Object>> it = entries.iterator();
+    private static void encodeObject(Map<?, ?> map, JSONWriter out) throws IOException {
         boolean firstElement = true;
-        sb.append('{');
-        while (it.hasNext()) {
-            Map.Entry<Object, Object> entry = it.next();
+        out.write('{');
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
             Object key = entry.getKey();
-            Object value = entry.getValue();
             if (key == null)
                 continue;
             if (firstElement)
                 firstElement = false;
             else
-                sb.append(',');
-            sb.append('\"').append(key.toString()).append("\":");
-            encodeValue(value, sb);
+                out.write(',');
+            out.write('\"');
+            out.write(key.toString());
+            out.write("\":");
+            encodeValue(entry.getValue(), out);
         }
-        sb.append('}');
+        out.write('}');
     }
 
     /**
-     * Encode a JSON value
+     * Write a JSON value
      *
      * @param   value                           JSON value
-     * @param   sb                              String builder
+     * @param   out                             JSON writer
+     * @throws  IOException                     I/O error occurred
      */
-    public static void encodeValue(Object value, StringBuilder sb) {
+    private static void encodeValue(Object value, JSONWriter out) throws IOException {
         if (value == null) {
-            sb.append("null");
+            out.write("null");
         } else if (value instanceof Double) {
             if (((Double)value).isInfinite() || ((Double)value).isNaN())
-                sb.append("null");
+                out.write("null");
             else
-                sb.append(value.toString());
+                out.write(value.toString());
         } else if (value instanceof Float) {
             if (((Float)value).isInfinite() || ((Float)value).isNaN())
-                sb.append("null");
+                out.write("null");
             else
-                sb.append(value.toString());
+                out.write(value.toString());
         } else if (value instanceof Number) {
-            sb.append(value.toString());
+            out.write(value.toString());
         } else if (value instanceof Boolean) {
-            sb.append(value.toString());
+            out.write(value.toString());
         } else if (value instanceof Map) {
-            encodeObject((Map<Object, Object>)value, sb);
+            encodeObject((Map<?, ?>)value, out);
         } else if (value instanceof List) {
-            encodeArray((List<Object>)value, sb);
+            encodeArray((List<?>)value, out);
+        } else if (value instanceof JSONStreamAware) {
+            ((JSONStreamAware)value).writeJSONString(out);
         } else {
-            sb.append('\"');
-            escapeString(value.toString(), sb);
-            sb.append('\"');
+            out.write('\"');
+            escapeString(value.toString(), out);
+            out.write('\"');
         }
     }
 
     /**
-     * Escape control characters in a string and append them to the string buffer
+     * Escape control characters in a string and write the result
      *
      * @param   string                      String to be written
-     * @param   sb                          String builder
+     * @param   out                         JSON writer
+     * @throws  IOException                 I/O error occurred
      */
-    private static void escapeString(String string, StringBuilder sb) {
-        if (string.length() == 0)
-            return;
-        //
-        // Find the next special character in the string
-        //
+    private static void escapeString(String string, JSONWriter out) throws IOException {
+        int length = string.length();
         int start = 0;
-        Matcher matcher = pattern.matcher(string);
-        while (matcher.find(start)) {
-            int pos = matcher.start();
-            if (pos > start)
-                sb.append(string.substring(start, pos));
-            start = pos + 1;
-            //
-            // Escape control characters
-            //
+        for (int pos = 0; pos < length; pos++) {
             char c = string.charAt(pos);
+            String escape;
             switch (c) {
                 case '"':
-                    sb.append("\\\"");
+                    escape = "\\\"";
                     break;
                 case '\\':
-                    sb.append("\\\\");
+                    escape = "\\\\";
                     break;
                 case '\b':
-                    sb.append("\\b");
+                    escape = "\\b";
                     break;
                 case '\f':
-                    sb.append("\\f");
+                    escape = "\\f";
                     break;
                 case '\n':
-                    sb.append("\\n");
+                    escape = "\\n";
                     break;
                 case '\r':
-                    sb.append("\\r");
+                    escape = "\\r";
                     break;
                 case '\t':
-                    sb.append("\\t");
+                    escape = "\\t";
                     break;
                 case '/':
-                    sb.append("\\/");
+                    escape = "\\/";
                     break;
                 default:
-                    if((c>='\u0000' && c<='\u001F') || (c>='\u007F' && c<='\u009F') || (c>='\u2000' && c<='\u20FF')){
-                        sb.append("\\u").append(String.format("%04X", (int)c));
+                    if (c <= '\u001F' || (c >= '\u007F' && c <= '\u009F') || (c >= '\u2000' && c <= '\u20FF')) {
+                        escape = String.format("\\u%04X", (int)c);
                     } else {
-                        sb.append(c);
+                        continue;
                     }
             }
+            if (pos > start)
+                out.write(string, start, pos - start);
+            out.write(escape);
+            start = pos + 1;
         }
         //
-        // Append the remainder of the string
+        // Write the remainder of the string
         //
-        if (start == 0)
-            sb.append(string);
-        else if (start < string.length())
-            sb.append(string.substring(start));
+        if (start < length)
+            out.write(string, start, length - start);
+    }
+
+    /**
+     * Buffered writer used to encode JSON
+     *
+     * Characters are collected in the buffer and written to the output writer when the buffer
+     * is full.  The encoded characters are appended directly to the string builder when encoding
+     * to a string.  The writer is not thread-safe and is not closed when the output is complete.
+     */
+    private static final class JSONWriter extends Writer {
+
+        /** Output writer or null if writing to a string builder */
+        private final Writer out;
+
+        /** Output string builder or null if writing to a writer */
+        private final StringBuilder sb;
+
+        /** Encoding buffer */
+        private final char[] buffer;
+
+        /** Current buffer position */
+        private int pos;
+
+        /**
+         * Create a JSON writer for an output writer
+         *
+         * @param   out                     Output writer
+         * @param   buffer                  Encoding buffer
+         */
+        private JSONWriter(Writer out, char[] buffer) {
+            this.out = out;
+            this.sb = null;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Create a JSON writer for a string builder
+         *
+         * @param   sb                      String builder
+         */
+        private JSONWriter(StringBuilder sb) {
+            this.out = null;
+            this.sb = sb;
+            this.buffer = null;
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (sb != null) {
+                sb.append((char)c);
+                return;
+            }
+            if (pos == buffer.length) {
+                flushBuffer();
+            }
+            buffer[pos++] = (char)c;
+        }
+
+        @Override
+        public void write(String str) throws IOException {
+            write(str, 0, str.length());
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            if (sb != null) {
+                sb.append(str, off, off + len);
+                return;
+            }
+            while (len > 0) {
+                if (pos == buffer.length) {
+                    flushBuffer();
+                }
+                int count = Math.min(len, buffer.length - pos);
+                str.getChars(off, off + count, buffer, pos);
+                pos += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            if (sb != null) {
+                sb.append(cbuf, off, len);
+                return;
+            }
+            if (len >= buffer.length) {
+                flushBuffer();
+                out.write(cbuf, off, len);
+                return;
+            }
+            if (len > buffer.length - pos) {
+                flushBuffer();
+            }
+            System.arraycopy(cbuf, off, buffer, pos, len);
+            pos += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null) {
+                flushBuffer();
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        /**
+         * Write the buffered characters to the output writer
+         *
+         * @throws  IOException             I/O error occurred
+         */
+        private void flushBuffer() throws IOException {
+            if (pos > 0) {
+                out.write(buffer, 0, pos);
+                pos = 0;
+            }
+        }
     }
 }
@@ -0,0 +1,134 @@
+package shareschain.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>
+ * A rolling Bloom filter remembers approximately the most recent entries that have been added.
+ * The filter consists of two generations.  New entries are added to the current generation and
+ * a lookup checks both generations.  When the current generation is full, the previous generation
+ * is discarded and the current generation becomes the previous generation.  This means the filter
+ * remembers at least the last <code>capacity</code> entries and at most twice that number.
+ * </p>
+ * <p>
+ * A lookup can return a false positive but never returns a false negative for an entry that is
+ * still remembered.  Each filter uses a random seed so that entries which collide in one filter
+ * do not collide in another filter.  The bit arrays are not allocated until the first entry is added.
+ * </p>
+ */
+public final class RollingBloomFilter {
+
+    /** Number of entries in a generation */
+    private final int capacity;
+
+    /** Number of hash functions */
+    private final int hashCount;
+
+    /** Number of bits in a generation */
+    private final int bitCount;
+
+    /** Hash seed */
+    private final long seed;
+
+    /** Current generation */
+    private long[] current;
+
+    /** Previous generation */
+    private long[] previous;
+
+    /** Number of entries in the current generation */
+    private int count;
+
+    /**
+     * Create a rolling Bloom filter
+     *
+     * @param   capacity                Number of entries in a generation
+     * @param   falsePositiveRate       Desired false positive rate for a full generation
+     */
+    public RollingBloomFilter(int capacity, double falsePositiveRate) {
+        if (capacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter parameters");
+        }
+        double ln2 = Math.log(2);
+        int bits = (int)Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.capacity = capacity;
+        this.bitCount = (bits + 63) & ~63;
+        this.hashCount = Math.max(1, (int)Math.round((double)bitCount / capacity * ln2));
+        this.seed = ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * Add an entry to the filter
+     *
+     * @param   key                     Entry key
+     */
+    public synchronized void add(long key) {
+        if (current == null) {
+            current = new long[bitCount / 64];
+        } else if (count >= capacity) {
+            long[] bits = previous;
+            previous = current;
+            if (bits == null) {
+                bits = new long[bitCount / 64];
+            } else {
+                Arrays.fill(bits, 0);
+            }
+            current = bits;
+            count = 0;
+        }
+        long h1 = mix(key ^ seed);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            int index = (int)Long.remainderUnsigned(h1 + i * h2, bitCount);
+            current[index >>> 6] |= 1L << index;
+        }
+        count++;
+    }
+
+    /**
+     * Check if the filter contains an entry
+     *
+     * @param   key                     Entry key
+     * @return                          TRUE if the entry has probably been added
+     */
+    public synchronized boolean contains(long key) {
+        if (current == null) {
+            return false;
+        }
+        long h1 = mix(key ^ seed);
+        long h2 = mix(h1) | 1;
+        return contains(current, h1, h2) || (previous != null && contains(previous, h1, h2));
+    }
+
+    /**
+     * Remove all entries from the filter
+     */
+    public synchronized void clear() {
+        current = null;
+        previous = null;
+        count = 0;
+    }
+
+    private boolean contains(long[] bits, long h1, long h2) {
+        for (int i = 0; i < hashCount; i++) {
+            int index = (int)Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits[index >>> 6] & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64-bit finalizer from MurmurHash3
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,83 @@
+package shareschain.util.crypto;
+
+/**
+ * Bounded cache of identifier and address string pairs.  The cache is direct-mapped: each
+ * identifier and each address has a single slot, so a lookup is one array access and a new
+ * entry replaces the entry in its slot.  Entries are immutable, so no locking is needed.
+ * Only pairs which have been verified to round-trip are added to the cache.
+ */
+final class AddressCache {
+
+    /** Number of cache slots (must be a power of 2) */
+    private static final int CACHE_SIZE = 8192;
+
+    /** Entries indexed by identifier */
+    private static final Entry[] idCache = new Entry[CACHE_SIZE];
+
+    /** Entries indexed by address */
+    private static final Entry[] addressCache = new Entry[CACHE_SIZE];
+
+    private AddressCache() {}
+
+    /**
+     * Get the address for an identifier
+     *
+     * @param   id                  Identifier
+     * @return                      Address or null if not cached
+     */
+    static String getAddress(long id) {
+        Entry entry = idCache[idSlot(id)];
+        return (entry != null && entry.id == id ? entry.address : null);
+    }
+
+    /**
+     * Get the identifier for an address
+     *
+     * @param   address             Address
+     * @return                      Cache entry or null if not cached
+     */
+    static Entry getEntry(String address) {
+        Entry entry = addressCache[addressSlot(address)];
+        return (entry != null && entry.address.equals(address) ? entry : null);
+    }
+
+    /**
+     * Add an identifier and address pair
+     *
+     * @param   id                  Identifier
+     * @param   address             Address
+     */
+    static void put(long id, String address) {
+        Entry entry = new Entry(id, address);
+        idCache[idSlot(id)] = entry;
+        addressCache[addressSlot(address)] = entry;
+    }
+
+    private static int idSlot(long id) {
+        int hash = (int)(id ^ (id >>> 32));
+        return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    }
+
+    private static int addressSlot(String address) {
+        int hash = address.hashCode();
+        return (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+    }
+
+    /**
+     * Cache entry
+     */
+    static final class Entry {
+
+        private final long id;
+        private final String address;
+
+        private Entry(long id, String address) {
+            this.id = id;
+            this.address = address;
+        }
+
+        long getId() {
+            return id;
+        }
+    }
+}
@@ -16,7 +16,144 @@ public class Base58 {
         }
     }
 
+    /** 58^5, the largest power of 58 that fits in 31 bits */
+    private static final long BASE_58_POW_5 = 58L * 58 * 58 * 58 * 58;
+
+    /** Maximum encoded length of a 64-bit identifier */
+    private static final int MAX_ENCODED_LENGTH = 28;
+
+    /**
+     * Encode an identifier.  The identifier is encoded as the Base58 representation of the
+     * bytes of its signed decimal string.  The number is held in 32-bit limbs and divided by
+     * 58^5 at a time, so the only allocations are the result string and its character buffer.
+     *
+     * @param   id                  Identifier
+     * @return                      Encoded identifier
+     */
     public static String encode(long id) {
+        // Decimal digits of the identifier
+        byte[] digits = new byte[20];
+        int pos = digits.length;
+        long value = id;
+        do {
+            digits[--pos] = (byte)('0' + Math.abs((int)(value % 10)));
+            value /= 10;
+        } while (value != 0);
+        if (id < 0) {
+            digits[--pos] = '-';
+        }
+        // Big-endian digit bytes as little-endian 32-bit limbs
+        int[] limbs = new int[5];
+        for (int i = digits.length - 1, shift = 0, limb = 0; i >= pos; i--) {
+            limbs[limb] |= (digits[i] & 0xFF) << shift;
+            shift += 8;
+            if (shift == 32) {
+                shift = 0;
+                limb++;
+            }
+        }
+        // Base58 digits, least significant first
+        char[] output = new char[MAX_ENCODED_LENGTH + 5];
+        int j = output.length;
+        int top = limbs.length - 1;
+        while (top >= 0) {
+            long remainder = 0;
+            for (int i = top; i >= 0; i--) {
+                long current = (remainder << 32) | (limbs[i] & 0xFFFFFFFFL);
+                limbs[i] = (int)(current / BASE_58_POW_5);
+                remainder = current % BASE_58_POW_5;
+            }
+            while (top >= 0 && limbs[top] == 0) {
+                top--;
+            }
+            for (int k = 0; k < 5; k++) {
+                output[--j] = ALPHABET[(int)(remainder % BASE_58)];
+                remainder /= BASE_58;
+            }
+        }
+        while (output[j] == ALPHABET[0]) {
+            j++;
+        }
+        return new String(output, j, output.length - j);
+    }
+
+    /**
+     * Decode an identifier.  Input which is not the encoding of a signed decimal string
+     * is handled by the original byte-array implementation, so the result (or exception)
+     * is the same for every input.
+     *
+     * @param   input               Encoded identifier
+     * @return                      Identifier
+     */
+    public static long decode(String input) {
+        int length = input.length();
+        if (length == 0) {
+            return 0;
+        }
+        if (length > MAX_ENCODED_LENGTH) {
+            return decodeLegacy(input);
+        }
+        int[] limbs = new int[6];
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            int digit58 = (c < 128 ? INDEXES[c] : -1);
+            if (digit58 < 0) {
+                throw new RuntimeException("Not a Base58 input: " + input);
+            }
+            long carry = digit58;
+            for (int k = 0; k < limbs.length; k++) {
+                long current = (limbs[k] & 0xFFFFFFFFL) * BASE_58 + carry;
+                limbs[k] = (int)current;
+                carry = current >>> 32;
+            }
+        }
+        // Most significant non-zero byte
+        int byteCount = limbs.length * 4;
+        while (byteCount > 0 && getByte(limbs, byteCount - 1) == 0) {
+            byteCount--;
+        }
+        if (byteCount == 0 || byteCount > 20) {
+            return decodeLegacy(input);
+        }
+        int index = byteCount - 1;
+        boolean negative = (getByte(limbs, index) == '-');
+        if (negative) {
+            if (index == 0) {
+                return decodeLegacy(input);
+            }
+            index--;
+        }
+        // Accumulate as a negative number so Long.MIN_VALUE does not overflow
+        long result = 0;
+        for (; index >= 0; index--) {
+            int digit = getByte(limbs, index) - '0';
+            if (digit < 0 || digit > 9 || result < Long.MIN_VALUE / 10
+                    || result * 10 < Long.MIN_VALUE + digit) {
+                return decodeLegacy(input);
+            }
+            result = result * 10 - digit;
+        }
+        if (!negative) {
+            if (result == Long.MIN_VALUE) {
+                return decodeLegacy(input);
+            }
+            result = -result;
+        }
+        return result;
+    }
+
+    /**
+     * Get a byte of a number held in little-endian 32-bit limbs
+     *
+     * @param   limbs               Number
+     * @param   index               Byte index (0 is the least significant byte)
+     * @return                      Byte value
+     */
+    private static int getByte(int[] limbs, int index) {
+        return (limbs[index >> 2] >>> ((index & 3) << 3)) & 0xFF;
+    }
+
+    static String encodeLegacy(long id) {
         byte[] input = Long.toString(id).getBytes();
         if (input.length == 0) {
             return "";
@@ -54,7 +191,7 @@ public class Base58 {
         return new String(output);
     }
 
-    public static long decode(String input) {
+    static long decodeLegacy(String input) {
         if (input.length() == 0) {
             return 0;
         }
@@ -15,10 +15,12 @@ import org.bouncycastle.crypto.params.ParametersWithIV;
 import org.bouncycastle.jcajce.provider.digest.Keccak;
 import org.bouncycastle.jcajce.provider.digest.RIPEMD160;
 
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * 密码类
@@ -38,6 +40,19 @@ public final class Crypto {
         }
     });
 
+    /** SHA-256 digest used to create new digests without a provider lookup */
+    private static final MessageDigest sha256Prototype = getMessageDigest("SHA-256");
+
+    /**
+     * Thread-confined SHA-256 digest used by the one-shot hash methods.  The digest is reset
+     * before it is used and is never returned to the caller, so a caller holding a digest
+     * obtained from sha256() is not affected when it calls a method that uses the pooled digest.
+     */
+    private static final ThreadLocal<MessageDigest> sha256Digest = ThreadLocal.withInitial(Crypto::sha256);
+
+    /** Thread-confined RIPEMD-160 digest used by the one-shot hash methods */
+    private static final ThreadLocal<MessageDigest> ripemd160Digest = ThreadLocal.withInitial(Crypto::ripemd160);
+
     private Crypto() {} //never
 
     public static SecureRandom getSecureRandom() {
@@ -53,20 +68,80 @@ public final class Crypto {
         }
     }
 
+    /**
+     * Create a new SHA-256 digest.  Use sha256(byte[]...) or sha256Into() for one-shot hashes
+     * since they do not allocate a new digest.
+     *
+     * @return                      SHA-256 digest owned by the caller
+     */
     public static MessageDigest sha256() {
-        return getMessageDigest("SHA-256");
+        try {
+            return (MessageDigest)sha256Prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            return getMessageDigest("SHA-256");
+        }
+    }
+
+    /**
+     * Calculate the SHA-256 hash of the concatenated input arrays using the thread digest
+     *
+     * @param   parts               Input arrays
+     * @return                      32-byte hash
+     */
+    public static byte[] sha256(byte[]... parts) {
+        MessageDigest digest = sha256Digest.get();
+        digest.reset();
+        for (byte[] part : parts) {
+            digest.update(part);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Calculate the SHA-256 hash of the concatenated input arrays using the thread digest
+     * and store it in a caller-owned buffer.  The inputs are consumed before the hash is
+     * written, so the output buffer can also be one of the inputs.
+     *
+     * @param   out                 Output buffer (at least 32 bytes)
+     * @param   parts               Input arrays
+     */
+    public static void sha256Into(byte[] out, byte[]... parts) {
+        MessageDigest digest = sha256Digest.get();
+        digest.reset();
+        for (byte[] part : parts) {
+            digest.update(part);
+        }
+        try {
+            digest.digest(out, 0, 32);
+        } catch (DigestException e) {
+            digest.reset();
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
     }
 
     public static MessageDigest ripemd160() {
         return new RIPEMD160.Digest();
     }
 
+    /**
+     * Calculate the RIPEMD-160 hash of the input array using the thread digest
+     *
+     * @param   input               Input array
+     * @return                      20-byte hash
+     */
+    public static byte[] ripemd160(byte[] input) {
+        MessageDigest digest = ripemd160Digest.get();
+        digest.reset();
+        return digest.digest(input);
+    }
+
     public static MessageDigest sha3() {
         return new Keccak.Digest256();
     }
 
     public static byte[] getKeySeed(String secretPhrase, byte[]... nonces) {
-        MessageDigest digest = Crypto.sha256();
+        MessageDigest digest = sha256Digest.get();
+        digest.reset();
         digest.update(Convert.toBytes(secretPhrase));
         for (byte[] nonce : nonces) {
             digest.update(nonce);
@@ -84,7 +159,7 @@ public final class Crypto {
     //把私钥(密码)转换成 bytes数组，在经过 sha256加密算法，生成公钥
     public static byte[] getPublicKey(String secretPhrase) {
         byte[] publicKey = new byte[32];
-        Curve25519.keygen(publicKey, null, Crypto.sha256().digest(Convert.toBytes(secretPhrase)));
+        Curve25519.keygen(publicKey, null, sha256(Convert.toBytes(secretPhrase)));
         return publicKey;
     }
 
@@ -101,7 +176,7 @@ public final class Crypto {
      * @return
      */
     public static byte[] getPrivateKey(String secretPhrase) {
-        byte[] s = Crypto.sha256().digest(Convert.toBytes(secretPhrase));
+        byte[] s = sha256(Convert.toBytes(secretPhrase));
         Curve25519.clamp(s);
         return s;
     }
@@ -114,19 +189,16 @@ public final class Crypto {
     public static byte[] sign(byte[] message, String secretPhrase) {
         byte[] P = new byte[32];
         byte[] s = new byte[32];
-        MessageDigest digest = Crypto.sha256();
-        Curve25519.keygen(P, s, digest.digest(Convert.toBytes(secretPhrase)));
+        Curve25519.keygen(P, s, sha256(Convert.toBytes(secretPhrase)));
 
-        byte[] m = digest.digest(message);
+        byte[] m = sha256(message);
 
-        digest.update(m);
-        byte[] x = digest.digest(s);
+        byte[] x = sha256(m, s);
 
         byte[] Y = new byte[32];
         Curve25519.keygen(Y, null, x);
 
-        digest.update(m);
-        byte[] h = digest.digest(Y);
+        byte[] h = sha256(m, Y);
 
         byte[] v = new byte[32];
         Curve25519.sign(v, h, x, s);
@@ -169,25 +241,79 @@ public final class Crypto {
             byte[] h = new byte[32];
             //将签名的后32位赋值给h
             System.arraycopy(signature, 32, h, 0, 32);
-            Curve25519.verify(Y, v, h, publicKey);
+            Curve25519.verify(Y, v, h, VerifyKeyCache.get(publicKey));
 
-            //指定加密算法sha256
-            MessageDigest digest = Crypto.sha256();
-            //使用指定的字节数组对摘要进行更新，然后完成摘要计算。计算出byte[] m
-            byte[] m = digest.digest(message);
-            //使用指定的字节数组更新摘要。,计算出摘要byte[] h2
-            digest.update(m);
-            byte[] h2 = digest.digest(Y);
+            //计算出消息摘要byte[] m
+            byte[] m = sha256(message);
+            //计算出摘要h2 = sha256(m, Y)，结果写回m
+            sha256Into(m, m, Y);
 
-            return Arrays.equals(h, h2);
+            return Arrays.equals(h, m);
         } catch (RuntimeException e) {
             Logger.logErrorMessage("Error verifying signature", e);
             return false;
         }
     }
 
+    /**
+     * Verify a batch of signatures.  The result for each message is the same as calling verify(),
+     * but the curve calculations share their field inversions and working storage.
+     *
+     * @param   messages            Signed messages
+     * @return                      Verification result for each message in list order
+     */
+    public static boolean[] verifyBatch(List<SignedMessage> messages) {
+        int count = messages.size();
+        boolean[] results = new boolean[count];
+        int[] indexes = new int[count];
+        int batchCount = 0;
+        for (int i = 0; i < count; i++) {
+            SignedMessage message = messages.get(i);
+            byte[] signature = message.getSignature();
+            byte[] publicKey = message.getPublicKey();
+            if (signature == null || signature.length != 64 || publicKey == null || message.getMessage() == null) {
+                continue;
+            }
+            if (!Curve25519.isCanonicalSignature(signature)) {
+                Logger.logDebugMessage("Rejecting non-canonical signature");
+                continue;
+            }
+            if (!Curve25519.isCanonicalPublicKey(publicKey)) {
+                Logger.logDebugMessage("Rejecting non-canonical public key");
+                continue;
+            }
+            indexes[batchCount++] = i;
+        }
+        if (batchCount == 0) {
+            return results;
+        }
+        byte[][] Y = new byte[batchCount][32];
+        byte[][] v = new byte[batchCount][];
+        byte[][] h = new byte[batchCount][];
+        byte[][] P = new byte[batchCount][];
+        for (int i = 0; i < batchCount; i++) {
+            SignedMessage message = messages.get(indexes[i]);
+            v[i] = Arrays.copyOfRange(message.getSignature(), 0, 32);
+            h[i] = Arrays.copyOfRange(message.getSignature(), 32, 64);
+            P[i] = message.getPublicKey();
+        }
+        try {
+            Curve25519.verifyBatch(Y, v, h, VerifyKeyCache.get(P));
+        } catch (RuntimeException e) {
+            Logger.logErrorMessage("Error verifying signature batch", e);
+            return results;
+        }
+        byte[] m = new byte[32];
+        for (int i = 0; i < batchCount; i++) {
+            sha256Into(m, messages.get(indexes[i]).getMessage());
+            sha256Into(m, m, Y[i]);
+            results[indexes[i]] = Arrays.equals(h[i], m);
+        }
+        return results;
+    }
+
     public static byte[] getSharedKey(byte[] myPrivateKey, byte[] theirPublicKey) {
-        return sha256().digest(getSharedSecret(myPrivateKey, theirPublicKey));
+        return sha256(getSharedSecret(myPrivateKey, theirPublicKey));
     }
 
     /**
@@ -205,7 +331,7 @@ public final class Crypto {
         for (int i = 0; i < 32; i++) {//用随机数随机替换
             dhSharedSecret[i] ^= nonce[i];
         }
-        return sha256().digest(dhSharedSecret);
+        return sha256(dhSharedSecret);
     }
 
     /**
@@ -309,18 +435,47 @@ public final class Crypto {
     }
 
     public static String rsEncode(long id) {
-        return Base58.encode(id);
+        String rsString = AddressCache.getAddress(id);
+        if (rsString == null) {
+            rsString = Base58.encode(id);
+            if (isReversible(id, rsString)) {
+                AddressCache.put(id, rsString);
+            }
+        }
+        return rsString;
 //        return ReedSolomon.encode(id);
     }
 
+    /**
+     * Check if an encoded address decodes to the original identifier
+     *
+     * @param   id                  Identifier
+     * @param   rsString            Encoded address
+     * @return                      TRUE if the address decodes to the identifier
+     */
+    private static boolean isReversible(long id, String rsString) {
+        try {
+            return Base58.decode(rsString) == id;
+        } catch (RuntimeException e) {
+            Logger.logDebugMessage("Decoding of " + rsString + " failed: " + e.toString());
+            return false;
+        }
+    }
+
     public static long rsDecode(String rsString) {
 //        rsString = rsString.toUpperCase(Locale.ROOT);
+        AddressCache.Entry entry = AddressCache.getEntry(rsString);
+        if (entry != null) {
+            return entry.getId();
+        }
         try {
             long id = Base58.decode(rsString);
-            if (! rsString.equals(Base58.encode(id))) {
+            String encoded = Base58.encode(id);
+            if (! rsString.equals(encoded)) {
                 throw new RuntimeException("ERROR: Reed-Solomon decoding of " + rsString
                         + " not reversible, decoded to " + id);
             }
+            AddressCache.put(id, encoded);
             return id;
         } catch (Exception e) {
             Logger.logDebugMessage("Reed-Solomon decoding failed for " + rsString + ": " + e.toString());
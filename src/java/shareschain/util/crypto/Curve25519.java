@@ -161,48 +161,206 @@ final class Curve25519 {
      *   P  [in]  public key
      */
     public static void verify(byte[] Y, byte[] v, byte[] h, byte[] P) {
+        verify(Y, v, h, verifyKey(P));
+    }
+
+    /* Signature verification primitive using a prepared public key, calculates Y = vP + hG
+     *   Y   [out] signature public key
+     *   v   [in]  signature value
+     *   h   [in]  signature hash
+     *   key [in]  prepared public key
+     */
+    public static void verify(byte[] Y, byte[] v, byte[] h, VerifyKey key) {
         /* Y = v abs(P) + h G  */
-        byte[] d=new byte[32];
+        VerifyScratch sc = new VerifyScratch();
+        long10 x = new long10(), z = new long10();
+
+        verify_ladder(x, z, v, h, key, sc);
+        recip(sc.t1[0], z, 0);
+        mul(sc.t1[1], x, sc.t1[0]);
+
+        pack(sc.t1[1], Y);
+    }
+
+    /* Batch signature verification primitive, calculates Y[i] = v[i]P[i] + h[i]G
+     * for each signature.  The result is the same as calling verify() for each
+     * signature, but the field inversions are shared by all of the signatures in
+     * the batch (Montgomery's trick) and the working storage is allocated once.
+     *   Y  [out] signature public keys
+     *   v  [in]  signature values
+     *   h  [in]  signature hashes
+     *   P  [in]  public keys
+     */
+    public static void verifyBatch(byte[][] Y, byte[][] v, byte[][] h, byte[][] P) {
+        verifyBatch(Y, v, h, verifyKeys(P));
+    }
+
+    /* Batch signature verification primitive using prepared public keys
+     *   Y    [out] signature public keys
+     *   v    [in]  signature values
+     *   h    [in]  signature hashes
+     *   keys [in]  prepared public keys
+     */
+    public static void verifyBatch(byte[][] Y, byte[][] v, byte[][] h, VerifyKey[] keys) {
+        int n = keys.length, i;
+        if (n == 0)
+            return;
+        VerifyScratch sc = new VerifyScratch();
         long10[]
-                p=new long10[]{new long10(),new long10()},
-                s=new long10[]{new long10(),new long10()},
-                yx=new long10[]{new long10(),new long10(),new long10()},
-                yz=new long10[]{new long10(),new long10(),new long10()},
-                t1=new long10[]{new long10(),new long10(),new long10()},
-                t2=new long10[]{new long10(),new long10(),new long10()};
+                x = new long10[n],
+                z = new long10[n],
+                inv = new long10[n],
+                c = new long10[n];
+        for (i = 0; i < n; i++) {
+            x[i] = new long10();
+            z[i] = new long10();
+            inv[i] = new long10();
+            c[i] = new long10();
+        }
+        for (i = 0; i < n; i++)
+            verify_ladder(x[i], z[i], v[i], h[i], keys[i], sc);
+        recip_batch(inv, z, 0, n, c, sc);
+        for (i = 0; i < n; i++) {
+            mul(sc.t1[0], x[i], inv[i]);
+            pack(sc.t1[0], Y[i]);
+        }
+    }
 
-        int vi = 0, hi = 0, di = 0, nvh=0, i, j, k;
+    /* Prepare a public key for signature verification.  The prepared key holds
+     * X(P), X(P+G) and X(P-G), which depend only on the public key, so a prepared
+     * key can be reused for any number of verifications by any number of threads.
+     *   P  [in]  public key
+     */
+    public static VerifyKey verifyKey(byte[] P) {
+        VerifyScratch sc = new VerifyScratch();
+        VerifyKey key = new VerifyKey();
+        long10 z = new long10(), inv = new long10();
+
+        verify_prep(key.px, key.s0, key.s1, z, P, sc);
+        recip(inv, z, 0);	/* inv = 1/(Px - Gx)^2  */
+        verify_sums(key.s0, key.s1, inv, key.px);
+        return key;
+    }
 
-        /* set p[0] to G and p[1] to P  */
+    /* Prepare a batch of public keys, sharing the field inversion
+     *   P  [in]  public keys
+     */
+    public static VerifyKey[] verifyKeys(byte[][] P) {
+        int n = P.length, i;
+        VerifyKey[] keys = new VerifyKey[n];
+        if (n == 0)
+            return keys;
+        VerifyScratch sc = new VerifyScratch();
+        long10[]
+                z = new long10[n],
+                inv = new long10[n],
+                c = new long10[n];
+        for (i = 0; i < n; i++) {
+            keys[i] = new VerifyKey();
+            z[i] = new long10();
+            inv[i] = new long10();
+            c[i] = new long10();
+        }
 
-        set(p[0], 9);
-        unpack(p[1], P);
+        /* z[i] = (Px - Gx)^2  */
+        for (i = 0; i < n; i++)
+            verify_prep(keys[i].px, keys[i].s0, keys[i].s1, z[i], P[i], sc);
+        recip_batch(inv, z, 0, n, c, sc);
+        for (i = 0; i < n; i++)
+            verify_sums(keys[i].s0, keys[i].s1, inv[i], keys[i].px);
+        return keys;
+    }
 
-        /* set s[0] to P+G and s[1] to P-G  */
+    /* Public key prepared for signature verification */
+    static final class VerifyKey {
+
+        /* approximate memory used by a prepared key (bytes) */
+        static final int SIZE = 3 * (16 + 10 * 8) + 16;
+
+        private final long10
+                px = new long10(),
+                s0 = new long10(),
+                s1 = new long10();
+
+        private VerifyKey() {}
+    }
+
+    /* Working storage for signature verification.  The storage is reused for
+     * each signature in a batch. */
+    private static final class VerifyScratch {
+        final byte[] d = new byte[32];
+        final byte[] b = new byte[32];
+        final long10[]
+                p = new long10[]{new long10(), null},
+                s = new long10[2],
+                yx = new long10[]{new long10(), new long10(), new long10()},
+                yz = new long10[]{new long10(), new long10(), new long10()},
+                t1 = new long10[]{new long10(), new long10(), new long10()},
+                t2 = new long10[]{new long10(), new long10(), new long10()};
+
+        VerifyScratch() {
+            set(p[0], 9);
+        }
+    }
+
+    /* Unpack the public key and calculate the terms for P+G and P-G
+     *   px  [out] X(P)
+     *   n0  [out] Py^2 + Gy^2 - 2 Py Gy
+     *   n1  [out] Py^2 + Gy^2 + 2 Py Gy
+     *   den [out] (Px - Gx)^2
+     *   P   [in]  public key  */
+    private static void verify_prep(long10 px, long10 n0, long10 n1, long10 den, byte[] P, VerifyScratch sc) {
+        long10[] t1 = sc.t1, t2 = sc.t2;
+        int j;
+
+        unpack(px, P);
 
         /* s[0] = (Py^2 + Gy^2 - 2 Py Gy)/(Px - Gx)^2 - Px - Gx - 486662  */
         /* s[1] = (Py^2 + Gy^2 + 2 Py Gy)/(Px - Gx)^2 - Px - Gx - 486662  */
 
-        x_to_y2(t1[0], t2[0], p[1]);	/* t2[0] = Py^2  */
+        x_to_y2(t1[0], t2[0], px);	/* t2[0] = Py^2  */
         sqrt(t1[0], t2[0]);	/* t1[0] = Py or -Py  */
         j = is_negative(t1[0]);		/*      ... check which  */
         t2[0]._0 += 39420360;		/* t2[0] = Py^2 + Gy^2  */
         mul(t2[1], BASE_2Y, t1[0]);/* t2[1] = 2 Py Gy or -2 Py Gy  */
-        sub(t1[j], t2[0], t2[1]);	/* t1[0] = Py^2 + Gy^2 - 2 Py Gy  */
-        add(t1[1-j], t2[0], t2[1]);/* t1[1] = Py^2 + Gy^2 + 2 Py Gy  */
-        cpy(t2[0], p[1]);		/* t2[0] = Px  */
+        sub(j == 0 ? n0 : n1, t2[0], t2[1]);	/* n0 = Py^2 + Gy^2 - 2 Py Gy  */
+        add(j == 0 ? n1 : n0, t2[0], t2[1]);	/* n1 = Py^2 + Gy^2 + 2 Py Gy  */
+        cpy(t2[0], px);		/* t2[0] = Px  */
         t2[0]._0 -= 9;			/* t2[0] = Px - Gx  */
-        sqr(t2[1], t2[0]);		/* t2[1] = (Px - Gx)^2  */
-        recip(t2[0], t2[1], 0);	/* t2[0] = 1/(Px - Gx)^2  */
-        mul(s[0], t1[0], t2[0]);	/* s[0] = t1[0]/(Px - Gx)^2  */
-        sub(s[0], s[0], p[1]);	/* s[0] = t1[0]/(Px - Gx)^2 - Px  */
-        s[0]._0 -= 9 + 486662;		/* s[0] = X(P+G)  */
-        mul(s[1], t1[1], t2[0]);	/* s[1] = t1[1]/(Px - Gx)^2  */
-        sub(s[1], s[1], p[1]);	/* s[1] = t1[1]/(Px - Gx)^2 - Px  */
-        s[1]._0 -= 9 + 486662;		/* s[1] = X(P-G)  */
-        mul_small(s[0], s[0], 1);	/* reduce s[0] */
-        mul_small(s[1], s[1], 1);	/* reduce s[1] */
+        sqr(den, t2[0]);		/* den = (Px - Gx)^2  */
+    }
+
+    /* Calculate X(P+G) and X(P-G)
+     *   s0  [in/out] n0 on input, X(P+G) on output
+     *   s1  [in/out] n1 on input, X(P-G) on output
+     *   inv [in]  1/(Px - Gx)^2
+     *   px  [in]  X(P)  */
+    private static void verify_sums(long10 s0, long10 s1, long10 inv, long10 px) {
+        mul(s0, s0, inv);	/* s[0] = t1[0]/(Px - Gx)^2  */
+        sub(s0, s0, px);	/* s[0] = t1[0]/(Px - Gx)^2 - Px  */
+        s0._0 -= 9 + 486662;		/* s[0] = X(P+G)  */
+        mul(s1, s1, inv);	/* s[1] = t1[1]/(Px - Gx)^2  */
+        sub(s1, s1, px);	/* s[1] = t1[1]/(Px - Gx)^2 - Px  */
+        s1._0 -= 9 + 486662;		/* s[1] = X(P-G)  */
+        mul_small(s0, s0, 1);	/* reduce s[0] */
+        mul_small(s1, s1, 1);	/* reduce s[1] */
+    }
 
+    /* Calculate vP + hG in projective form
+     *   yxOut [out] X numerator
+     *   yzOut [out] X denominator  */
+    private static void verify_ladder(long10 yxOut, long10 yzOut, byte[] v, byte[] h,
+                                      VerifyKey key, VerifyScratch sc) {
+        byte[] d = sc.d;
+        long10[] p = sc.p, s = sc.s, yx = sc.yx, yz = sc.yz, t1 = sc.t1, t2 = sc.t2;
+        int vi = 0, hi = 0, di = 0, nvh=0, i, j, k;
+
+        /* set p[0] to G and p[1] to P  */
+        p[1] = key.px;
+
+        /* set s[0] to P+G and s[1] to P-G  */
+        s[0] = key.s0;
+        s[1] = key.s1;
 
         /* prepare the chain  */
         for (i = 0; i < 32; i++) {
@@ -264,10 +422,44 @@ final class Curve25519 {
         }
 
         k = (vi & 1) + (hi & 1);
-        recip(t1[0], yz[k], 0);
-        mul(t1[1], yx[k], t1[0]);
+        cpy(yxOut, yx[k]);
+        cpy(yzOut, yz[k]);
+        p[1] = null;
+        s[0] = s[1] = null;
+    }
 
-        pack(t1[1], Y);
+    /* Batch inversion, y[i] = 1/x[i] for from <= i < to.  A single inversion is
+     * performed for the range unless the product is zero, in which case the range
+     * is bisected to locate the zero values.  As with recip(), the inverse of zero
+     * is zero.
+     *   c  is a temporary with the same length as x and y  */
+    private static void recip_batch(long10[] y, long10[] x, int from, int to, long10[] c, VerifyScratch sc) {
+        int i;
+        cpy(c[from], x[from]);
+        for (i = from + 1; i < to; i++)
+            mul(c[i], c[i - 1], x[i]);
+        mul_small(sc.t1[0], c[to - 1], 1);
+        pack(sc.t1[0], sc.b);
+        int w = 0;
+        for (i = 0; i < 32; i++)
+            w |= sc.b[i];
+        if (w == 0) {
+            if (to - from == 1) {
+                set(y[from], 0);
+            } else {
+                int mid = (from + to) >>> 1;
+                recip_batch(y, x, from, mid, c, sc);
+                recip_batch(y, x, mid, to, c, sc);
+            }
+            return;
+        }
+        long10 t = sc.t1[1];
+        recip(t, c[to - 1], 0);
+        for (i = to - 1; i > from; i--) {
+            mul(y[i], t, c[i - 1]);
+            mul(t, t, x[i]);
+        }
+        cpy(y[from], t);
     }
 
     public static boolean isCanonicalSignature(byte[] v) {
@@ -8,7 +8,7 @@ public enum HashFunction {
      */
     SHA256((byte)2) {
         public byte[] hash(byte[] input) {
-            return Crypto.sha256().digest(input);
+            return Crypto.sha256(input);
         }
     },
     /**
@@ -26,6 +26,11 @@ public enum HashFunction {
         public byte[] hash(byte[] input) {
             return threadLocalScrypt.get().hash(input);
         }
+
+        @Override
+        public byte[][] hashAll(byte[][] inputs) {
+            return threadLocalScrypt.get().hashAll(inputs);
+        }
     },
     /**
      * Use proprietary SHARESCHAIN implementation of Keccak with 25 rounds (code 25)
@@ -34,15 +39,20 @@ public enum HashFunction {
         public byte[] hash(byte[] input) {
             return KNV25.hash(input);
         }
+
+        @Override
+        public byte[][] hashAll(byte[][] inputs) {
+            return KNV25.hashAll(inputs);
+        }
     },
     RIPEMD160((byte)6) {
         public byte[] hash(byte[] input) {
-            return Crypto.ripemd160().digest(input);
+            return Crypto.ripemd160(input);
         }
     },
     RIPEMD160_SHA256((byte)62) {
         public byte[] hash(byte[] input) {
-            return Crypto.ripemd160().digest(Crypto.sha256().digest(input));
+            return Crypto.ripemd160(Crypto.sha256(input));
         }
     };
 
@@ -68,4 +78,19 @@ public enum HashFunction {
     }
 
     public abstract byte[] hash(byte[] input);
+
+    /**
+     * Hash a list of independent inputs.  The result is the same as calling hash() for each
+     * input, but the hash state is set up once and reused for all of the inputs.
+     *
+     * @param   inputs              Input arrays
+     * @return                      Hash for each input
+     */
+    public byte[][] hashAll(byte[][] inputs) {
+        byte[][] outputs = new byte[inputs.length][];
+        for (int i = 0; i < inputs.length; i++) {
+            outputs[i] = hash(inputs[i]);
+        }
+        return outputs;
+    }
 }
@@ -1,6 +1,8 @@
 
 package shareschain.util.crypto;
 
+import java.util.Arrays;
+
 public final class KNV25 {
 
     private static final long[] constants = {
@@ -11,15 +13,57 @@ public final class KNV25 {
                 -9223372034707259263L, -9223372036854742912L, 2147483649L, -9223372034707259384L, 1L
             };
 
-    @SuppressWarnings("ShiftOutOfRange")
+    /** Per-thread sponge state */
+    private static final ThreadLocal<long[]> threadState = ThreadLocal.withInitial(() -> new long[25]);
+
+    private KNV25() {}
+
+    /**
+     * Hash the input
+     *
+     * @param   input               Input bytes (length must be a multiple of 8)
+     * @return                      32-byte hash
+     */
     public static byte[] hash(final byte input[]) {
+        byte[] output = new byte[32];
+        hash(input, output, 0);
+        return output;
+    }
+
+    /**
+     * Hash the input and store the result in a caller-owned buffer
+     *
+     * @param   input               Input bytes (length must be a multiple of 8)
+     * @param   output              Output buffer
+     * @param   offset              Output offset
+     */
+    public static void hash(final byte input[], final byte[] output, final int offset) {
+        hash(input, output, offset, threadState.get());
+    }
+
+    /**
+     * Hash a list of independent inputs using the same sponge state
+     *
+     * @param   inputs              Input arrays (length must be a multiple of 8)
+     * @return                      32-byte hash for each input
+     */
+    public static byte[][] hashAll(final byte[][] inputs) {
+        long[] state = threadState.get();
+        byte[][] outputs = new byte[inputs.length][32];
+        for (int i = 0; i < inputs.length; i++) {
+            hash(inputs[i], outputs[i], 0, state);
+        }
+        return outputs;
+    }
+
+    @SuppressWarnings("ShiftOutOfRange")
+    private static void hash(final byte input[], final byte[] output, final int offset, final long[] state) {
         int inputOffset = 0;
         int inputLength = input.length;
         if (inputLength % 8 != 0) {
             throw new IllegalArgumentException(String.format("input length %d must be a multiple of 8", inputLength));
         }
-        byte[] output = new byte[32];
-        long[] state = new long[25];
+        Arrays.fill(state, 0);
         while (inputOffset <= inputLength) {
             int i = 0;
             while (inputOffset < inputLength && i < 17) {
@@ -99,9 +143,8 @@ public final class KNV25 {
         }
 
         for (int i = 0; i < 32; i++) {
-            output[i] = (byte)(state[i >> 3] >> ((i & 7) << 3));
+            output[offset + i] = (byte)(state[i >> 3] >> ((i & 7) << 3));
         }
-        return output;
     }
 
 }
@@ -1,47 +1,81 @@
-
 package shareschain.util.crypto;
 
-import javax.crypto.Mac;
-import javax.crypto.ShortBufferException;
-import javax.crypto.spec.SecretKeySpec;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.security.DigestException;
+import java.security.MessageDigest;
 
+/**
+ * Scrypt (N=1024, r=1, p=1) hash of the first 40 bytes of the input.  An instance holds all
+ * of the working storage, including the 128KB scratchpad, so it is not thread-safe and should
+ * be reused by a single thread.  Hashing does not allocate any memory after the instance is
+ * created except for the result array returned by hash(byte[]).
+ */
 @SuppressWarnings({"PointlessBitwiseExpression", "PointlessArithmeticExpression"})
 public class Scrypt {
 
-    private final Mac mac;
-    {
-        try {
-            mac = Mac.getInstance("HmacSHA256");
-        } catch (NoSuchAlgorithmException e) {
-            throw new IllegalStateException(e);
-        }
-    }
+    /** HMAC-SHA256 inner pad */
+    private static final byte IPAD = 0x36;
+
+    /** HMAC-SHA256 outer pad */
+    private static final byte OPAD = 0x5c;
+
+    private final MessageDigest digest = Crypto.sha256();
+    private final byte[] ipad = new byte[64];
+    private final byte[] opad = new byte[64];
     private final byte[] H = new byte[32];
     private final byte[] B = new byte[128 + 4];
     private final int[] X = new int[32];
     private final int[] V = new int[32 * 1024];
 
+    /**
+     * Hash the input
+     *
+     * @param   input               Input bytes
+     * @return                      32-byte hash
+     */
     public byte[] hash(final byte input[]) {
+        byte[] output = new byte[32];
+        hash(input, output, 0);
+        return output;
+    }
+
+    /**
+     * Hash a list of independent inputs using the same working storage
+     *
+     * @param   inputs              Input arrays
+     * @return                      32-byte hash for each input
+     */
+    public byte[][] hashAll(final byte[][] inputs) {
+        byte[][] outputs = new byte[inputs.length][32];
+        for (int i = 0; i < inputs.length; i++) {
+            hash(inputs[i], outputs[i], 0);
+        }
+        return outputs;
+    }
+
+    /**
+     * Hash the input and store the result in a caller-owned buffer
+     *
+     * @param   input               Input bytes
+     * @param   output              Output buffer
+     * @param   offset              Output offset
+     */
+    public void hash(final byte input[], final byte[] output, final int offset) {
         int i, j, k;
         System.arraycopy(input, 0, B, 0, input.length);
-        try {
-            mac.init(new SecretKeySpec(B, 0, 40, "HmacSHA256"));
-        } catch (InvalidKeyException e) {
-            throw new IllegalStateException(e);
+        for (i = 0; i < 40; i++) {
+            ipad[i] = (byte)(B[i] ^ IPAD);
+            opad[i] = (byte)(B[i] ^ OPAD);
+        }
+        for (; i < 64; i++) {
+            ipad[i] = IPAD;
+            opad[i] = OPAD;
         }
         B[40] = 0;
         B[41] = 0;
         B[42] = 0;
         for (i = 0; i < 4; i++) {
             B[43] = (byte) (i + 1);
-            mac.update(B, 0, 44);
-            try {
-                mac.doFinal(H, 0);
-            } catch (ShortBufferException e) {
-                throw new IllegalStateException(e);
-            }
+            hmac(B, 44, H, 0);
 
             for (j = 0; j < 8; j++) {
                 X[i * 8 + j] = (H[j * 4 + 0] & 0xff) << 0
@@ -53,15 +87,11 @@ public class Scrypt {
 
         for (i = 0; i < 1024; i++) {
             System.arraycopy(X, 0, V, i * 32, 32);
-            xorSalsa8(0, 16);
-            xorSalsa8(16, 0);
+            blockMix();
         }
         for (i = 0; i < 1024; i++) {
             k = (X[16] & 1023) * 32;
-            for (j = 0; j < 32; j++)
-                X[j] ^= V[k + j];
-            xorSalsa8(0, 16);
-            xorSalsa8(16, 0);
+            blockMix(V, k);
         }
 
         for (i = 0; i < 32; i++) {
@@ -72,83 +102,848 @@ public class Scrypt {
         }
 
         B[128 + 3] = 1;
-        mac.update(B, 0, 128 + 4);
+        hmac(B, 128 + 4, output, offset);
+    }
+
+    /**
+     * Calculate HMAC-SHA256 using the current key pads
+     *
+     * @param   message             Message buffer
+     * @param   length              Message length
+     * @param   output              Output buffer
+     * @param   offset              Output offset
+     */
+    private void hmac(byte[] message, int length, byte[] output, int offset) {
         try {
-            mac.doFinal(H, 0);
-        } catch (ShortBufferException e) {
+            digest.reset();
+            digest.update(ipad);
+            digest.update(message, 0, length);
+            digest.digest(H, 0, 32);
+            digest.update(opad);
+            digest.update(H);
+            digest.digest(output, offset, 32);
+        } catch (DigestException e) {
             throw new IllegalStateException(e);
         }
+    }
 
-        return H;
+    /**
+     * Mix the block: X = BlockMix(X)
+     */
+    private void blockMix() {
+        final int[] X = this.X;
+        int a00 = X[0], b00 = X[16];
+        int a01 = X[1], b01 = X[17];
+        int a02 = X[2], b02 = X[18];
+        int a03 = X[3], b03 = X[19];
+        int a04 = X[4], b04 = X[20];
+        int a05 = X[5], b05 = X[21];
+        int a06 = X[6], b06 = X[22];
+        int a07 = X[7], b07 = X[23];
+        int a08 = X[8], b08 = X[24];
+        int a09 = X[9], b09 = X[25];
+        int a10 = X[10], b10 = X[26];
+        int a11 = X[11], b11 = X[27];
+        int a12 = X[12], b12 = X[28];
+        int a13 = X[13], b13 = X[29];
+        int a14 = X[14], b14 = X[30];
+        int a15 = X[15], b15 = X[31];
+        int x00, x01, x02, x03, x04, x05, x06, x07, x08, x09, x10, x11, x12, x13, x14, x15;
+        a00 ^= b00;
+        a01 ^= b01;
+        a02 ^= b02;
+        a03 ^= b03;
+        a04 ^= b04;
+        a05 ^= b05;
+        a06 ^= b06;
+        a07 ^= b07;
+        a08 ^= b08;
+        a09 ^= b09;
+        a10 ^= b10;
+        a11 ^= b11;
+        a12 ^= b12;
+        a13 ^= b13;
+        a14 ^= b14;
+        a15 ^= b15;
+        x00 = a00;
+        x01 = a01;
+        x02 = a02;
+        x03 = a03;
+        x04 = a04;
+        x05 = a05;
+        x06 = a06;
+        x07 = a07;
+        x08 = a08;
+        x09 = a09;
+        x10 = a10;
+        x11 = a11;
+        x12 = a12;
+        x13 = a13;
+        x14 = a14;
+        x15 = a15;
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        a00 += x00;
+        a01 += x01;
+        a02 += x02;
+        a03 += x03;
+        a04 += x04;
+        a05 += x05;
+        a06 += x06;
+        a07 += x07;
+        a08 += x08;
+        a09 += x09;
+        a10 += x10;
+        a11 += x11;
+        a12 += x12;
+        a13 += x13;
+        a14 += x14;
+        a15 += x15;
+        b00 ^= a00;
+        b01 ^= a01;
+        b02 ^= a02;
+        b03 ^= a03;
+        b04 ^= a04;
+        b05 ^= a05;
+        b06 ^= a06;
+        b07 ^= a07;
+        b08 ^= a08;
+        b09 ^= a09;
+        b10 ^= a10;
+        b11 ^= a11;
+        b12 ^= a12;
+        b13 ^= a13;
+        b14 ^= a14;
+        b15 ^= a15;
+        x00 = b00;
+        x01 = b01;
+        x02 = b02;
+        x03 = b03;
+        x04 = b04;
+        x05 = b05;
+        x06 = b06;
+        x07 = b07;
+        x08 = b08;
+        x09 = b09;
+        x10 = b10;
+        x11 = b11;
+        x12 = b12;
+        x13 = b13;
+        x14 = b14;
+        x15 = b15;
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        b00 += x00;
+        b01 += x01;
+        b02 += x02;
+        b03 += x03;
+        b04 += x04;
+        b05 += x05;
+        b06 += x06;
+        b07 += x07;
+        b08 += x08;
+        b09 += x09;
+        b10 += x10;
+        b11 += x11;
+        b12 += x12;
+        b13 += x13;
+        b14 += x14;
+        b15 += x15;
+        X[0] = a00;
+        X[16] = b00;
+        X[1] = a01;
+        X[17] = b01;
+        X[2] = a02;
+        X[18] = b02;
+        X[3] = a03;
+        X[19] = b03;
+        X[4] = a04;
+        X[20] = b04;
+        X[5] = a05;
+        X[21] = b05;
+        X[6] = a06;
+        X[22] = b06;
+        X[7] = a07;
+        X[23] = b07;
+        X[8] = a08;
+        X[24] = b08;
+        X[9] = a09;
+        X[25] = b09;
+        X[10] = a10;
+        X[26] = b10;
+        X[11] = a11;
+        X[27] = b11;
+        X[12] = a12;
+        X[28] = b12;
+        X[13] = a13;
+        X[29] = b13;
+        X[14] = a14;
+        X[30] = b14;
+        X[15] = a15;
+        X[31] = b15;
     }
 
-    private void xorSalsa8(int di, int xi) {
-        int x00 = (X[di + 0] ^= X[xi + 0]);
-        int x01 = (X[di + 1] ^= X[xi + 1]);
-        int x02 = (X[di + 2] ^= X[xi + 2]);
-        int x03 = (X[di + 3] ^= X[xi + 3]);
-        int x04 = (X[di + 4] ^= X[xi + 4]);
-        int x05 = (X[di + 5] ^= X[xi + 5]);
-        int x06 = (X[di + 6] ^= X[xi + 6]);
-        int x07 = (X[di + 7] ^= X[xi + 7]);
-        int x08 = (X[di + 8] ^= X[xi + 8]);
-        int x09 = (X[di + 9] ^= X[xi + 9]);
-        int x10 = (X[di + 10] ^= X[xi + 10]);
-        int x11 = (X[di + 11] ^= X[xi + 11]);
-        int x12 = (X[di + 12] ^= X[xi + 12]);
-        int x13 = (X[di + 13] ^= X[xi + 13]);
-        int x14 = (X[di + 14] ^= X[xi + 14]);
-        int x15 = (X[di + 15] ^= X[xi + 15]);
-        for (int i = 0; i < 8; i += 2) {
-            x04 ^= Integer.rotateLeft(x00 + x12, 7);
-            x08 ^= Integer.rotateLeft(x04 + x00, 9);
-            x12 ^= Integer.rotateLeft(x08 + x04, 13);
-            x00 ^= Integer.rotateLeft(x12 + x08, 18);
-            x09 ^= Integer.rotateLeft(x05 + x01, 7);
-            x13 ^= Integer.rotateLeft(x09 + x05, 9);
-            x01 ^= Integer.rotateLeft(x13 + x09, 13);
-            x05 ^= Integer.rotateLeft(x01 + x13, 18);
-            x14 ^= Integer.rotateLeft(x10 + x06, 7);
-            x02 ^= Integer.rotateLeft(x14 + x10, 9);
-            x06 ^= Integer.rotateLeft(x02 + x14, 13);
-            x10 ^= Integer.rotateLeft(x06 + x02, 18);
-            x03 ^= Integer.rotateLeft(x15 + x11, 7);
-            x07 ^= Integer.rotateLeft(x03 + x15, 9);
-            x11 ^= Integer.rotateLeft(x07 + x03, 13);
-            x15 ^= Integer.rotateLeft(x11 + x07, 18);
-            x01 ^= Integer.rotateLeft(x00 + x03, 7);
-            x02 ^= Integer.rotateLeft(x01 + x00, 9);
-            x03 ^= Integer.rotateLeft(x02 + x01, 13);
-            x00 ^= Integer.rotateLeft(x03 + x02, 18);
-            x06 ^= Integer.rotateLeft(x05 + x04, 7);
-            x07 ^= Integer.rotateLeft(x06 + x05, 9);
-            x04 ^= Integer.rotateLeft(x07 + x06, 13);
-            x05 ^= Integer.rotateLeft(x04 + x07, 18);
-            x11 ^= Integer.rotateLeft(x10 + x09, 7);
-            x08 ^= Integer.rotateLeft(x11 + x10, 9);
-            x09 ^= Integer.rotateLeft(x08 + x11, 13);
-            x10 ^= Integer.rotateLeft(x09 + x08, 18);
-            x12 ^= Integer.rotateLeft(x15 + x14, 7);
-            x13 ^= Integer.rotateLeft(x12 + x15, 9);
-            x14 ^= Integer.rotateLeft(x13 + x12, 13);
-            x15 ^= Integer.rotateLeft(x14 + x13, 18);
-        }
-        X[di + 0] += x00;
-        X[di + 1] += x01;
-        X[di + 2] += x02;
-        X[di + 3] += x03;
-        X[di + 4] += x04;
-        X[di + 5] += x05;
-        X[di + 6] += x06;
-        X[di + 7] += x07;
-        X[di + 8] += x08;
-        X[di + 9] += x09;
-        X[di + 10] += x10;
-        X[di + 11] += x11;
-        X[di + 12] += x12;
-        X[di + 13] += x13;
-        X[di + 14] += x14;
-        X[di + 15] += x15;
+    /**
+     * Mix the block with a scratchpad entry: X = BlockMix(X xor V[k..k+31])
+     *
+     * @param   V                   Scratchpad
+     * @param   k                   Scratchpad offset
+     */
+    private void blockMix(final int[] V, final int k) {
+        final int[] X = this.X;
+        int a00 = X[0] ^ V[k + 0], b00 = X[16] ^ V[k + 16];
+        int a01 = X[1] ^ V[k + 1], b01 = X[17] ^ V[k + 17];
+        int a02 = X[2] ^ V[k + 2], b02 = X[18] ^ V[k + 18];
+        int a03 = X[3] ^ V[k + 3], b03 = X[19] ^ V[k + 19];
+        int a04 = X[4] ^ V[k + 4], b04 = X[20] ^ V[k + 20];
+        int a05 = X[5] ^ V[k + 5], b05 = X[21] ^ V[k + 21];
+        int a06 = X[6] ^ V[k + 6], b06 = X[22] ^ V[k + 22];
+        int a07 = X[7] ^ V[k + 7], b07 = X[23] ^ V[k + 23];
+        int a08 = X[8] ^ V[k + 8], b08 = X[24] ^ V[k + 24];
+        int a09 = X[9] ^ V[k + 9], b09 = X[25] ^ V[k + 25];
+        int a10 = X[10] ^ V[k + 10], b10 = X[26] ^ V[k + 26];
+        int a11 = X[11] ^ V[k + 11], b11 = X[27] ^ V[k + 27];
+        int a12 = X[12] ^ V[k + 12], b12 = X[28] ^ V[k + 28];
+        int a13 = X[13] ^ V[k + 13], b13 = X[29] ^ V[k + 29];
+        int a14 = X[14] ^ V[k + 14], b14 = X[30] ^ V[k + 30];
+        int a15 = X[15] ^ V[k + 15], b15 = X[31] ^ V[k + 31];
+        int x00, x01, x02, x03, x04, x05, x06, x07, x08, x09, x10, x11, x12, x13, x14, x15;
+        a00 ^= b00;
+        a01 ^= b01;
+        a02 ^= b02;
+        a03 ^= b03;
+        a04 ^= b04;
+        a05 ^= b05;
+        a06 ^= b06;
+        a07 ^= b07;
+        a08 ^= b08;
+        a09 ^= b09;
+        a10 ^= b10;
+        a11 ^= b11;
+        a12 ^= b12;
+        a13 ^= b13;
+        a14 ^= b14;
+        a15 ^= b15;
+        x00 = a00;
+        x01 = a01;
+        x02 = a02;
+        x03 = a03;
+        x04 = a04;
+        x05 = a05;
+        x06 = a06;
+        x07 = a07;
+        x08 = a08;
+        x09 = a09;
+        x10 = a10;
+        x11 = a11;
+        x12 = a12;
+        x13 = a13;
+        x14 = a14;
+        x15 = a15;
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        a00 += x00;
+        a01 += x01;
+        a02 += x02;
+        a03 += x03;
+        a04 += x04;
+        a05 += x05;
+        a06 += x06;
+        a07 += x07;
+        a08 += x08;
+        a09 += x09;
+        a10 += x10;
+        a11 += x11;
+        a12 += x12;
+        a13 += x13;
+        a14 += x14;
+        a15 += x15;
+        b00 ^= a00;
+        b01 ^= a01;
+        b02 ^= a02;
+        b03 ^= a03;
+        b04 ^= a04;
+        b05 ^= a05;
+        b06 ^= a06;
+        b07 ^= a07;
+        b08 ^= a08;
+        b09 ^= a09;
+        b10 ^= a10;
+        b11 ^= a11;
+        b12 ^= a12;
+        b13 ^= a13;
+        b14 ^= a14;
+        b15 ^= a15;
+        x00 = b00;
+        x01 = b01;
+        x02 = b02;
+        x03 = b03;
+        x04 = b04;
+        x05 = b05;
+        x06 = b06;
+        x07 = b07;
+        x08 = b08;
+        x09 = b09;
+        x10 = b10;
+        x11 = b11;
+        x12 = b12;
+        x13 = b13;
+        x14 = b14;
+        x15 = b15;
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        x04 ^= Integer.rotateLeft(x00 + x12, 7);
+        x08 ^= Integer.rotateLeft(x04 + x00, 9);
+        x12 ^= Integer.rotateLeft(x08 + x04, 13);
+        x00 ^= Integer.rotateLeft(x12 + x08, 18);
+        x09 ^= Integer.rotateLeft(x05 + x01, 7);
+        x13 ^= Integer.rotateLeft(x09 + x05, 9);
+        x01 ^= Integer.rotateLeft(x13 + x09, 13);
+        x05 ^= Integer.rotateLeft(x01 + x13, 18);
+        x14 ^= Integer.rotateLeft(x10 + x06, 7);
+        x02 ^= Integer.rotateLeft(x14 + x10, 9);
+        x06 ^= Integer.rotateLeft(x02 + x14, 13);
+        x10 ^= Integer.rotateLeft(x06 + x02, 18);
+        x03 ^= Integer.rotateLeft(x15 + x11, 7);
+        x07 ^= Integer.rotateLeft(x03 + x15, 9);
+        x11 ^= Integer.rotateLeft(x07 + x03, 13);
+        x15 ^= Integer.rotateLeft(x11 + x07, 18);
+        x01 ^= Integer.rotateLeft(x00 + x03, 7);
+        x02 ^= Integer.rotateLeft(x01 + x00, 9);
+        x03 ^= Integer.rotateLeft(x02 + x01, 13);
+        x00 ^= Integer.rotateLeft(x03 + x02, 18);
+        x06 ^= Integer.rotateLeft(x05 + x04, 7);
+        x07 ^= Integer.rotateLeft(x06 + x05, 9);
+        x04 ^= Integer.rotateLeft(x07 + x06, 13);
+        x05 ^= Integer.rotateLeft(x04 + x07, 18);
+        x11 ^= Integer.rotateLeft(x10 + x09, 7);
+        x08 ^= Integer.rotateLeft(x11 + x10, 9);
+        x09 ^= Integer.rotateLeft(x08 + x11, 13);
+        x10 ^= Integer.rotateLeft(x09 + x08, 18);
+        x12 ^= Integer.rotateLeft(x15 + x14, 7);
+        x13 ^= Integer.rotateLeft(x12 + x15, 9);
+        x14 ^= Integer.rotateLeft(x13 + x12, 13);
+        x15 ^= Integer.rotateLeft(x14 + x13, 18);
+        b00 += x00;
+        b01 += x01;
+        b02 += x02;
+        b03 += x03;
+        b04 += x04;
+        b05 += x05;
+        b06 += x06;
+        b07 += x07;
+        b08 += x08;
+        b09 += x09;
+        b10 += x10;
+        b11 += x11;
+        b12 += x12;
+        b13 += x13;
+        b14 += x14;
+        b15 += x15;
+        X[0] = a00;
+        X[16] = b00;
+        X[1] = a01;
+        X[17] = b01;
+        X[2] = a02;
+        X[18] = b02;
+        X[3] = a03;
+        X[19] = b03;
+        X[4] = a04;
+        X[20] = b04;
+        X[5] = a05;
+        X[21] = b05;
+        X[6] = a06;
+        X[22] = b06;
+        X[7] = a07;
+        X[23] = b07;
+        X[8] = a08;
+        X[24] = b08;
+        X[9] = a09;
+        X[25] = b09;
+        X[10] = a10;
+        X[26] = b10;
+        X[11] = a11;
+        X[27] = b11;
+        X[12] = a12;
+        X[28] = b12;
+        X[13] = a13;
+        X[29] = b13;
+        X[14] = a14;
+        X[30] = b14;
+        X[15] = a15;
+        X[31] = b15;
     }
 
 }
@@ -0,0 +1,56 @@
+package shareschain.util.crypto;
+
+/**
+ * Signed message used for batch signature verification
+ */
+public final class SignedMessage {
+
+    /** Signature */
+    private final byte[] signature;
+
+    /** Signed message */
+    private final byte[] message;
+
+    /** Signer public key */
+    private final byte[] publicKey;
+
+    /**
+     * Create a signed message
+     *
+     * @param   signature           Signature
+     * @param   message             Signed message
+     * @param   publicKey           Signer public key
+     */
+    public SignedMessage(byte[] signature, byte[] message, byte[] publicKey) {
+        this.signature = signature;
+        this.message = message;
+        this.publicKey = publicKey;
+    }
+
+    /**
+     * Get the signature
+     *
+     * @return                      Signature
+     */
+    public byte[] getSignature() {
+        return signature;
+    }
+
+    /**
+     * Get the signed message
+     *
+     * @return                      Signed message
+     */
+    public byte[] getMessage() {
+        return message;
+    }
+
+    /**
+     * Get the signer public key
+     *
+     * @return                      Signer public key
+     */
+    public byte[] getPublicKey() {
+        return publicKey;
+    }
+}
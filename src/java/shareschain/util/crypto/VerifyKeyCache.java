@@ -0,0 +1,200 @@
+package shareschain.util.crypto;
+
+import shareschain.Shareschain;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * The verify key cache holds prepared public keys for signature verification.  Preparing a
+ * public key requires a square root and an inversion in the curve field, which is a large part
+ * of the signature verification time.  Forgers, exchanges and payment processors sign a large
+ * share of all transactions, so keeping their prepared keys avoids repeating this work.
+ * </p>
+ * <p>
+ * The shareschain.verifyKeyCacheKB property specifies the maximum memory used by the cache in
+ * kilobytes (0 disables the cache).  The least recently used keys are discarded when the cache
+ * is full.
+ * </p>
+ */
+public final class VerifyKeyCache {
+
+    /** Approximate memory used by a cache entry (bytes) */
+    private static final int ENTRY_SIZE = Curve25519.VerifyKey.SIZE + 32 + 48 + 64;
+
+    /** Maximum number of cached keys */
+    private static final int maxEntries = (int)Math.min(Integer.MAX_VALUE,
+            Math.max(0, Shareschain.getIntProperty("shareschain.verifyKeyCacheKB")) * 1024L / ENTRY_SIZE);
+
+    /** Cache is enabled */
+    private static final boolean cacheEnabled = (maxEntries > 0);
+
+    /** Prepared keys in least-recently-used order */
+    private static final LinkedHashMap<ByteBuffer, Curve25519.VerifyKey> cache =
+            new LinkedHashMap<ByteBuffer, Curve25519.VerifyKey>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Curve25519.VerifyKey> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+
+    /** Number of cache hits */
+    private static long hits;
+
+    /** Number of cache misses */
+    private static long misses;
+
+    private VerifyKeyCache() {}
+
+    /**
+     * Check if the cache is enabled
+     *
+     * @return                      TRUE if the cache is enabled
+     */
+    public static boolean isEnabled() {
+        return cacheEnabled;
+    }
+
+    /**
+     * Get the prepared key for a public key.  The key is prepared and added to the
+     * cache if it is not already in the cache.
+     *
+     * @param   publicKey           Canonical public key
+     * @return                      Prepared key
+     */
+    static Curve25519.VerifyKey get(byte[] publicKey) {
+        if (!cacheEnabled) {
+            return Curve25519.verifyKey(publicKey);
+        }
+        ByteBuffer cacheKey = ByteBuffer.wrap(publicKey.clone());
+        Curve25519.VerifyKey key;
+        synchronized (cache) {
+            key = cache.get(cacheKey);
+            if (key != null) {
+                hits++;
+                return key;
+            }
+            misses++;
+        }
+        key = Curve25519.verifyKey(publicKey);
+        synchronized (cache) {
+            cache.put(cacheKey, key);
+        }
+        return key;
+    }
+
+    /**
+     * Get the prepared keys for a list of public keys.  Keys which are not in the cache
+     * are prepared as a batch and added to the cache.
+     *
+     * @param   publicKeys          Canonical public keys
+     * @return                      Prepared keys
+     */
+    static Curve25519.VerifyKey[] get(byte[][] publicKeys) {
+        if (!cacheEnabled) {
+            return Curve25519.verifyKeys(publicKeys);
+        }
+        int count = publicKeys.length;
+        Curve25519.VerifyKey[] keys = new Curve25519.VerifyKey[count];
+        ByteBuffer[] cacheKeys = new ByteBuffer[count];
+        int missCount = 0;
+        synchronized (cache) {
+            for (int i = 0; i < count; i++) {
+                cacheKeys[i] = ByteBuffer.wrap(publicKeys[i].clone());
+                keys[i] = cache.get(cacheKeys[i]);
+                if (keys[i] != null) {
+                    hits++;
+                } else {
+                    misses++;
+                    missCount++;
+                }
+            }
+        }
+        if (missCount == 0) {
+            return keys;
+        }
+        Map<ByteBuffer, Integer> missIndexes = new HashMap<>();
+        int[] indexes = new int[count];
+        byte[][] missKeys = new byte[missCount][];
+        int prepareCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == null) {
+                Integer index = missIndexes.get(cacheKeys[i]);
+                if (index == null) {
+                    index = prepareCount;
+                    missIndexes.put(cacheKeys[i], index);
+                    missKeys[prepareCount++] = publicKeys[i];
+                }
+                indexes[i] = index;
+            }
+        }
+        Curve25519.VerifyKey[] preparedKeys = Curve25519.verifyKeys(Arrays.copyOf(missKeys, prepareCount));
+        synchronized (cache) {
+            for (int i = 0; i < count; i++) {
+                if (keys[i] == null) {
+                    keys[i] = preparedKeys[indexes[i]];
+                    cache.put(cacheKeys[i], keys[i]);
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Get the number of cache hits
+     *
+     * @return                      Number of hits
+     */
+    public static long getHits() {
+        synchronized (cache) {
+            return hits;
+        }
+    }
+
+    /**
+     * Get the number of cache misses
+     *
+     * @return                      Number of misses
+     */
+    public static long getMisses() {
+        synchronized (cache) {
+            return misses;
+        }
+    }
+
+    /**
+     * Get the cache hit rate
+     *
+     * @return                      Hit rate between 0 and 1
+     */
+    public static double getHitRate() {
+        synchronized (cache) {
+            long lookups = hits + misses;
+            return (lookups > 0 ? (double)hits / lookups : 0);
+        }
+    }
+
+    /**
+     * Get the number of cached keys
+     *
+     * @return                      Number of cached keys
+     */
+    public static int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Get the maximum number of cached keys
+     *
+     * @return                      Maximum number of cached keys
+     */
+    public static int getMaxSize() {
+        return maxEntries;
+    }
+}